@@ -0,0 +1,141 @@
+import java.time.LocalDate;
+import java.util.*;
+
+// Synthetic catalogs for the benchmarks. Same seed, same library.
+public class BenchData {
+    static final String[] WORDS = {
+            "shadow", "river", "garden", "java", "basics", "kamil", "night", "empire", "chemistry", "stone",
+            "silent", "harbor", "winter", "crown", "desert", "algebra", "mirror", "city", "secret", "forest"};
+    static final String[] GENRES = {"Fantasy", "Jasoosi", "Romance", "History", "Mystery"};
+    static final String[] SUBJECTS = {"Physics", "Chemistry", "Programming", "Algebra", "Urdu"};
+
+    static String title(Random rnd, int i) {
+        return WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)] + " " + i;
+    }
+
+    // books 1..catalog (every third a TextBook), members 1001.., and the first 'loans' books lent out
+    static Library library(int catalog, int members, int loans, long seed) {
+        Random rnd = new Random(seed);
+        Library lib = new Library();
+        for (int i = 1; i <= catalog; i++) {
+            String author = "Author " + rnd.nextInt(Math.max(1, catalog / 20));
+            int price = 100 + rnd.nextInt(2000);
+            if (i % 3 == 0) {
+                lib.addNewTextBook(title(rnd, i), author, price, "ISBN-" + i, 100 + rnd.nextInt(900),
+                        SUBJECTS[rnd.nextInt(SUBJECTS.length)]);
+            } else {
+                lib.addNewNovel(title(rnd, i), author, price, "ISBN-" + i, 100 + rnd.nextInt(900),
+                        GENRES[rnd.nextInt(GENRES.length)]);
+            }
+        }
+        for (int i = 0; i < members; i++) lib.addMember("Member " + i);
+        for (int b = 1; b <= Math.min(loans, catalog); b++) lib.borrowBook(1001 + rnd.nextInt(members), b, 1 + rnd.nextInt(28));
+        return lib;
+    }
+
+    // n draws from 1..range with P(i) proportional to 1 / i^s, shuffled so popular ids are spread out
+    static int[] zipf(int n, int range, double s, long seed) {
+        double[] cdf = new double[range];
+        double sum = 0;
+        for (int i = 0; i < range; i++) cdf[i] = sum += 1 / Math.pow(i + 1, s);
+        int[] perm = new int[range];
+        for (int i = 0; i < range; i++) perm[i] = i + 1;
+        Random rnd = new Random(seed);
+        for (int i = range - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1), t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) {
+            int idx = Arrays.binarySearch(cdf, rnd.nextDouble() * sum);
+            out[i] = perm[Math.min(range - 1, idx < 0 ? -idx - 1 : idx)];
+        }
+        return out;
+    }
+
+    // Completed loans over two years from 2024-01-01, with Zipf-skewed titles (1..titles) and
+    // members (1..members); about one return in ten is late.
+    static final class LoanStream {
+        final int[] book, member, borrowed, due, returned;
+
+        LoanStream(int loans, int titles, int members) {
+            book = zipf(loans, titles, 1.0, 1);
+            member = zipf(loans, members, 0.8, 2);
+            borrowed = new int[loans];
+            due = new int[loans];
+            returned = new int[loans];
+            Random rnd = new Random(3);
+            int day0 = (int) LocalDate.of(2024, 1, 1).toEpochDay();
+            for (int i = 0; i < loans; i++) {
+                borrowed[i] = day0 + (int) ((long) i * 730 / loans);
+                due[i] = borrowed[i] + 14;
+                returned[i] = borrowed[i] + 1 + rnd.nextInt(rnd.nextInt(10) == 0 ? 40 : 14);
+            }
+        }
+
+        int size() {
+            return book.length;
+        }
+
+        void feed(CirculationAnalytics an, int i) {
+            an.loanStarted(member[i], book[i]);
+            an.loanCompleted(member[i], book[i], borrowed[i], due[i], returned[i]);
+        }
+
+        void append(LoanHistory history, int i) {
+            history.append(member[i], book[i], borrowed[i], due[i], returned[i]);
+        }
+    }
+
+    // {bookId, count} for the k most borrowed, by a full pass over the history
+    static List<int[]> exactTop(LoanHistory history, int titles, int k) {
+        int[] counts = new int[titles + 1];
+        history.forEach((m, b, br, d, r) -> counts[b]++);
+        PriorityQueue<int[]> best = new PriorityQueue<>(Comparator.comparingInt((int[] e) -> e[1]));
+        for (int b = 0; b <= titles; b++) {
+            if (counts[b] == 0) continue;
+            best.add(new int[]{b, counts[b]});
+            if (best.size() > k) best.poll();
+        }
+        List<int[]> out = new ArrayList<>(best);
+        out.sort((a, b) -> b[1] - a[1]);
+        return out;
+    }
+
+    // Everything a restart has to bring back, one line per book, member, loan and history row,
+    // in id order; two libraries in the same state give the same string.
+    static String state(Library lib) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("next ").append(lib.peekNextBookId()).append(' ').append(lib.peekNextMemberId()).append('\n');
+        int[] ids = lib.getBookIds();
+        Arrays.sort(ids);
+        for (int id : ids) {
+            Book b = lib.getBookById(id).get();
+            sb.append("book ").append(id).append(' ').append(b.getClass().getSimpleName()).append(' ')
+                    .append(b.getTitle()).append('|').append(b.getAuthor()).append('|').append(b.getPrice())
+                    .append('|').append(SearchIndex.tagOf(b));
+            if (b instanceof PrintedBook) {
+                PrintedBook p = (PrintedBook) b;
+                sb.append('|').append(p.getIsbn()).append('|').append(p.getPages()).append('|')
+                        .append(p.getAvailableCopies()).append('/').append(p.getCopies());
+            }
+            sb.append('\n');
+        }
+        for (int m = 1001; m < lib.peekNextMemberId(); m++) {
+            Optional<Member> member = lib.getMemberById(m);
+            if (member.isEmpty()) continue;
+            sb.append("member ").append(m).append(' ').append(member.get().getName()).append(' ')
+                    .append(member.get().getJoinedOn()).append('\n');
+            List<BorrowRecord> loans = new ArrayList<>(lib.getBorrowRecordsForMember(m));
+            loans.sort(Comparator.comparingInt(BorrowRecord::getBookId));
+            for (BorrowRecord r : loans) {
+                sb.append("loan ").append(m).append(' ').append(r.getBookId()).append(" copy ").append(r.getCopy())
+                        .append(' ').append(r.getBorrowDate()).append(' ').append(r.getDueDate()).append('\n');
+            }
+        }
+        lib.getLoanHistory().forEach((m, b, borrowed, due, returned) -> sb.append("history ").append(m).append(' ')
+                .append(b).append(' ').append(borrowed).append(' ').append(due).append(' ').append(returned).append('\n'));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Reject counts and samples of BookImporter: one of each reason, and sample order over a feed
+// long enough to span several blocks and parser threads.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class BookImporterTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private static Path feed(String text) throws IOException {
+        Path f = Files.createTempFile("feed", ".tsv");
+        Files.write(f, text.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    public void testEachRejectReasonIsCounted() throws IOException {
+        Library lib = new Library();
+        lib.addNewNovel("Night Harbor", "S. Ali", 500, "978-0-306-40615-7", 300, "Mystery");
+        Path f = feed("type\ttitle\tauthor\tprice\tisbn\tpages\tgenre\n"
+                + "Novel\tRiver Stone\tA. Khan\t450\tISBN-1\t250\tFantasy\n"          // 2 inserted
+                + "TextBook\tAlgebra\tB. Doe\t900\tISBN-2\t600\tMaths\t3\n"           // 3 inserted
+                + "Novel\tRiver Stone again\tA. Khan\t450\tisbn1\t250\tFantasy\n"     // 4 duplicate of 2
+                + "Novel\tHarbor copy\tS. Ali\t500\t9780306406157\t300\tMystery\n"   // 5 in catalog
+                + "Novel\t \tA. Khan\t450\tISBN-5\t250\tFantasy\n"                    // 6 empty title
+                + "Comic\tCity\tC. Lee\t200\tISBN-6\t40\tHumour\n"                    // 7 unknown type
+                + "Novel\tWinter\tD. Ray\t-1\tISBN-7\t200\tFantasy\n"                 // 8 negative price
+                + "Novel\tDesert\tE. Noor\tcheap\tISBN-8\t200\tFantasy\n"             // 9 bad number
+                + "Novel\tCrown\tF. Aziz\n"                                           // 10 too few columns
+                + "PrintedBook\tMirror\tG. Bano\t300\tISBN-10\t120\t-\n");            // 11 inserted
+        try {
+            BookImporter.Report r = new BookImporter(lib).parseThreads(2).run(f, BookImporter.Format.VENDOR_TSV);
+            check(r.inserted() == 3, "inserted " + r);
+            check(r.rejected() == 7, "rejected " + r);
+            check(r.rejected(BookImporter.Reason.DUPLICATE_IN_FEED) == 1, "duplicates " + r);
+            check(r.rejected(BookImporter.Reason.ALREADY_IN_CATALOG) == 1, "in catalog " + r);
+            check(r.rejected(BookImporter.Reason.INVALID) == 3, "invalid " + r);
+            check(r.rejected(BookImporter.Reason.MALFORMED) == 2, "malformed " + r);
+            long[] lines = r.samples().stream().mapToLong(s -> s.line).toArray();
+            check(Arrays.equals(lines, new long[]{4, 5, 6, 7, 8, 9, 10}), Arrays.toString(lines));
+            check(r.samples().get(0).reason == BookImporter.Reason.DUPLICATE_IN_FEED, r.samples().get(0).toString());
+            check(r.samples().get(1).reason == BookImporter.Reason.ALREADY_IN_CATALOG, r.samples().get(1).toString());
+            check(lib.listAllBooksSortedByTitle().size() == 4, "catalog size " + lib.listAllBooksSortedByTitle().size());
+        } finally {
+            Files.delete(f);
+        }
+    }
+
+    public void testSamplesAreTheFirstRejectsInTheFile() throws IOException {
+        Library lib = new Library();
+        StringBuilder sb = new StringBuilder();
+        int rows = 60_000, rejects = 0;
+        for (int i = 1; i <= rows; i++) {
+            // every 97th row repeats the isbn of the row before it
+            String isbn = i % 97 == 0 ? "ISBN-" + (i - 1) : "ISBN-" + i;
+            if (i % 97 == 0) rejects++;
+            sb.append("Novel\tTitle ").append(i).append("\tAuthor ").append(i % 50)
+                    .append("\t300\t").append(isbn).append("\t200\tFantasy\n");
+        }
+        Path f = feed(sb.toString());
+        try {
+            BookImporter.Report r = new BookImporter(lib).parseThreads(4).batchSize(100).maxRejectSamples(5)
+                    .run(f, BookImporter.Format.VENDOR_TSV);
+            check(r.rejected(BookImporter.Reason.DUPLICATE_IN_FEED) == rejects, "duplicates " + r);
+            check(r.inserted() == rows - rejects, "inserted " + r);
+            List<BookImporter.Reject> s = r.samples();
+            check(s.size() == 5, "samples " + s);
+            for (int i = 0; i < 5; i++) check(s.get(i).line == 97L * (i + 1), "sample " + i + ": " + s.get(i));
+        } finally {
+            Files.delete(f);
+        }
+    }
+}
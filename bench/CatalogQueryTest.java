@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Faceted queries (CatalogQuery through FacetIndex) against the same filter done book by book,
+// as copies go out and come back. Run by `mvn test`; a failed check throws AssertionError.
+public class CatalogQueryTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private static List<Integer> ids(CatalogQuery.Result r) {
+        List<Integer> out = new ArrayList<>();
+        for (Book b : r.getPage()) out.add(b.getId());
+        return out;
+    }
+
+    public void testFullyLentTextBookIsNotAvailable() {
+        Library lib = new Library();
+        int chem = lib.addNewTextBook("Chemistry One", "R. Khan", 900, "ISBN-C1", 400, "Chemistry", 2);
+        int phys = lib.addNewTextBook("Physics One", "R. Khan", 800, "ISBN-P1", 350, "Physics", 1);
+        int novel = lib.addNewNovel("Stone River", "S. Ali", 500, "ISBN-SR", 300, "Fantasy", 1);
+        int ann = lib.addMember("Ann"), ben = lib.addMember("Ben");
+        check(lib.tryBorrowBook(ann, chem, 14).isBorrowed() && lib.tryBorrowBook(ben, chem, 14).isBorrowed(), "lend chem");
+
+        CatalogQuery.Result avail = lib.query(new CatalogQuery().type(TextBook.class).availableOnly(), 0, 10);
+        check(ids(avail).equals(List.of(phys)), "available textbooks " + ids(avail));
+        CatalogQuery.Result out = lib.query(new CatalogQuery().type(TextBook.class).borrowed(true), 0, 10);
+        check(ids(out).equals(List.of(chem)), "borrowed textbooks " + ids(out));
+
+        Map<String, Integer> shelf = lib.query(new CatalogQuery(), 0, 10).facet("availability");
+        check(shelf.equals(Map.of("available", 2, "borrowed", 1)), "availability facet " + shelf);
+
+        lib.returnBook(ann, chem);
+        avail = lib.query(new CatalogQuery().type(TextBook.class).availableOnly(), 0, 10);
+        check(ids(avail).equals(List.of(chem, phys)), "after return " + ids(avail));
+        shelf = lib.query(new CatalogQuery(), 0, 10).facet("availability");
+        check(shelf.equals(Map.of("available", 3)), "availability facet after return " + shelf);
+        check(lib.query(new CatalogQuery().borrowed(true), 0, 10).getTotal() == 0, "still borrowed after return");
+        check(novel > 0, "novel");
+    }
+
+    public void testQueriesMatchAScan() {
+        Library lib = BenchData.library(2_000, 50, 0, 11);
+        java.util.Random rnd = new java.util.Random(12);
+        int[] members = new int[50];
+        for (int i = 0; i < members.length; i++) members[i] = 1001 + i;
+        for (int n = 0; n < 1_500; n++) lib.tryBorrowBook(members[rnd.nextInt(members.length)], 1 + rnd.nextInt(2_000), 14);
+
+        List<CatalogQuery> queries = List.of(
+                new CatalogQuery().availableOnly(),
+                new CatalogQuery().borrowed(true),
+                new CatalogQuery().type(TextBook.class).availableOnly(),
+                new CatalogQuery().type(TextBook.class).subject("Chemistry").borrowed(true),
+                new CatalogQuery().type(Novel.class).genre("Fantasy").maxPrice(900).availableOnly(),
+                new CatalogQuery().pagesBetween(200, 500).priceBetween(300, 1500));
+        for (CatalogQuery q : queries) {
+            CatalogQuery.Result r = lib.query(q, 0, Integer.MAX_VALUE);
+            List<Integer> want = new ArrayList<>();
+            int out = 0;
+            for (int id = 1; id <= 2_000; id++) {
+                Book b = lib.getBookById(id).get();
+                if (!matches(q, b)) continue;
+                want.add(id);
+                if (CatalogQuery.isOut(b)) out++;
+            }
+            check(ids(r).equals(want), "query " + q + ": " + r.getTotal() + " books, scan found " + want.size());
+            Map<String, Integer> shelf = r.facet("availability");
+            check(shelf.getOrDefault("borrowed", 0) == out, "borrowed facet " + shelf + ", scan " + out);
+        }
+    }
+
+    private static boolean matches(CatalogQuery q, Book b) {
+        CatalogQuery.Plan p = q.plan();
+        return p != null && p.test(b);
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// CirculationAnalytics against an exact pass over the same loans in a LoanHistory: the exact
+// counters agree, the Space-Saving top 10 finds the real most-borrowed titles, and count-min
+// never under-counts and stays within its error bound. Costs are measured by benchmarks.AnalyticsBench.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class CirculationAnalyticsTest {
+    private static final int LOANS = 500_000, TITLES = 20_000, MEMBERS = 5_000;
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    public void testSketchesAgreeWithHistory() {
+        BenchData.LoanStream stream = new BenchData.LoanStream(LOANS, TITLES, MEMBERS);
+        CirculationAnalytics an = new CirculationAnalytics();
+        LoanHistory history = new LoanHistory(false);
+        for (int i = 0; i < LOANS; i++) {
+            stream.feed(an, i);
+            stream.append(history, i);
+        }
+
+        check(an.getBorrowCount() == LOANS, "borrows " + an.getBorrowCount());
+        check(an.getReturnCount() == LOANS, "returns " + an.getReturnCount());
+        check(Math.abs(an.averageLoanDays() - history.averageLoanDays()) < 1e-9,
+                "average " + an.averageLoanDays() + " != " + history.averageLoanDays());
+        double late = history.countLateReturns() / (double) history.size();
+        check(Math.abs(an.lateReturnRate() - late) < 1e-9, "late rate " + an.lateReturnRate() + " != " + late);
+
+        List<int[]> exact = BenchData.exactTop(history, TITLES, 10);
+        Set<Integer> want = new HashSet<>(), got = new HashSet<>();
+        for (int[] e : exact) want.add(e[0]);
+        for (SpaceSaving.Entry e : an.mostBorrowedBooks(10)) got.add(e.getKey());
+        got.retainAll(want);
+        check(got.size() >= 9, "top-10 overlap " + got.size() + "/10");
+        check(an.mostBorrowedBooks(1).get(0).getKey() == exact.get(0)[0],
+                "top title " + an.mostBorrowedBooks(1).get(0).getKey() + ", want " + exact.get(0)[0]);
+
+        double bound = CirculationAnalytics.SKETCH_EPSILON * an.getBorrowCount();
+        for (int[] e : BenchData.exactTop(history, TITLES, 1000)) {
+            long over = an.estimatedBorrows(e[0]) - e[1];
+            check(over >= 0, "book " + e[0] + " under-counted by " + -over);
+            check(over <= bound, "book " + e[0] + " over-counted by " + over + ", bound " + bound);
+        }
+    }
+}
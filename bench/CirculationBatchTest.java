@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Library.applyBatch: items are applied in batch order (a check-in frees a copy for a later
+// check-out in the same batch), refusals leave the rest of the batch going, results line up
+// with the items, and the batch replays from the journal like the single calls.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class CirculationBatchTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private Library lib;
+    private int twoCopies, oneCopy, ann, ben, cat;
+
+    // ann has the one-copy title, three days overdue
+    private void setUp(Library l) {
+        lib = l;
+        twoCopies = lib.addNewNovel("River Stone", "A. Khan", 450, "ISBN-RS", 250, "Fantasy", 2);
+        oneCopy = lib.addNewTextBook("Algebra", "B. Doe", 900, "ISBN-AL", 600, "Maths", 1);
+        ann = lib.addMember("Ann");
+        ben = lib.addMember("Ben");
+        cat = lib.addMember("Cat");
+        check(lib.tryBorrowBook(ann, oneCopy, -3).isBorrowed(), "ann's overdue loan");
+    }
+
+    private CirculationBatch mixed() {
+        return new CirculationBatch(2)            // grows past its first capacity
+                .checkOut(ann, twoCopies, 14)      // 0 BORROWED
+                .checkOut(ann, twoCopies, 14)      // 1 ALREADY_HAS_COPY
+                .checkOut(ben, oneCopy, 14)        // 2 NOT_AVAILABLE: ann still has it
+                .checkIn(ann, oneCopy)             // 3 RETURNED with a fine
+                .checkOut(ben, oneCopy, 7)         // 4 BORROWED: the copy item 3 gave back
+                .checkIn(cat, twoCopies)           // 5 NOT_ON_LOAN
+                .checkOut(9_999, twoCopies, 14)    // 6 NO_SUCH_MEMBER
+                .checkOut(cat, 9_999, 14)          // 7 NO_SUCH_BOOK
+                .checkOut(cat, twoCopies, 14)      // 8 BORROWED: the second copy
+                .checkOut(ben, twoCopies, 14);     // 9 NOT_AVAILABLE: both copies out
+    }
+
+    public void testMixedBatchResultsFollowItemOrder() {
+        setUp(new Library());
+        CirculationBatch batch = mixed();
+        CirculationBatch.Results r = lib.applyBatch(batch);
+        CirculationBatch.Outcome[] want = {
+                CirculationBatch.Outcome.BORROWED, CirculationBatch.Outcome.ALREADY_HAS_COPY,
+                CirculationBatch.Outcome.NOT_AVAILABLE, CirculationBatch.Outcome.RETURNED,
+                CirculationBatch.Outcome.BORROWED, CirculationBatch.Outcome.NOT_ON_LOAN,
+                CirculationBatch.Outcome.NO_SUCH_MEMBER, CirculationBatch.Outcome.NO_SUCH_BOOK,
+                CirculationBatch.Outcome.BORROWED, CirculationBatch.Outcome.NOT_AVAILABLE};
+        check(batch.size() == want.length && r.size() == want.length, "sizes " + batch.size() + " " + r.size());
+        for (int i = 0; i < want.length; i++) check(r.outcome(i) == want[i], "item " + i + ": " + r.outcome(i));
+        check(r.count(CirculationBatch.Outcome.BORROWED) == 3, "borrowed " + r.count(CirculationBatch.Outcome.BORROWED));
+
+        // records: the new loan for a check-out, the closed one for a check-in, null if refused
+        for (int i : new int[]{1, 2, 5, 6, 7, 9}) check(r.record(i) == null, "record for refused item " + i);
+        check(r.record(0).getMemberId() == ann && r.record(0).getBookId() == twoCopies, "item 0 " + r.record(0));
+        check(r.record(3).getMemberId() == ann && r.record(3).getBookId() == oneCopy, "item 3 " + r.record(3));
+        check(r.record(4).getMemberId() == ben && r.record(4).getCopy() == r.record(3).getCopy(), "item 4 " + r.record(4));
+        check(r.record(4).getDueDate().equals(r.record(4).getBorrowDate().plusDays(7)), "item 4 due " + r.record(4));
+        check(r.record(8).getCopy() != r.record(0).getCopy(), "one copy lent twice");
+
+        // only the check-in of the overdue loan is fined
+        check(r.fine(3) == 3 * OverdueEngine.FINE_PER_DAY, "fine " + r.fine(3));
+        check(r.totalFines() == r.fine(3), "total fines " + r.totalFines());
+
+        check(lib.getBorrowRecordsForMember(ann).size() == 1, "ann " + lib.getBorrowRecordsForMember(ann));
+        check(lib.getBorrowRecordsForMember(ben).size() == 1, "ben " + lib.getBorrowRecordsForMember(ben));
+        check(lib.getBorrowRecordsForMember(cat).size() == 1, "cat " + lib.getBorrowRecordsForMember(cat));
+        check(((PrintedBook) lib.getBookById(twoCopies).get()).getAvailableCopies() == 0, "copies on the shelf");
+    }
+
+    public void testBatchMatchesTheSingleCallsAndReplays() throws IOException {
+        Path dir = Files.createTempDirectory("batch-test");
+        try {
+            Library logged = new Library();
+            logged.openJournal(dir.resolve("journal").toString(), dir.resolve("library.snap").toString(),
+                    OperationJournal.FsyncPolicy.ALWAYS, 0);
+            setUp(logged);
+            logged.applyBatch(mixed());
+
+            // the same items one call at a time
+            Library single = new Library();
+            setUp(single);
+            CirculationBatch items = mixed();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.isCheckOut(i)) single.tryBorrowBook(items.memberId(i), items.bookId(i), items.days(i));
+                else single.returnBook(items.memberId(i), items.bookId(i));
+            }
+            check(BenchData.state(single).equals(BenchData.state(logged)), "batch differs from single calls");
+
+            logged.closeJournal();
+            Library replayed = new Library();
+            replayed.openJournal(dir.resolve("journal").toString(), dir.resolve("library.snap").toString(),
+                    OperationJournal.FsyncPolicy.ALWAYS, 0);
+            replayed.closeJournal();
+            check(BenchData.state(replayed).equals(BenchData.state(logged)), "replayed batch differs");
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+            }
+        }
+    }
+}
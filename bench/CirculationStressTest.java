@@ -0,0 +1,115 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Borrow/return from several threads on a shared Library, then consistency checks: no physical
+// copy is ever lent to two members at once, the library's loan count equals the copies out, and
+// concurrent addMember never repeats an id. Each thread owns its own members, so it knows which
+// of its loans are open. Throughput under contention is measured by benchmarks.ContendedBorrowBench.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class CirculationStressTest {
+    private static final int BOOKS = 500, MAX_COPIES = 3, MEMBERS_PER_THREAD = 64, OPS_PER_THREAD = 20_000;
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    public void testOneThread() throws Exception {
+        run(1);
+    }
+
+    public void testContended() throws Exception {
+        run(Math.max(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static void run(int threads) throws Exception {
+        Library lib = new Library();
+        for (int i = 0; i < BOOKS; i++) {
+            lib.addNewNovel("Title " + i, "Author " + (i % 50), 500, "ISBN-" + i, 200, "Fantasy", 1 + i % MAX_COPIES);
+        }
+
+        // ids handed out under contention must be unique
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> idFutures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                idFutures.add(pool.submit(() -> {
+                    int[] ids = new int[MEMBERS_PER_THREAD];
+                    for (int i = 0; i < ids.length; i++) ids[i] = lib.addMember("m");
+                    return ids;
+                }));
+            }
+            Set<Integer> seen = new HashSet<>();
+            List<int[]> owned = new ArrayList<>();
+            for (Future<int[]> f : idFutures) {
+                int[] ids = f.get();
+                owned.add(ids);
+                for (int id : ids) check(seen.add(id), "duplicate member id " + id);
+            }
+
+            // holders[book * MAX_COPIES + copy]: how many members the threads think hold that copy
+            AtomicIntegerArray holders = new AtomicIntegerArray((BOOKS + 1) * MAX_COPIES);
+            ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<List<BorrowRecord>>> loops = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int[] myMembers = owned.get(t);
+                long seed = t;
+                loops.add(pool.submit(() -> {
+                    Random rnd = new Random(seed);
+                    List<BorrowRecord> open = new ArrayList<>();
+                    go.await();
+                    for (int n = 0; n < OPS_PER_THREAD; n++) {
+                        if (!open.isEmpty() && rnd.nextInt(2) == 0) {
+                            BorrowRecord loan = open.remove(rnd.nextInt(open.size()));
+                            holders.decrementAndGet(loan.getBookId() * MAX_COPIES + loan.getCopy());
+                            lib.returnBook(loan.getMemberId(), loan.getBookId());
+                        } else {
+                            int m = myMembers[rnd.nextInt(myMembers.length)];
+                            int b = 1 + rnd.nextInt(BOOKS);
+                            BorrowResult res = lib.tryBorrowBook(m, b, 14);
+                            if (!res.isBorrowed()) continue;
+                            BorrowRecord r = res.getRecord();
+                            if (holders.incrementAndGet(b * MAX_COPIES + r.getCopy()) != 1) {
+                                violations.add("book " + b + " copy " + r.getCopy() + " lent twice");
+                            }
+                            open.add(r);
+                        }
+                    }
+                    return open;
+                }));
+            }
+            go.countDown();
+            int stillOpen = 0;
+            for (Future<List<BorrowRecord>> f : loops) stillOpen += f.get().size();
+            check(violations.isEmpty(), String.valueOf(violations.peek()));
+
+            int copiesOut = 0;
+            for (int b = 1; b <= BOOKS; b++) {
+                PrintedBook book = (PrintedBook) lib.getBookById(b).get();
+                int out = book.getCopies() - book.getAvailableCopies(), held = 0;
+                for (int c = 0; c < MAX_COPIES; c++) held += holders.get(b * MAX_COPIES + c);
+                check(out == held, "book " + b + ": " + out + " copies out, " + held + " held");
+                copiesOut += out;
+            }
+            check(stillOpen == lib.getActiveLoanCount(),
+                    "open loans " + stillOpen + " but library has " + lib.getActiveLoanCount());
+            check(copiesOut == lib.getActiveLoanCount(),
+                    "copies out " + copiesOut + " but library has " + lib.getActiveLoanCount() + " loans");
+
+            // the library's own loan records name each copy once
+            Set<Long> lent = new HashSet<>();
+            for (int[] ids : owned) {
+                for (int m : ids) {
+                    for (BorrowRecord r : lib.getBorrowRecordsForMember(m)) {
+                        check(lent.add((long) r.getBookId() * MAX_COPIES + r.getCopy()),
+                                "book " + r.getBookId() + " copy " + r.getCopy() + " on two loans");
+                    }
+                }
+            }
+            check(lent.size() == copiesOut, lent.size() + " loan records for " + copiesOut + " copies out");
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
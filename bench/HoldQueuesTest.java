@@ -0,0 +1,119 @@
+import java.time.Duration;
+
+// Holds on a one-copy title through Library: a returned copy goes to the first in line and not
+// to a walk-in, an uncollected hold expires and the copy moves on to the next member, and
+// cancelling a waiting or ready hold. Expiry uses a short pickup window and polls for the change.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class HoldQueuesTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private Library lib;
+    private int book, ann, ben, cat, dan;
+
+    // one copy, lent to ann; ben then cat wait for it; dan walks in
+    private void setUp() {
+        lib = new Library();
+        book = lib.addNewNovel("Night Harbor", "S. Ali", 500, "ISBN-NH", 300, "Mystery", 1);
+        ann = lib.addMember("Ann");
+        ben = lib.addMember("Ben");
+        cat = lib.addMember("Cat");
+        dan = lib.addMember("Dan");
+        check(lib.tryBorrowBook(ann, book, 14).isBorrowed(), "ann's borrow");
+        check(lib.placeHold(ben, book).getStatus() == HoldQueues.Status.WAITING, "ben not waiting");
+        check(lib.placeHold(cat, book).getStatus() == HoldQueues.Status.WAITING, "cat not waiting");
+    }
+
+    private static void await(HoldQueues.Hold h, HoldQueues.Status status) throws InterruptedException {
+        for (long end = System.nanoTime() + 5_000_000_000L; h.getStatus() != status; Thread.sleep(5)) {
+            check(System.nanoTime() < end, "still " + h.getStatus() + ", expected " + status + ": " + h);
+        }
+    }
+
+    public void testReturnHandsTheCopyToTheFirstInLine() {
+        setUp();
+        try {
+            HoldQueues.Hold first = lib.getHolds().find(ben, book);
+            check(lib.placeHold(ben, book) == first, "placing again made a second hold");
+            check(lib.getHoldQueue(book).size() == 2, "queue " + lib.getHoldQueue(book));
+
+            int annsCopy = lib.getBorrowRecordsForMember(ann).get(0).getCopy();
+            lib.returnBook(ann, book);
+            check(first.getStatus() == HoldQueues.Status.READY, "ben not ready: " + first);
+            check(first.getCopy() == annsCopy, "copy kept " + first.getCopy());
+            check(((PrintedBook) lib.getBookById(book).get()).getAvailableCopies() == 0, "copy reached the shelf");
+            check(!lib.tryBorrowBook(dan, book, 14).isBorrowed(), "walk-in took the kept copy");
+            check(!lib.tryBorrowBook(cat, book, 14).isBorrowed(), "second in line took the kept copy");
+            check(lib.getHoldQueue(book).size() == 1 && lib.getHoldQueue(book).get(0).getMemberId() == cat,
+                    "queue " + lib.getHoldQueue(book));
+
+            check(lib.tryBorrowBook(ben, book, 14).isBorrowed(), "ben could not collect");
+            check(first.getStatus() == HoldQueues.Status.COLLECTED, "not collected: " + first);
+            check(lib.getHolds().find(ben, book) == null, "collected hold still live");
+            check(lib.getBorrowRecordsForMember(ben).get(0).getCopy() == annsCopy, "ben got another copy");
+
+            lib.returnBook(ben, book);
+            check(lib.getHolds().find(cat, book).getStatus() == HoldQueues.Status.READY, "cat not ready");
+        } finally {
+            lib.getHolds().shutdown();
+        }
+    }
+
+    public void testExpiredHoldPassesTheCopyOn() throws InterruptedException {
+        setUp();
+        try {
+            lib.getHolds().setPickupWindow(Duration.ofMillis(500));
+            HoldQueues.Hold first = lib.getHolds().find(ben, book), second = lib.getHolds().find(cat, book);
+            lib.returnBook(ann, book);
+            check(first.getStatus() == HoldQueues.Status.READY, "ben not ready: " + first);
+
+            await(first, HoldQueues.Status.EXPIRED);
+            check(second.getStatus() == HoldQueues.Status.READY, "copy did not move on to cat: " + second);
+            check(second.getCopy() == first.getCopy(), "cat got copy " + second.getCopy());
+            check(!lib.tryBorrowBook(ben, book, 14).isBorrowed(), "expired hold still collected");
+
+            // nobody left in line: the copy goes back to the shelf
+            await(second, HoldQueues.Status.EXPIRED);
+            check(lib.getHolds().find(cat, book) == null, "expired hold still live");
+            check(lib.tryBorrowBook(dan, book, 14).isBorrowed(), "copy not back on the shelf");
+        } finally {
+            lib.getHolds().shutdown();
+        }
+    }
+
+    public void testCancel() {
+        setUp();
+        try {
+            int eve = lib.addMember("Eve");
+            lib.placeHold(eve, book);
+
+            // a waiting hold leaves the queue
+            HoldQueues.Hold first = lib.getHolds().find(ben, book);
+            check(lib.cancelHold(ben, book), "cancel waiting");
+            check(first.getStatus() == HoldQueues.Status.CANCELLED, "not cancelled: " + first);
+            check(!lib.cancelHold(ben, book), "cancelled twice");
+            check(lib.getHoldQueue(book).size() == 2, "queue " + lib.getHoldQueue(book));
+
+            // the return skips ben and keeps the copy for cat
+            lib.returnBook(ann, book);
+            HoldQueues.Hold second = lib.getHolds().find(cat, book);
+            check(second.getStatus() == HoldQueues.Status.READY, "cat not ready: " + second);
+            check(!lib.tryBorrowBook(ben, book, 14).isBorrowed(), "cancelled hold collected");
+
+            // cancelling a ready hold passes the copy to eve
+            check(lib.cancelHold(cat, book), "cancel ready");
+            check(second.getStatus() == HoldQueues.Status.CANCELLED, "not cancelled: " + second);
+            check(lib.getHolds().find(eve, book).getStatus() == HoldQueues.Status.READY, "eve not ready");
+
+            // and with nobody left, to the shelf
+            check(lib.cancelHold(eve, book), "cancel eve");
+            check(lib.getHoldQueue(book).isEmpty(), "queue " + lib.getHoldQueue(book));
+            check(lib.tryBorrowBook(dan, book, 14).isBorrowed(), "copy not back on the shelf");
+            check(!lib.cancelHold(dan, book), "cancelled a hold that was never placed");
+        } finally {
+            lib.getHolds().shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load against the LibraryServer: each simulated client sends its next request as
+// soon as the previous answer arrives. Clients are chains of async calls, not threads, so
+// thousands of them fit in one process. Mix: 60% ranked search, 25% book lookup, 15% borrow
+// followed by return. Reports requests/s and latency percentiles.
+// Without a URL an in-process server on a synthetic catalog is started on a free port.
+// It is a load client, not a JMH benchmark. Build with `mvn -B test-compile`, then
+// run: java -cp target/classes:target/test-classes HttpLoadTest [baseUrl|-] [clients] [seconds] [catalog]
+public class HttpLoadTest {
+    private static final int MAX_MICROS = 10_000_000; // latencies above 10 s land in the last slot
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String base;
+    private final int catalog, members;
+    private final AtomicLongArray latency = new AtomicLongArray(MAX_MICROS + 1); // count per microsecond
+    private final LongAdder requests = new LongAdder(), errors = new LongAdder();
+    private volatile boolean running = true;
+
+    HttpLoadTest(String base, int catalog, int members) {
+        this.base = base;
+        this.catalog = catalog;
+        this.members = members;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "-";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int catalog = args.length > 3 ? Integer.parseInt(args[3]) : 50_000;
+        int members = 1_000;
+
+        LibraryServer server = null;
+        if (url.equals("-")) {
+            System.setProperty("sun.net.httpserver.nodelay", "true"); // as Main --serve does
+            server = new LibraryServer(BenchData.library(catalog, members, 0, 42), 0);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+        System.out.printf("%s  clients=%d  seconds=%d%n", url, clients, seconds);
+
+        HttpLoadTest t = new HttpLoadTest(url, catalog, members);
+        // one warm-up second, then the measured window
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) t.next(c, new Random(c), done);
+        Thread.sleep(1000);
+        t.reset();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long n = t.requests.sum();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        t.running = false;
+        done.await();
+
+        System.out.printf("requests %d  errors %d  rps %.0f%n", n, t.errors.sum(), n / elapsed);
+        System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                t.percentile(0.50), t.percentile(0.90), t.percentile(0.99), t.percentile(0.999), t.percentile(1.0));
+        if (server != null) server.stop(0);
+    }
+
+    // issues one request (or borrow+return pair) and schedules the next from its completion,
+    // so a client is never more than one pending future
+    private void next(int clientNo, Random rnd, CountDownLatch done) {
+        if (!running) {
+            done.countDown();
+            return;
+        }
+        int member = 1001 + clientNo % members;
+        int book = 1 + rnd.nextInt(catalog);
+        int pick = rnd.nextInt(100);
+        CompletableFuture<Void> step;
+        if (pick < 60) {
+            step = send(get("/search?q=" + word(rnd) + "+" + word(rnd) + "&limit=10"));
+        } else if (pick < 85) {
+            step = send(get("/books/" + book));
+        } else {
+            step = send(post("/borrow?member=" + member + "&book=" + book + "&days=14"))
+                    .thenCompose(v -> send(post("/return?member=" + member + "&book=" + book)));
+        }
+        step.whenComplete((v, e) -> next(clientNo, rnd, done));
+    }
+
+    private CompletableFuture<Void> send(HttpRequest req) {
+        long t0 = System.nanoTime();
+        return client.sendAsync(req, HttpResponse.BodyHandlers.discarding()).handle((resp, err) -> {
+            record((System.nanoTime() - t0) / 1000);
+            // 409 (copy out / not on loan) is a normal answer under load
+            if (err != null || resp.statusCode() >= 500 || resp.statusCode() == 400) errors.increment();
+            return null;
+        });
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+    }
+
+    private HttpRequest post(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private static String word(Random rnd) {
+        return BenchData.WORDS[rnd.nextInt(BenchData.WORDS.length)];
+    }
+
+    private void record(long micros) {
+        latency.incrementAndGet((int) Math.min(micros, MAX_MICROS));
+        requests.increment();
+    }
+
+    private void reset() {
+        for (int i = 0; i <= MAX_MICROS; i++) latency.set(i, 0);
+        requests.reset();
+        errors.reset();
+    }
+
+    private double percentile(double p) {
+        long total = 0;
+        for (int i = 0; i <= MAX_MICROS; i++) total += latency.get(i);
+        long target = Math.max(1, (long) Math.ceil(total * p)), seen = 0;
+        for (int i = 0; i <= MAX_MICROS; i++) {
+            seen += latency.get(i);
+            if (seen >= target) return i / 1000.0;
+        }
+        return MAX_MICROS / 1000.0;
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// The operation journal: a fresh Library that replays the segments (on top of the last snapshot,
+// if compaction wrote one) ends up in the same state as the one that logged them. Covers several
+// sessions' segments, a torn tail, replaying over a snapshot that already has it all, compaction while desks work, strings past
+// writeUTF's 64 KB and records written before the UTF-8 string format.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class JournalTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private static void same(Library want, Library got, String when) {
+        String a = BenchData.state(want), b = BenchData.state(got);
+        if (a.equals(b)) return;
+        int i = 0;
+        while (i < Math.min(a.length(), b.length()) && a.charAt(i) == b.charAt(i)) i++;
+        int from = Math.max(0, a.lastIndexOf('\n', i - 1) + 1);
+        throw new AssertionError(when + ": state differs at\n  want " + line(a, from) + "\n  got  " + line(b, from));
+    }
+
+    private static String line(String s, int from) {
+        int end = s.indexOf('\n', from);
+        return from >= s.length() ? "<end>" : s.substring(from, end < 0 ? s.length() : end);
+    }
+
+    private static Path tempDir() throws IOException {
+        return Files.createTempDirectory("journal-test");
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    private static Library open(Path dir) throws IOException {
+        Library lib = new Library();
+        lib.loadSnapshot(dir.resolve("library.snap").toString());
+        lib.openJournal(dir.resolve("journal").toString(), dir.resolve("library.snap").toString(),
+                OperationJournal.FsyncPolicy.ALWAYS, 0);
+        return lib;
+    }
+
+    // adds, borrows, returns and a removal; rnd decides which
+    private static void work(Library lib, Random rnd, int ops) {
+        for (int n = 0; n < ops; n++) {
+            int books = lib.peekNextBookId() - 1, members = lib.peekNextMemberId() - 1001;
+            int pick = rnd.nextInt(10);
+            if (pick == 0 || books == 0) {
+                int i = books + 1;
+                if (i % 3 == 0) {
+                    lib.addNewTextBook(BenchData.title(rnd, i), "Author " + rnd.nextInt(20), 100 + rnd.nextInt(900),
+                            "ISBN-" + i, 50 + rnd.nextInt(500), BenchData.SUBJECTS[rnd.nextInt(5)], 1 + rnd.nextInt(3));
+                } else {
+                    lib.addNewNovel(BenchData.title(rnd, i), "Autor Ünal " + rnd.nextInt(20), 100 + rnd.nextInt(900),
+                            "ISBN-" + i, 50 + rnd.nextInt(500), BenchData.GENRES[rnd.nextInt(5)], 1 + rnd.nextInt(3));
+                }
+            } else if (pick == 1 || members == 0) {
+                lib.addMember("Member " + members + " 名前");
+            } else {
+                int m = 1001 + rnd.nextInt(members), b = 1 + rnd.nextInt(books);
+                if (lib.getBookById(b).isEmpty()) continue;
+                if (lib.getBorrowRecordsForMember(m).stream().anyMatch(r -> r.getBookId() == b)) lib.returnBook(m, b);
+                else lib.tryBorrowBook(m, b, 1 + rnd.nextInt(28));
+            }
+        }
+    }
+
+    public void testReplayAcrossSessionsMatchesTheLoggingLibrary() throws Exception {
+        Path dir = tempDir();
+        try {
+            Random rnd = new Random(1);
+            Library lib = open(dir);
+            work(lib, rnd, 2_000);
+            lib.closeJournal();
+            // a second session starts a segment of its own, replayed after the first
+            lib = open(dir);
+            work(lib, rnd, 2_000);
+            int gone = lib.addNewNovel("Soon gone", "A", 10, "ISBN-GONE", 10, "Fantasy");
+            lib.removeBook(gone);
+            check(OperationJournal.segments(dir.resolve("journal")).size() == 2,
+                    "segments " + OperationJournal.segments(dir.resolve("journal")));
+
+            // no close: the process dies here, with every record fsynced (ALWAYS)
+            Library replayed = open(dir);
+            same(lib, replayed, "after replay");
+            check(replayed.getBookById(gone).isEmpty(), "removed book came back");
+
+            replayed.closeJournal();
+            lib.closeJournal();
+
+            // replay is idempotent over a snapshot that already holds every operation (what a
+            // compaction racing with desks leaves): the same segments again change nothing
+            Path snap = dir.resolve("library.snap");
+            replayed.saveSnapshot(snap.toString());
+            Library again = open(dir);
+            same(lib, again, "snapshot plus the whole journal again");
+            again.closeJournal();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    public void testTornTailIsIgnored() throws Exception {
+        Path dir = tempDir();
+        try {
+            Library lib = open(dir);
+            work(lib, new Random(2), 500);
+            lib.closeJournal();
+            List<Integer> segs = OperationJournal.segments(dir.resolve("journal"));
+            Path last = OperationJournal.segmentPath(dir.resolve("journal"), segs.get(segs.size() - 1));
+            // a record header promising more bytes than the crash let through
+            Files.write(last, ByteBuffer.allocate(11).putInt(400).putInt(12345).put(new byte[3]).array(),
+                    StandardOpenOption.APPEND);
+            Library replayed = open(dir);
+            same(lib, replayed, "with a torn tail");
+            replayed.closeJournal();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    public void testCompactionKeepsTheStateAndDropsSealedSegments() throws Exception {
+        Path dir = tempDir();
+        try {
+            Random rnd = new Random(3);
+            Library lib = open(dir);
+            work(lib, rnd, 1_500);
+            lib.compactJournal();
+            check(Files.exists(dir.resolve("library.snap")), "no snapshot");
+            check(OperationJournal.segments(dir.resolve("journal")).size() == 1, "sealed segments left behind");
+            work(lib, rnd, 1_500);
+
+            Library replayed = open(dir);
+            same(lib, replayed, "snapshot plus journal");
+            replayed.closeJournal();
+            lib.closeJournal();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // manual and background compactions at once, while a desk keeps borrowing and returning
+    public void testConcurrentCompactions() throws Exception {
+        Path dir = tempDir();
+        try {
+            Library lib = open(dir);
+            work(lib, new Random(4), 1_000);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread desk = new Thread(() -> work(lib, new Random(5), 3_000));
+            Thread[] compactors = new Thread[3];
+            for (int t = 0; t < compactors.length; t++) {
+                compactors[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 5; i++) lib.compactJournal();
+                    } catch (IOException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+            }
+            desk.start();
+            for (Thread t : compactors) t.start();
+            desk.join();
+            for (Thread t : compactors) t.join();
+            lib.closeJournal();
+            check(failure.get() == null, "compaction failed: " + failure.get());
+            try (Stream<Path> files = Files.list(dir)) {
+                check(files.noneMatch(p -> p.toString().endsWith(".tmp")), "snapshot temp file left behind");
+            }
+            Library replayed = open(dir);
+            same(lib, replayed, "after concurrent compactions");
+            replayed.closeJournal();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    public void testStringsPast64KB() throws Exception {
+        Path dir = tempDir();
+        try {
+            Library lib = open(dir);
+            String title = "ä".repeat(40_000); // 80,000 UTF-8 bytes
+            int id = lib.addNewNovel(title, "A", 10, "ISBN-LONG", 10, "Fantasy");
+            int m = lib.addMember("x".repeat(70_000));
+            lib.borrowBook(m, id, 14);
+            lib.closeJournal();
+            Library replayed = open(dir);
+            check(replayed.getBookById(id).map(Book::getTitle).orElse("").equals(title), "long title lost");
+            same(lib, replayed, "with long strings");
+            replayed.closeJournal();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // a segment written before strings were length-prefixed UTF-8: writeUTF strings, no op flag
+    public void testRecordsFromBeforeTheUtf8Format() throws Exception {
+        Path dir = tempDir();
+        try {
+            ByteArrayOutputStream seg = new ByteArrayOutputStream();
+            record(seg, out -> {
+                out.writeByte(OperationJournal.ADD_TEXTBOOK);
+                out.writeInt(1);
+                out.writeUTF("Old Physics");
+                out.writeUTF("Old Author");
+                out.writeDouble(250);
+                out.writeUTF("ISBN-OLD");
+                out.writeInt(300);
+                out.writeUTF("Physics");
+                out.writeInt(2);
+            });
+            record(seg, out -> {
+                out.writeByte(OperationJournal.ADD_MEMBER);
+                out.writeInt(1001);
+                out.writeUTF("Old Member");
+                out.writeInt((int) java.time.LocalDate.of(2024, 1, 2).toEpochDay());
+            });
+            Files.write(OperationJournal.segmentPath(dir.resolve("journal"), 1), seg.toByteArray());
+
+            Library lib = open(dir);
+            TextBook t = (TextBook) lib.getBookById(1).get();
+            check(t.getTitle().equals("Old Physics") && t.getSubject().equals("Physics") && t.getCopies() == 2,
+                    "old book read as " + t.getInfo());
+            check(lib.getMemberById(1001).get().getName().equals("Old Member"), "old member");
+            // new records go after the old ones and both replay
+            lib.addNewNovel("New Novel", "New Author", 100, "ISBN-NEW", 200, "Fantasy");
+            lib.closeJournal();
+            Library replayed = open(dir);
+            same(lib, replayed, "old and new records");
+            replayed.closeJournal();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static void record(ByteArrayOutputStream seg, Payload p) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        p.write(new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        seg.write(ByteBuffer.allocate(8).putInt(payload.length).putInt((int) crc.getValue()).array());
+        seg.write(payload);
+    }
+}
@@ -0,0 +1,551 @@
+import benchmarks.LibraryTarget;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Default-package side of benchmarks.LibraryTarget; see that interface for why it exists.
+public class LibraryBenchTarget implements LibraryTarget {
+    private Library lib = new Library();
+
+    // the old field layout, kept here only for comparison with Book
+    static final class StringBook {
+        final int id;
+        final String title, author;
+        double price;
+        final String isbn;
+        final int pages;
+        final CopyBitmap copies;
+        final String genre;
+
+        StringBook(int id, String title, String author, double price, String isbn, int pages, String genre) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.price = price;
+            this.isbn = isbn;
+            this.pages = pages;
+            this.copies = new CopyBitmap(1);
+            this.genre = genre;
+        }
+    }
+
+    // prepared rows for newBook / countByAuthor: Strings for the coded book, UTF-8 bytes (as a
+    // parser reads them) for the String-per-field one
+    private String[] titles, authors, isbns, genres;
+    private byte[][] titleBytes, authorBytes, isbnBytes, genreBytes;
+    private int[] prices, pages;
+    private Novel[] codedBooks;
+    private StringBook[] stringBooks;
+
+    // generateSharded; shardDir is set when the shards are launched JVMs
+    private ShardedLibrary sharded;
+    private Path shardDir;
+
+    // generateLoanStream: 'analytics' and 'history' hold the whole stream, 'recording' takes analyticsRecord
+    private BenchData.LoanStream stream;
+    private int streamTitles;
+    private CirculationAnalytics analytics, recording;
+    private LoanHistory history;
+
+    // generateNovels / addNovel / readBatch
+    private static final String[] SCALING_QUERIES = {"river", "night 12", "kamil chem", "stone 4", "war"};
+    private final AtomicInteger nextNovel = new AtomicInteger(1);
+
+    // generateLoans: the same open loans in a LoanStore and in a plain list
+    static final int LOAN_MEMBERS = 50_000;
+    private LoanStore loanStore;
+    private List<BorrowRecord> loanList;
+
+    // generateSearchIndex
+    private Book[] searchBooks;
+    private SortedCatalog searchCatalog;
+    private SearchIndex searchIndex;
+
+    @Override
+    public void generate(int catalog, int members, int loans, long seed) {
+        lib = BenchData.library(catalog, members, loans, seed);
+    }
+
+    @Override
+    public void generateHotTitles(int titles, int copies, int desks, boolean allOut) {
+        lib = new Library();
+        for (int t = 0; t < titles; t++) lib.addNewNovel("Hot title " + t, "Author", 500, "ISBN-H" + t, 300, "Thriller", copies);
+        for (int d = 0; d < desks; d++) lib.addMember("Desk " + d);
+        if (!allOut) return;
+        for (int c = 0; c < copies; c++) {
+            int holder = lib.addMember("Holder " + c);
+            for (int t = 1; t <= titles; t++) lib.borrowBook(holder, t, 28);
+        }
+    }
+
+    @Override
+    public String word(int i) {
+        return BenchData.WORDS[Math.floorMod(i, BenchData.WORDS.length)];
+    }
+
+    @Override
+    public void borrowBook(int memberId, int bookId, int days) {
+        lib.borrowBook(memberId, bookId, days);
+    }
+
+    @Override
+    public boolean tryBorrowBook(int memberId, int bookId, int days) {
+        return lib.tryBorrowBook(memberId, bookId, days).isBorrowed();
+    }
+
+    @Override
+    public double returnBook(int memberId, int bookId) {
+        return lib.returnBook(memberId, bookId);
+    }
+
+    @Override
+    public int circulateBatch(int[] memberIds, int[] bookIds, int days) {
+        CirculationBatch out = new CirculationBatch(memberIds.length), in = new CirculationBatch(memberIds.length);
+        for (int i = 0; i < memberIds.length; i++) {
+            out.checkOut(memberIds[i], bookIds[i], days);
+            in.checkIn(memberIds[i], bookIds[i]);
+        }
+        return lib.applyBatch(out).count(CirculationBatch.Outcome.BORROWED)
+                + lib.applyBatch(in).count(CirculationBatch.Outcome.RETURNED);
+    }
+
+    @Override
+    public void recordTiming() {
+        long t0 = System.nanoTime();
+        lib.getMetrics().record(LibraryMetrics.Op.SEARCH, t0);
+    }
+
+    @Override
+    public Object borrowRecordsForMember(int memberId) {
+        return lib.getBorrowRecordsForMember(memberId);
+    }
+
+    @Override
+    public Object searchByTitle(String query) {
+        return lib.searchByTitle(query);
+    }
+
+    @Override
+    public Object search(String query, int offset, int limit) {
+        return lib.search(query, offset, limit);
+    }
+
+    @Override
+    public Object listAllBooksSortedByTitle() {
+        return lib.listAllBooksSortedByTitle();
+    }
+
+    @Override
+    public Object facetQuery(String author, double maxPrice) {
+        CatalogQuery q = new CatalogQuery().type(Novel.class).genre("Fantasy").maxPrice(maxPrice).availableOnly();
+        if (author != null) q.author(author);
+        return lib.query(q, 0, 20);
+    }
+
+    @Override
+    public Object filterByScan(String author, double maxPrice) {
+        List<Book> out = new ArrayList<>();
+        for (Book b : lib.listAllBooksSortedByTitle()) {
+            if (b instanceof Novel && ((Novel) b).getGenre().equals("Fantasy") && b.getPrice() <= maxPrice
+                    && !((Novel) b).isBorrowed() && (author == null || b.getAuthor().equals(author))) out.add(b);
+        }
+        return out;
+    }
+
+    @Override
+    public void writeListing(java.io.Writer out) throws IOException {
+        lib.writeCatalogListing(out);
+    }
+
+    @Override
+    public void writeListingFormatted(java.io.Writer out) throws IOException {
+        for (Book b : lib.listAllBooksSortedByTitle()) {
+            String status = b instanceof PrintedBook ? String.valueOf(((PrintedBook) b).isBorrowed()) : "";
+            out.write(b.renderInfo(b.getPrice()) + status + System.lineSeparator());
+        }
+        out.flush();
+    }
+
+    @Override
+    public int[] listPage(int afterBookId, int limit) {
+        return lib.listBooksSortedByTitle(afterBookId, limit).stream().mapToInt(Book::getId).toArray();
+    }
+
+    @Override
+    public void saveCsv(String booksFile, String membersFile) throws IOException {
+        lib.saveBooksToFile(booksFile);
+        lib.saveMembersToFile(membersFile);
+    }
+
+    @Override
+    public void saveBooks(String booksFile) throws IOException {
+        lib.saveBooksToFile(booksFile);
+    }
+
+    @Override
+    public Object loadCsv(String booksFile, String membersFile) throws IOException {
+        Library fresh = new Library();
+        fresh.loadBooksFromFile(booksFile);
+        fresh.loadMembersFromFile(membersFile);
+        return fresh;
+    }
+
+    @Override
+    public void generateBookFields(int books, long seed) {
+        Random rnd = new Random(seed);
+        int authorCount = Math.max(1, books / 20);
+        titles = new String[books];
+        authors = new String[books];
+        isbns = new String[books];
+        genres = new String[books];
+        prices = new int[books];
+        pages = new int[books];
+        for (int i = 0; i < books; i++) {
+            titles[i] = BenchData.title(rnd, i);
+            authors[i] = "Author " + rnd.nextInt(authorCount);
+            prices[i] = 100 + rnd.nextInt(2000);
+            isbns[i] = "ISBN-" + i;
+            pages[i] = 100 + rnd.nextInt(900);
+            genres[i] = BenchData.GENRES[rnd.nextInt(BenchData.GENRES.length)];
+        }
+        titleBytes = utf8(titles);
+        authorBytes = utf8(authors);
+        isbnBytes = utf8(isbns);
+        genreBytes = utf8(genres);
+        codedBooks = new Novel[books];
+        stringBooks = new StringBook[books];
+        for (int i = 0; i < books; i++) {
+            codedBooks[i] = (Novel) newBook(i, true);
+            stringBooks[i] = (StringBook) newBook(i, false);
+        }
+    }
+
+    private static byte[][] utf8(String[] values) {
+        byte[][] out = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) out[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        return out;
+    }
+
+    private static String decode(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object newBook(int i, boolean coded) {
+        if (coded) return new Novel(i, titles[i], authors[i], prices[i], isbns[i], pages[i], genres[i]);
+        return new StringBook(i, decode(titleBytes[i]), decode(authorBytes[i]), prices[i], decode(isbnBytes[i]),
+                pages[i], decode(genreBytes[i]));
+    }
+
+    @Override
+    public int countByAuthor(String author, boolean coded) {
+        int hits = 0;
+        if (coded) {
+            int code = CatalogStrings.AUTHORS.code(author);
+            for (Novel b : codedBooks) if (b.getAuthorCode() == code) hits++;
+        } else {
+            for (StringBook b : stringBooks) if (b.author.equals(author)) hits++;
+        }
+        return hits;
+    }
+
+    @Override
+    public void writeVendorFeed(String file, int rows) throws IOException {
+        Random rnd = new Random(7);
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16))) {
+            pw.println("type\ttitle\tauthor\tprice\tisbn\tpages\tgenre\tcopies");
+            for (int i = 1; i <= rows; i++) {
+                boolean text = i % 3 == 0;
+                int isbn = i % 100 == 0 ? i - 1 : i;
+                pw.printf("%s\t%s\tVendor Author %d\t%d.%02d\t978-%09d\t%d\t%s\t%d%n",
+                        text ? "TextBook" : "Novel", BenchData.title(rnd, i), rnd.nextInt(Math.max(1, rows / 20)),
+                        100 + rnd.nextInt(2000), rnd.nextInt(100), isbn, 100 + rnd.nextInt(900),
+                        text ? BenchData.SUBJECTS[rnd.nextInt(BenchData.SUBJECTS.length)]
+                                : BenchData.GENRES[rnd.nextInt(BenchData.GENRES.length)], 1 + rnd.nextInt(3));
+            }
+        }
+    }
+
+    @Override
+    public Object importFeed(String file, int parseThreads) throws IOException {
+        return lib.importBooks(new BookImporter(lib).parseThreads(parseThreads), Path.of(file),
+                BookImporter.Format.VENDOR_TSV);
+    }
+
+    @Override
+    public int generateSharded(int shards, boolean remote, int books, int members, long seed) throws IOException {
+        closeSharded();
+        shardDir = remote ? Files.createTempDirectory("shards") : null;
+        sharded = remote ? ShardedLibrary.launch(shards, 1, shardDir) : ShardedLibrary.inProcess(shards, 1);
+        Random rnd = new Random(seed);
+        for (int i = 1; i <= books; i++) {
+            sharded.addNewNovel(BenchData.title(rnd, i), "Author " + rnd.nextInt(Math.max(1, books / 20)),
+                    100 + rnd.nextInt(2000), "978-" + i, 100 + rnd.nextInt(900),
+                    BenchData.GENRES[rnd.nextInt(BenchData.GENRES.length)], 1 + rnd.nextInt(3));
+        }
+        int first = sharded.addMember("Member 0");
+        for (int m = 1; m < members; m++) sharded.addMember("Member " + m);
+        return first;
+    }
+
+    @Override
+    public boolean shardedBorrowAndReturn(int memberId, int bookId) {
+        if (!sharded.tryBorrowBook(memberId, bookId, 14).isBorrowed()) return false;
+        sharded.returnBook(memberId, bookId);
+        return true;
+    }
+
+    @Override
+    public Object shardedSearch(String query, int k) {
+        return sharded.search(query, k);
+    }
+
+    @Override
+    public Object addShard() throws IOException {
+        String name = "shard-" + sharded.getShards().size();
+        return sharded.addShard(shardDir != null
+                ? RemoteShard.launch(name, shardDir.resolve(name))
+                : new LocalShard(name, new Library()));
+    }
+
+    @Override
+    public void closeSharded() {
+        if (sharded == null) return;
+        sharded.close();
+        sharded = null;
+    }
+
+    @Override
+    public void generateLoanStream(int loans, int titles, int members) {
+        stream = new BenchData.LoanStream(loans, titles, members);
+        streamTitles = titles;
+        analytics = new CirculationAnalytics();
+        history = new LoanHistory(false);
+        recording = new CirculationAnalytics();
+        for (int i = 0; i < loans; i++) {
+            stream.feed(analytics, i);
+            stream.append(history, i);
+        }
+    }
+
+    @Override
+    public void analyticsRecord(int i) {
+        stream.feed(recording, Math.floorMod(i, stream.size()));
+    }
+
+    @Override
+    public Object analyticsReport() {
+        return new Object[]{analytics.mostBorrowedBooks(10), analytics.averageLoanDays(),
+                analytics.lateReturnRate(), analytics.byMonth().size()};
+    }
+
+    @Override
+    public Object historyReport() {
+        return new Object[]{BenchData.exactTop(history, streamTitles, 10), history.averageLoanDays(),
+                history.countLateReturns() / (double) history.size()};
+    }
+
+    @Override
+    public void generateNovels(int books, long seed) {
+        lib = new Library();
+        Random rnd = new Random(seed);
+        nextNovel.set(1);
+        for (int i = 0; i < books; i++) addNovel(rnd);
+    }
+
+    @Override
+    public long readBatch(Random rnd) {
+        CatalogVersion v = lib.catalogSnapshot();
+        int size = v.size();
+        long sink = 0;
+        for (int i = 0; i < 100; i++) {
+            int id = 1 + rnd.nextInt(size);
+            switch (i % 10) {
+                case 0 -> sink += lib.searchByTitle(SCALING_QUERIES[rnd.nextInt(SCALING_QUERIES.length)]).size();
+                case 1 -> sink += v.pageAfter(v.get(id) != null ? id : 0, 20).size();
+                default -> sink += lib.getBookById(id) != null ? 1 : 0;
+            }
+        }
+        if (v.size() != size) throw new IllegalStateException("version changed under a reader");
+        return sink;
+    }
+
+    @Override
+    public void addNovel(Random rnd) {
+        int i = nextNovel.getAndIncrement();
+        lib.addNewNovel(BenchData.title(rnd, i), "Author " + rnd.nextInt(10_000), 100 + rnd.nextInt(2000),
+                "978-" + i, 100 + rnd.nextInt(900), BenchData.GENRES[rnd.nextInt(BenchData.GENRES.length)]);
+    }
+
+    @Override
+    public void generateLoans(int count) {
+        LocalDate today = LocalDate.now();
+        loanStore = new LoanStore();
+        loanList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            loanStore.add(loanRecord(i, today));
+            loanList.add(loanRecord(i, today));
+        }
+    }
+
+    private static BorrowRecord loanRecord(int i, LocalDate today) {
+        return new BorrowRecord(1001 + i % LOAN_MEMBERS, i + 1, today, today.plusDays(i % 28));
+    }
+
+    @Override
+    public void loanStoreCycle(int i) {
+        i = Math.floorMod(i, loanList.size());
+        BorrowRecord r = loanStore.remove(1001 + i % LOAN_MEMBERS, i + 1);
+        loanStore.add(r != null ? r : loanRecord(i, LocalDate.now()));
+    }
+
+    @Override
+    public int loanStoreForMember(int memberId) {
+        return loanStore.forMember(memberId).size();
+    }
+
+    @Override
+    public void loanListCycle(int i) {
+        i = Math.floorMod(i, loanList.size());
+        int memberId = 1001 + i % LOAN_MEMBERS, bookId = i + 1;
+        BorrowRecord found = null;
+        for (BorrowRecord r : loanList) {
+            if (r.getBookId() == bookId && r.getMemberId() == memberId) {
+                found = r;
+                break;
+            }
+        }
+        loanList.remove(found);
+        loanList.add(found);
+    }
+
+    @Override
+    public void generateSearchIndex(int count, long seed) {
+        String[] authors = {"Rowling", "Doe", "Umaira", "Bilal", "Alia", "Hamid", "Ahmed", "Khan"};
+        Random rnd = new Random(seed);
+        searchBooks = new Book[count];
+        for (int i = 0; i < count; i++) {
+            searchBooks[i] = new Novel(i + 1, BenchData.title(rnd, i), authors[rnd.nextInt(authors.length)], 500,
+                    "ISBN-" + i, 300, BenchData.GENRES[rnd.nextInt(BenchData.GENRES.length)]);
+        }
+        searchCatalog = new SortedCatalog();
+        searchCatalog.addAll(List.of(searchBooks));
+        searchIndex = new SearchIndex(searchCatalog);
+        searchIndex.addAll(List.of(searchBooks));
+    }
+
+    @Override
+    public int indexTitleContains(String query) {
+        return searchCatalog.titleContains(query).size();
+    }
+
+    @Override
+    public int indexSearch(String query, int k) {
+        return searchIndex.search(query, 0, k).size();
+    }
+
+    @Override
+    public int titleScan(String query) {
+        String q = query.toLowerCase();
+        int hits = 0;
+        for (Book b : searchBooks) if (b.getTitle().toLowerCase().contains(q)) hits++;
+        return hits;
+    }
+
+    @Override
+    public void openJournal(String dir, String policy) throws IOException {
+        lib.openJournal(Path.of(dir, "library.journal").toString(), Path.of(dir, "library.snap").toString(),
+                OperationJournal.FsyncPolicy.valueOf(policy), 0);
+    }
+
+    @Override
+    public void closeJournal() throws IOException {
+        lib.closeJournal();
+    }
+
+    @Override
+    public void writeBooksCsv(String file, int rows) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16))) {
+            for (int i = 1; i <= rows; i++) {
+                String type = i % 3 != 0 ? "Novel" : "TextBook";
+                String title = "Title " + i;
+                String author = "Author " + (i % 5000);
+                double price = 100 + (i % 900) + 0.5;
+                pw.printf("%d,%s,%s,%s,%.2f,%s,%d,%s (ID:%d) \"%s\" by %s | ISBN:%s | ₹%.2f | Borrowed:false%n",
+                        i, type, title, author, price, "ISBN-" + i, 100 + i % 700, type, i, title, author, "ISBN-" + i, price);
+            }
+        }
+    }
+
+    @Override
+    public int loadBooksSplit(String file) throws IOException {
+        List<Book> out = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split(",", 8);
+                if (parts.length < 8) continue;
+                int id = Integer.parseInt(parts[0]);
+                double price = Double.parseDouble(parts[4]);
+                int pages = Integer.parseInt(parts[6]);
+                if ("Novel".equals(parts[1])) out.add(new Novel(id, parts[2], parts[3], price, parts[5], pages, "Jasoosi"));
+                else if ("TextBook".equals(parts[1])) out.add(new TextBook(id, parts[2], parts[3], price, parts[5], pages, "Unknown"));
+                else out.add(new PrintedBook(id, parts[2], parts[3], price, parts[5], pages));
+            }
+        }
+        return out.size();
+    }
+
+    @Override
+    public int loadBooksMapped(String file, boolean parallel) throws IOException {
+        return CsvLoader.loadBooks(Path.of(file), parallel).size();
+    }
+
+    @Override
+    public void generateSnapshotLibrary(int n) {
+        lib = new Library();
+        for (int i = 0; i < n; i++) {
+            if (i % 3 == 0) lib.addNewTextBook("Title " + i, "Author " + (i % 5000), 250.5, "ISBN-" + i, 300, "Physics");
+            else lib.addNewNovel("Title " + i, "Author " + (i % 5000), 400, "ISBN-" + i, 250, "Fantasy");
+        }
+        for (int i = 0; i < n / 100; i++) lib.addMember("Member " + i);
+        for (int i = 0; i < n / 20; i++) lib.borrowBook(1001 + i % (n / 100), 2 + 3 * i, 14);
+    }
+
+    @Override
+    public void saveSnapshot(String file) throws IOException {
+        lib.saveSnapshot(file);
+    }
+
+    @Override
+    public Object loadBooksCsv(String booksFile) throws IOException {
+        Library fresh = new Library();
+        fresh.loadBooksFromFile(booksFile);
+        return fresh;
+    }
+
+    @Override
+    public Object loadSnapshot(String file) throws IOException {
+        Library fresh = new Library();
+        fresh.loadSnapshot(file);
+        return fresh;
+    }
+
+    @Override
+    public Object snapshotLastBook(String file) throws IOException {
+        LibrarySnapshot.Reader r = LibrarySnapshot.open(Path.of(file));
+        return r.book(r.bookCount() - 1);
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+// LibraryServer on a free local port: /return through Library.tryReturnBook (metered as RETURN,
+// NOT_ON_LOAN kept apart from a return with no fine), routes matched on whole path segments,
+// and doubles JSON can't carry written as null.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class LibraryServerTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private Library lib;
+    private LibraryServer server;
+
+    private void start() throws IOException {
+        lib = new Library();
+        server = new LibraryServer(lib, 0);
+        server.start();
+    }
+
+    private HttpResponse<String> call(String method, String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + pathAndQuery))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    public void testReturnIsMeteredAsAReturn() throws Exception {
+        start();
+        try {
+            int book = lib.addNewNovel("River Stone", "A. Khan", 450, "ISBN-RS", 250, "Fantasy");
+            int ann = lib.addMember("Ann");
+            check(lib.tryBorrowBook(ann, book, 14).isBorrowed(), "borrow");
+            long returns = lib.getMetrics().latency(LibraryMetrics.Op.RETURN).count();
+            long batches = lib.getMetrics().latency(LibraryMetrics.Op.BATCH).count();
+
+            HttpResponse<String> r = call("POST", "/return?member=" + ann + "&book=" + book);
+            check(r.statusCode() == 200 && r.body().equals("{\"status\":\"RETURNED\",\"fine\":0.0}"), r.statusCode() + " " + r.body());
+            r = call("POST", "/return?member=" + ann + "&book=" + book);
+            check(r.statusCode() == 409 && r.body().contains("NOT_ON_LOAN"), r.statusCode() + " " + r.body());
+            r = call("POST", "/return?member=" + ann + "&book=999");
+            check(r.statusCode() == 404, r.statusCode() + " " + r.body());
+
+            check(lib.getMetrics().latency(LibraryMetrics.Op.RETURN).count() == returns + 2, "returns not metered");
+            check(lib.getMetrics().latency(LibraryMetrics.Op.BATCH).count() == batches, "return metered as a batch");
+            check(lib.returnBook(ann, book) == 0.0, "returnBook of a book not on loan");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void testRoutesMatchWholeSegments() throws Exception {
+        start();
+        try {
+            int book = lib.addNewNovel("River Stone", "A. Khan", 450, "ISBN-RS", 250, "Fantasy");
+            check(call("GET", "/books").statusCode() == 200, "/books");
+            check(call("GET", "/books/" + book).statusCode() == 200, "/books/id");
+            for (String p : new String[]{"/booksX", "/books-old/1", "/returnAll", "/statsx"}) {
+                HttpResponse<String> r = call("GET", p);
+                check(r.statusCode() == 404 && r.body().contains("not_found"), p + ": " + r.statusCode() + " " + r.body());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void testNonFiniteDoublesAreNull() throws Exception {
+        start();
+        try {
+            HttpResponse<String> r = call("POST", "/books?id=7&type=Novel&title=T&author=A&price=NaN&isbn=X");
+            check(r.statusCode() == 201 && r.body().contains("\"price\":null"), r.statusCode() + " " + r.body());
+            r = call("GET", "/books/7");
+            check(r.body().contains("\"price\":null") && !r.body().contains("NaN"), r.body());
+            r = call("GET", "/analytics");
+            check(r.statusCode() == 200 && r.body().contains("\"averageLoanDays\":0.0"), r.body());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
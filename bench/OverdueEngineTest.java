@@ -0,0 +1,41 @@
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// The nightly overdue run is booked from the wall clock each time, so across a DST change it
+// still lands at 00:05 local time instead of drifting an hour with a fixed 24 h period.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class OverdueEngineTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private static long hoursToNextRun(String zone, String localTime) {
+        ZonedDateTime now = LocalDateTime.parse(localTime).atZone(ZoneId.of(zone));
+        long ms = OverdueEngine.millisToNextRun(now);
+        check(ms % TimeUnit.HOURS.toMillis(1) == 0, zone + " " + localTime + ": " + ms + " ms");
+        return TimeUnit.MILLISECONDS.toHours(ms);
+    }
+
+    public void testNextRunIsTheNextLocalMidnight() {
+        check(hoursToNextRun("Asia/Karachi", "2026-03-29T00:05") == 24, "no DST");
+        // clocks go forward at 02:00 on 29 March and back at 03:00 on 25 October
+        check(hoursToNextRun("Europe/Berlin", "2026-03-29T00:05") == 23, "spring forward");
+        check(hoursToNextRun("Europe/Berlin", "2026-10-25T00:05") == 25, "fall back");
+        check(hoursToNextRun("Europe/Berlin", "2026-10-26T00:05") == 24, "the day after");
+        check(hoursToNextRun("America/New_York", "2026-03-07T12:05") == 12, "from midday");
+    }
+
+    public void testStartAndStopNightly() throws InterruptedException {
+        OverdueEngine engine = new OverdueEngine(new LoanStore());
+        CountDownLatch ran = new CountDownLatch(1);
+        engine.setRunListener(d -> ran.countDown());
+        engine.startNightly(batch -> { });
+        check(ran.await(5, TimeUnit.SECONDS), "no run at start");
+        engine.stopNightly();
+        check(engine.getLastRun() != null, "last run not recorded");
+    }
+}
@@ -0,0 +1,35 @@
+// Borrowed status of the printed kinds: a title reads as borrowed only while every copy is out.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class PrintedBookTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    public void testTextBookIsBorrowedOnlyWhenEveryCopyIsOut() {
+        Library lib = new Library();
+        int id = lib.addNewTextBook("Organic Chemistry", "R. Khan", 900, "ISBN-OC", 600, "Chemistry", 2);
+        int ann = lib.addMember("Ann"), ben = lib.addMember("Ben");
+        TextBook t = (TextBook) lib.getBookById(id).get();
+        check(!t.isBorrowed(), "borrowed before any loan");
+        check(lib.tryBorrowBook(ann, id, 14).isBorrowed(), "first copy");
+        check(!t.isBorrowed(), "borrowed with a copy on the shelf");
+        check(t.getInfo().endsWith("borrowed:false"), t.getInfo());
+        check(lib.tryBorrowBook(ben, id, 14).isBorrowed(), "second copy");
+        check(t.isBorrowed(), "not borrowed with every copy out");
+        check(t.getInfo().endsWith("borrowed:true"), t.getInfo());
+        lib.returnBook(ann, id);
+        check(!t.isBorrowed(), "still borrowed after a return");
+    }
+
+    public void testNovelAndPrintedBookAgree() {
+        Library lib = new Library();
+        int novel = lib.addNewNovel("Night Harbor", "S. Ali", 500, "ISBN-NH", 300, "Mystery", 1);
+        int ann = lib.addMember("Ann");
+        check(lib.tryBorrowBook(ann, novel, 14).isBorrowed(), "borrow");
+        check(((PrintedBook) lib.getBookById(novel).get()).isBorrowed(), "novel not borrowed");
+        PrintedBook p = new PrintedBook(99, "Plain", "A", 1, "ISBN-P", 10, 1);
+        check(!p.isBorrowed(), "fresh book borrowed");
+        check(p.borrowCopy(0) && p.isBorrowed(), "single copy lent but not borrowed");
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+// ShardedLibrary over in-process shards: routing, the fan-out top-k merge, and addShard.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class ShardedLibraryTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    private static int add(ShardedLibrary sl, Library single, Random rnd, int i) {
+        String title = BenchData.title(rnd, i), author = "Author " + rnd.nextInt(50);
+        String genre = BenchData.GENRES[rnd.nextInt(BenchData.GENRES.length)];
+        int id = sl.addNewNovel(title, author, 20, "978-" + i, 300, genre, 1);
+        if (single != null) single.addExistingBook(new Novel(id, title, author, 20, "978-" + i, 300, genre, 1));
+        return id;
+    }
+
+    private static Library libraryOf(LibraryShard s) {
+        return ((LocalShard) s).getLibrary();
+    }
+
+    public void testEveryBookLivesOnItsRoutedShardOnly() {
+        try (ShardedLibrary sl = ShardedLibrary.inProcess(3, 1)) {
+            Random rnd = new Random(1);
+            int member = sl.addMember("Ann");
+            for (int i = 1; i <= 600; i++) {
+                int id = add(sl, null, rnd, i);
+                LibraryShard owner = sl.shardFor(id);
+                for (LibraryShard s : sl.getShards()) {
+                    check(s.getBook(id).isPresent() == (s == owner), "book " + id + " on " + s.name());
+                }
+            }
+            check(sl.getBookCount() == 600, "book count " + sl.getBookCount());
+            for (LibraryShard s : sl.getShards()) check(s.bookCount() > 0, s.name() + " got no books");
+
+            int id = 17;
+            check(sl.tryBorrowBook(member, id, 14).isBorrowed(), "borrow " + id);
+            for (LibraryShard s : sl.getShards()) {
+                int loans = libraryOf(s).getActiveLoanCount();
+                check(loans == (s == sl.shardFor(id) ? 1 : 0), s.name() + " holds " + loans + " loans");
+            }
+            sl.returnBook(member, id);
+            check(libraryOf(sl.shardFor(id)).getActiveLoanCount() == 0, "loan not returned");
+        }
+    }
+
+    public void testRangeRoutingKeepsConsecutiveIdsTogether() {
+        try (ShardedLibrary sl = ShardedLibrary.inProcess(4, 64)) {
+            Random rnd = new Random(2);
+            for (int i = 1; i <= 640; i++) add(sl, null, rnd, i);
+            for (int id = 1; id <= 640; id++) {
+                check(sl.shardFor(id) == sl.shardFor(id / 64 * 64), "id " + id + " left its range");
+            }
+        }
+    }
+
+    public void testMergedSearchMatchesOneLibrary() {
+        Library single = new Library();
+        try (ShardedLibrary sl = ShardedLibrary.inProcess(4, 1)) {
+            Random rnd = new Random(3);
+            for (int i = 1; i <= 2_000; i++) add(sl, single, rnd, i);
+            for (String q : new String[]{"river", "night", "author 7", "sto", "war 1", "zzz"}) {
+                for (int k : new int[]{1, 10, 50}) {
+                    List<Integer> want = new ArrayList<>(), got = new ArrayList<>();
+                    for (Book b : single.search(q, 0, k)) want.add(b.getId());
+                    for (Book b : sl.search(q, k)) got.add(b.getId());
+                    check(want.equals(got), "search '" + q + "' k=" + k + ": " + got + " != " + want);
+                }
+                List<Integer> want = new ArrayList<>(), got = new ArrayList<>();
+                // the router's order: title, then id
+                List<Book> all = single.searchByTitle(q);
+                all.sort(Comparator.comparing((Book b) -> SortedCatalog.fold(b.getTitle())).thenComparingInt(Book::getId));
+                for (int i = 0; i < Math.min(20, all.size()); i++) want.add(all.get(i).getId());
+                for (Book b : sl.searchByTitle(q, 20)) got.add(b.getId());
+                check(want.equals(got), "title '" + q + "': " + got + " != " + want);
+            }
+        }
+    }
+
+    public void testAddShardMovesOnlyFreeBooks() {
+        try (ShardedLibrary sl = ShardedLibrary.inProcess(2, 1)) {
+            Random rnd = new Random(4);
+            int member = sl.addMember("Ben");
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 1; i <= 400; i++) ids.add(add(sl, null, rnd, i));
+            List<Integer> lent = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i += 5) {
+                check(sl.tryBorrowBook(member, ids.get(i), 14).isBorrowed(), "borrow " + ids.get(i));
+                lent.add(ids.get(i));
+            }
+            List<LibraryShard> home = new ArrayList<>();
+            for (int id : ids) home.add(sl.shardFor(id));
+
+            LocalShard added = new LocalShard("shard-2", new Library());
+            ShardedLibrary.Rebalance r = sl.addShard(added);
+            check(added.getLibrary().getMemberById(member).isPresent(), "member not copied to the new shard");
+
+            int movedOff = 0, pinned = 0;
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                LibraryShard now = sl.shardFor(id);
+                check(now.getBook(id).isPresent(), "book " + id + " not on its routed shard");
+                if (lent.contains(id)) {
+                    check(now == home.get(i), "lent book " + id + " moved");
+                    if (sl.getShards().indexOf(now) != ringOwner(sl, id)) pinned++;
+                } else {
+                    check(now == sl.getShards().get(ringOwner(sl, id)), "free book " + id + " not on its owner");
+                    if (now != home.get(i)) movedOff++;
+                }
+            }
+            check(r.getMoved() == movedOff, "moved " + r.getMoved() + ", counted " + movedOff);
+            check(r.getPinned() == pinned, "pinned " + r.getPinned() + ", counted " + pinned);
+            check(movedOff > 0, "nothing moved to the new shard");
+            check(sl.getBookCount() == ids.size(), "book count " + sl.getBookCount());
+
+            // once returned, a rebalance takes the pinned ones too
+            for (int id : lent) sl.returnBook(member, id);
+            ShardedLibrary.Rebalance again = sl.rebalance();
+            check(again.getPinned() == 0, "still pinned after returns: " + again);
+            check(again.getMoved() == pinned, "rebalance moved " + again.getMoved() + " of " + pinned);
+            for (int id : ids) check(sl.shardFor(id) == sl.getShards().get(ringOwner(sl, id)), "book " + id);
+        }
+    }
+
+    // Borrows and returns keep running while addShard moves books; none may find its book missing.
+    public void testCirculationDuringAddShard() throws Exception {
+        try (ShardedLibrary sl = ShardedLibrary.inProcess(2, 1)) {
+            Random rnd = new Random(5);
+            int member = sl.addMember("Cy");
+            for (int i = 1; i <= 2_000; i++) add(sl, null, rnd, i);
+            AtomicReference<String> failure = new AtomicReference<>();
+            Thread t = new Thread(() -> {
+                Random r = new Random(6);
+                for (int n = 0; n < 20_000 && failure.get() == null; n++) {
+                    int id = 1 + r.nextInt(2_000);
+                    BorrowResult res = sl.tryBorrowBook(member, id, 14);
+                    if (res.getStatus() == BorrowResult.Status.NO_SUCH_BOOK) failure.set("book " + id + " missing");
+                    if (res.isBorrowed()) sl.returnBook(member, id);
+                }
+            });
+            t.start();
+            sl.addShard(new LocalShard("shard-2", new Library()));
+            sl.addShard(new LocalShard("shard-3", new Library()));
+            t.join();
+            check(failure.get() == null, failure.get());
+            check(sl.getBookCount() == 2_000, "book count " + sl.getBookCount());
+        }
+    }
+
+    private static int ringOwner(ShardedLibrary sl, int id) {
+        return new ShardRing(sl.getShards().size(), 1).owner(id);
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Random;
+
+// LibrarySnapshot: save then load gives back the same library (copies, open loans with their copy
+// numbers, history, counters, the overdue engine's last run); files from before version 3 still
+// load; a newer version is refused; rows read the same through small mapped regions.
+// Run by `mvn test`; a failed check throws AssertionError.
+public class SnapshotTest {
+
+    private static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    // multi-copy titles of every kind, loans on copies past 0, returns in the history
+    private static Library busyLibrary() {
+        Library lib = BenchData.library(300, 40, 0, 21);
+        int many = lib.addNewNovel("Ünïcødé ナイト", "Ö. Author", 777, "ISBN-U", 321, "Fantasy", 4);
+        Random rnd = new Random(22);
+        for (int n = 0; n < 2_000; n++) {
+            int m = 1001 + rnd.nextInt(40), b = 1 + rnd.nextInt(300);
+            if (lib.getBorrowRecordsForMember(m).stream().anyMatch(r -> r.getBookId() == b)) lib.returnBook(m, b);
+            else lib.tryBorrowBook(m, b, 1 + rnd.nextInt(28));
+        }
+        // the last member holds copy 1 of the four
+        lib.borrowBook(lib.addMember("Copy Taker A"), many, 14);
+        lib.borrowBook(lib.addMember("Copy Taker B"), many, 14);
+        return lib;
+    }
+
+    public void testSaveLoadRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot-test");
+        Path file = dir.resolve("library.snap");
+        try {
+            Library lib = busyLibrary();
+            lib.getOverdueEngine().restoreLastRun(LocalDate.of(2025, 3, 14));
+            check(lib.getLoanHistory().size() > 0, "no history to save");
+            check(lib.getBorrowRecordsForMember(lib.peekNextMemberId() - 1).get(0).getCopy() == 1, "second copy");
+            lib.saveSnapshot(file.toString());
+
+            Library loaded = new Library();
+            loaded.loadSnapshot(file.toString());
+            check(BenchData.state(lib).equals(BenchData.state(loaded)), "state differs after load");
+            check(LocalDate.of(2025, 3, 14).equals(loaded.getOverdueEngine().getLastRun()),
+                    "overdue last run " + loaded.getOverdueEngine().getLastRun());
+            check(loaded.getActiveLoanCount() == lib.getActiveLoanCount(), "loan count");
+
+            // and again from the loaded copy
+            loaded.saveSnapshot(file.toString());
+            Library twice = new Library();
+            twice.loadSnapshot(file.toString());
+            check(BenchData.state(lib).equals(BenchData.state(twice)), "state differs after a second round trip");
+            try (var files = Files.list(dir)) {
+                check(files.count() == 1, "temp files left next to the snapshot");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    public void testNoOverdueRunIsNoSection() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".snap");
+        try {
+            Library lib = busyLibrary();
+            lib.saveSnapshot(file.toString());
+            LibrarySnapshot.Reader r = LibrarySnapshot.open(file);
+            check(r.overdueLastRun() == null, "overdue run out of nowhere");
+            check(ByteBuffer.wrap(Files.readAllBytes(file), 12, 4).getInt() == 7, "section count");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // every row of a snapshot read through 4 KB regions, so strings and columns cross region ends
+    public void testSmallRegionsReadTheSameRows() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".snap");
+        try {
+            Library lib = busyLibrary();
+            lib.saveSnapshot(file.toString());
+            check(Files.size(file) > 5 * 4096, "snapshot too small to span regions");
+            LibrarySnapshot.Reader whole = LibrarySnapshot.open(file), small;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                small = new LibrarySnapshot.Reader(new LibrarySnapshot.Mapped(ch, 12));
+            }
+            check(whole.bookCount() == small.bookCount(), "book count");
+            for (int i = 0; i < whole.bookCount(); i++) {
+                check(whole.book(i).getInfo().equals(small.book(i).getInfo()), "book row " + i);
+            }
+            for (int i = 0; i < whole.memberCount(); i++) {
+                Member a = whole.member(i), b = small.member(i);
+                check(a.getMemberId() == b.getMemberId() && a.getName().equals(b.getName()), "member row " + i);
+            }
+            for (int i = 0; i < whole.loanCount(); i++) {
+                BorrowRecord a = whole.loan(i), b = small.loan(i);
+                check(a.getBookId() == b.getBookId() && a.getCopy() == b.getCopy() && a.getDueDate().equals(b.getDueDate()),
+                        "loan row " + i);
+            }
+            LoanHistory h1 = new LoanHistory(false), h2 = new LoanHistory(false);
+            whole.copyHistoryInto(h1);
+            small.copyHistoryInto(h2);
+            StringBuilder s1 = new StringBuilder(), s2 = new StringBuilder();
+            h1.forEach((m, b, br, d, r) -> s1.append(m).append(b).append(br).append(d).append(r).append(';'));
+            h2.forEach((m, b, br, d, r) -> s2.append(m).append(b).append(br).append(d).append(r).append(';'));
+            check(h1.size() > 0 && s1.toString().equals(s2.toString()), "history rows");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public void testNewerVersionIsRefused() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".snap");
+        try {
+            new Library().saveSnapshot(file.toString());
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer.wrap(bytes).putInt(8, LibrarySnapshot.VERSION + 1);
+            Files.write(file, bytes);
+            try {
+                LibrarySnapshot.open(file);
+                throw new AssertionError("opened a version " + (LibrarySnapshot.VERSION + 1) + " file");
+            } catch (IOException expected) {
+                check(expected.getMessage().contains("unsupported snapshot version"), expected.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // A version 1 file, as the first snapshot writer laid it out: no COPIES, LOAN_COPY or OVERDUE.
+    // Every book has one copy and every loan holds copy 0.
+    public void testVersion1FileLoads() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".snap");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(LibrarySnapshot.MAGIC);
+            out.writeInt(1);
+            out.writeInt(5);
+            section(out, LibrarySnapshot.COUNTERS, s -> {
+                s.writeInt(3);
+                s.writeInt(1002);
+            });
+            section(out, LibrarySnapshot.BOOKS, s -> {
+                s.writeInt(2);
+                s.writeInt(1);
+                s.writeInt(2);
+                s.writeByte(LibrarySnapshot.NOVEL);
+                s.writeByte(LibrarySnapshot.TEXTBOOK);
+                s.writeDouble(450);
+                s.writeDouble(1200.5);
+                s.writeInt(320);
+                s.writeInt(610);
+                column(s, "Old Novel", "Old Textbook");
+                column(s, "Author N", "Author T");
+                column(s, "ISBN-1", "ISBN-2");
+                column(s, "Mystery", "Algebra");
+            });
+            section(out, LibrarySnapshot.MEMBERS, s -> {
+                s.writeInt(1);
+                s.writeInt(1001);
+                s.writeInt((int) LocalDate.of(2023, 5, 6).toEpochDay());
+                column(s, "Old Member");
+            });
+            int borrowed = (int) LocalDate.of(2024, 2, 1).toEpochDay();
+            section(out, LibrarySnapshot.LOANS, s -> {
+                s.writeInt(1);
+                s.writeInt(1001);
+                s.writeInt(2);
+                s.writeInt(borrowed);
+                s.writeInt(borrowed + 14);
+            });
+            section(out, LibrarySnapshot.HISTORY, s -> {
+                s.writeInt(1);
+                for (int v : new int[]{1001, 1, borrowed - 30, borrowed - 16, borrowed - 20}) s.writeInt(v);
+            });
+            Files.write(file, bytes.toByteArray());
+
+            Library lib = new Library();
+            lib.loadSnapshot(file.toString());
+            Novel n = (Novel) lib.getBookById(1).get();
+            TextBook t = (TextBook) lib.getBookById(2).get();
+            check(n.getTitle().equals("Old Novel") && n.getGenre().equals("Mystery") && n.getCopies() == 1, n.getInfo());
+            check(t.getSubject().equals("Algebra") && t.getPrice() == 1200.5 && t.isBorrowed(), t.getInfo());
+            BorrowRecord loan = lib.getBorrowRecordsForMember(1001).get(0);
+            check(loan.getBookId() == 2 && loan.getCopy() == 0 && loan.getDueDate().toEpochDay() == borrowed + 14,
+                    "loan " + loan);
+            check(lib.getLoanHistory().size() == 1 && lib.getLoanHistory().get(0).getBookId() == 1, "history");
+            check(lib.getMemberById(1001).get().getName().equals("Old Member"), "member");
+            check(lib.getOverdueEngine().getLastRun() == null, "overdue run from a v1 file");
+            check(lib.addNewNovel("Next", "A", 1, "ISBN-3", 1, "Fantasy") == 3, "next book id");
+            check(lib.addMember("Next") == 1002, "next member id");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private interface Body {
+        void write(DataOutputStream s) throws IOException;
+    }
+
+    private static void section(DataOutputStream out, int id, Body body) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        body.write(new DataOutputStream(payload));
+        out.writeInt(id);
+        out.writeLong(payload.size());
+        payload.writeTo(out);
+    }
+
+    private static void column(DataOutputStream s, String... values) throws IOException {
+        int off = 0;
+        s.writeInt(0);
+        for (String v : values) s.writeInt(off += v.getBytes(StandardCharsets.UTF_8).length);
+        for (String v : values) s.write(v.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Adding one shard to a loaded ShardedLibrary: the new shard gets the members and every book the
+// ring now gives it. Each call starts from a freshly loaded library with 'shards' shards.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddShardBench {
+    @Param({"1", "2", "4"})
+    int shards;
+
+    @Param({"100000"})
+    int books;
+
+    @Param({"false"})
+    boolean remote;
+
+    LibraryTarget lib;
+
+    @Setup(Level.Invocation)
+    public void setup() throws IOException {
+        lib = LibraryTarget.create();
+        lib.generateSharded(shards, remote, books, 64, 42);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        lib.closeSharded();
+    }
+
+    @Benchmark
+    public Object addShard() throws IOException {
+        return lib.addShard();
+    }
+}
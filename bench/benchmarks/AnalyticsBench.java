@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Incremental circulation reports (CirculationAnalytics) against rescanning LoanHistory, over a
+// stream of completed loans with Zipf-skewed titles and members: the cost of recording one loan,
+// and of one report refresh each way. Sketch accuracy is checked by CirculationAnalyticsTest.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyticsBench {
+    @Param({"1000000"})
+    int loans;
+
+    @Param({"200000"})
+    int titles;
+
+    @Param({"50000"})
+    int members;
+
+    LibraryTarget lib;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generateLoanStream(loans, titles, members);
+        next = 0;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void record() {
+        lib.analyticsRecord(next++);
+    }
+
+    @Benchmark
+    public Object reportFromSketches() {
+        return lib.analyticsReport();
+    }
+
+    @Benchmark
+    public Object reportByRescan() {
+        return lib.historyReport();
+    }
+}
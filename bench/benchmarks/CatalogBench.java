@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Catalog reads: title search, ranked search, faceted queries, the full sorted listing and its
+// printed form (getInfo lines).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogBench {
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    LibraryTarget lib;
+    int next;
+    int pageCursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generate(catalogSize, 100, 0, 42);
+        lib.searchByTitle("warm"); // builds the search index outside the measurement
+    }
+
+    // selective: part of a word plus a specific number, like a real title lookup
+    @Benchmark
+    public Object searchByTitle() {
+        int i = next++;
+        return lib.searchByTitle(lib.word(i).substring(1) + " " + Math.floorMod(i, catalogSize));
+    }
+
+    @Benchmark
+    public Object searchByTitleBroad() {
+        return lib.searchByTitle(lib.word(next++));
+    }
+
+    @Benchmark
+    public Object rankedSearchTop10() {
+        return lib.search(lib.word(next++), 0, 10);
+    }
+
+    // selective: one author's available Fantasy novels, answered from the author's postings
+    @Benchmark
+    public Object facetQueryByAuthor() {
+        return lib.facetQuery("Author " + Math.floorMod(next++, catalogSize / 20), 1500);
+    }
+
+    // broad: every available Fantasy novel under 500, with facet counts over all of them
+    @Benchmark
+    public Object facetQueryByGenre() {
+        return lib.facetQuery(null, 500);
+    }
+
+    @Benchmark
+    public Object filterByAuthorScan() {
+        return lib.filterByScan("Author " + Math.floorMod(next++, catalogSize / 20), 1500);
+    }
+
+    @Benchmark
+    public Object listAllBooksSortedByTitle() {
+        return lib.listAllBooksSortedByTitle();
+    }
+
+    @Benchmark
+    public void catalogListingCached() throws java.io.IOException {
+        lib.writeListing(java.io.Writer.nullWriter());
+    }
+
+    @Benchmark
+    public void catalogListingFormatted() throws java.io.IOException {
+        lib.writeListingFormatted(java.io.Writer.nullWriter());
+    }
+
+    // browsing page by page; wraps to the first page at the end of the catalog
+    @Benchmark
+    public int[] nextTitlePage() {
+        int[] page = lib.listPage(pageCursor, 50);
+        pageCursor = page.length == 50 ? page[49] : 0;
+        return page;
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Heap per book: the dictionary-encoded Book (author/genre/subject codes, compact title and ISBN
+// bytes) against the same fields held as one String per book, which is what every loader used to
+// produce. The field values are prepared in setup, so with the gc profiler
+//   -Djmh.args="CatalogFootprintBench -prof gc -rf json -rff target/jmh-result.json"
+// gc.alloc.rate.norm of newBook* is the bytes one book keeps. Only the book objects are counted,
+// not the Library's maps and indexes. Also times an author filter over every book: int code
+// compare against String.equals.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogFootprintBench {
+    @Param({"100000"})
+    int books;
+
+    LibraryTarget lib;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generateBookFields(books, 42);
+    }
+
+    @Benchmark
+    public Object newBookCoded() {
+        return lib.newBook(Math.floorMod(next++, books), true);
+    }
+
+    @Benchmark
+    public Object newBookStrings() {
+        return lib.newBook(Math.floorMod(next++, books), false);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int authorFilterCoded() {
+        return lib.countByAuthor("Author " + Math.floorMod(next++, books / 20), true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int authorFilterStrings() {
+        return lib.countByAuthor("Author " + Math.floorMod(next++, books / 20), false);
+    }
+}
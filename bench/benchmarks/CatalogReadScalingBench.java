@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Catalog reads while an import keeps adding books. In the "import" group, reader threads run
+// batches of 100 reads (getBookById, a title substring search, a 20-book title page) from one
+// CatalogVersion while one writer adds novels back to back. Readers never lock (each batch is one
+// volatile read of the current CatalogVersion), so reads should grow with the cores and the
+// import rate should not drop as readers are added; vary the split with -tg, e.g. -tg 1,1 or
+// -tg 7,1. On a single core the threads only take turns. A batch throws if the version it holds
+// changes under it.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class CatalogReadScalingBench {
+    @Param({"500000"})
+    int books;
+
+    LibraryTarget lib;
+    final AtomicInteger seeds = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generateNovels(books, 42);
+        seeds.set(0);
+    }
+
+    @State(Scope.Thread)
+    public static class Rng {
+        Random rnd;
+
+        @Setup(Level.Trial)
+        public void setup(CatalogReadScalingBench bench) {
+            rnd = new Random(bench.seeds.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    @Group("import")
+    @GroupThreads(3)
+    public long readBatch(Rng r) {
+        return lib.readBatch(r.rnd);
+    }
+
+    @Benchmark
+    @Group("import")
+    @GroupThreads(1)
+    public void addNovel(Rng r) {
+        lib.addNovel(r.rnd);
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// borrowBook/returnBook and member loan lookups against catalog, member and open-loan counts.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CirculationBench {
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    @Param({"1000"})
+    int memberCount;
+
+    @Param({"1000", "50000"})
+    int loanCount;
+
+    LibraryTarget lib;
+    int lent;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lent = Math.min(loanCount, catalogSize / 2);
+        lib = LibraryTarget.create();
+        lib.generate(catalogSize, memberCount, lent, 42);
+    }
+
+    // books above the pre-lent range are free again once the pair completes
+    @Benchmark
+    public double borrowAndReturn() {
+        int i = next++;
+        int book = lent + 1 + Math.floorMod(i, catalogSize - lent);
+        int member = 1001 + Math.floorMod(i, memberCount);
+        lib.borrowBook(member, book, 14);
+        return lib.returnBook(member, book);
+    }
+
+    // same pairs as borrowAndReturn, BATCH at a time through applyBatch; reported per pair
+    static final int BATCH = 256;
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int batchBorrowAndReturn() {
+        int[] members = new int[BATCH], books = new int[BATCH];
+        for (int k = 0; k < BATCH; k++) {
+            int i = next++;
+            books[k] = lent + 1 + Math.floorMod(i, catalogSize - lent);
+            members[k] = 1001 + Math.floorMod(i, memberCount);
+        }
+        return lib.circulateBatch(members, books, 14);
+    }
+
+    @Benchmark
+    public Object borrowRecordsForMember() {
+        return lib.borrowRecordsForMember(1001 + Math.floorMod(next++, memberCount));
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Several desks borrowing the same few titles. Compares the throwing borrowBook (the old and only
+// path, where every refusal builds a BookNotAvailableException) with tryBorrowBook.
+// allOut=true: every copy is already lent, so every attempt is a refusal.
+// allOut=false: desks borrow and return, refused whenever another desk holds the copy.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContendedBorrowBench {
+    @Param({"4"})
+    int hotTitles;
+
+    @Param({"2"})
+    int copies;
+
+    @Param({"true", "false"})
+    boolean allOut;
+
+    LibraryTarget lib;
+    final AtomicInteger desks = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generateHotTitles(hotTitles, copies, 64, allOut);
+        desks.set(0);
+    }
+
+    @State(Scope.Thread)
+    public static class Desk {
+        int memberId;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(ContendedBorrowBench bench) {
+            memberId = 1001 + bench.desks.getAndIncrement();
+        }
+    }
+
+    @Benchmark
+    public boolean borrowThrowing(Desk d) {
+        int book = 1 + Math.floorMod(d.next++, hotTitles);
+        try {
+            lib.borrowBook(d.memberId, book, 14);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        lib.returnBook(d.memberId, book);
+        return true;
+    }
+
+    @Benchmark
+    public boolean tryBorrow(Desk d) {
+        int book = 1 + Math.floorMod(d.next++, hotTitles);
+        if (!lib.tryBorrowBook(d.memberId, book, 14)) return false;
+        lib.returnBook(d.memberId, book);
+        return true;
+    }
+}
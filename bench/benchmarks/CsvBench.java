@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// CSV persistence: full catalog load and save. saveAll is what menu option 9 does for every
+// change when there is no journal; JournalBench has the per-change cost with one.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvBench {
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    @Param({"1000"})
+    int memberCount;
+
+    LibraryTarget lib;
+    File books, members, scratch, scratchMembers;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lib = LibraryTarget.create();
+        lib.generate(catalogSize, memberCount, 0, 42);
+        books = File.createTempFile("books", ".csv");
+        members = File.createTempFile("members", ".csv");
+        scratch = File.createTempFile("scratch", ".csv");
+        scratchMembers = File.createTempFile("scratch-members", ".csv");
+        lib.saveCsv(books.getPath(), members.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        books.delete();
+        members.delete();
+        scratch.delete();
+        scratchMembers.delete();
+    }
+
+    @Benchmark
+    public Object load() throws IOException {
+        return lib.loadCsv(books.getPath(), members.getPath());
+    }
+
+    @Benchmark
+    public void saveBooks() throws IOException {
+        lib.saveBooks(scratch.getPath());
+    }
+
+    @Benchmark
+    public void saveAll() throws IOException {
+        lib.saveCsv(scratch.getPath(), scratchMembers.getPath());
+    }
+}
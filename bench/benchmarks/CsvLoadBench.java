@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Startup load time for a generated books.csv: the old readLine + split loader against
+// CsvLoader, single-threaded and parallel. The whole catalog is rebuilt on every call, so
+// the larger sizes want the heap below.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CsvLoadBench {
+    @Param({"1000000", "5000000"})
+    int rows;
+
+    LibraryTarget lib;
+    File books;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lib = LibraryTarget.create();
+        books = File.createTempFile("books", ".csv");
+        lib.writeBooksCsv(books.getPath(), rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        books.delete();
+    }
+
+    @Benchmark
+    public int split() throws IOException {
+        return lib.loadBooksSplit(books.getPath());
+    }
+
+    @Benchmark
+    public int mapped() throws IOException {
+        return lib.loadBooksMapped(books.getPath(), false);
+    }
+
+    @Benchmark
+    public int mappedParallel() throws IOException {
+        return lib.loadBooksMapped(books.getPath(), true);
+    }
+}
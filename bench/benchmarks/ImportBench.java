@@ -0,0 +1,49 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Bulk import of a generated vendor feed (.tsv) into a library that already holds 10,000 books,
+// with one or several parse threads. 1% of the rows repeat an earlier ISBN. Each call imports into
+// a fresh library, so every measurement sees the same catalog.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBench {
+    @Param({"100000"})
+    int rows;
+
+    @Param({"1", "4"})
+    int parseThreads;
+
+    LibraryTarget lib;
+    File feed;
+
+    @Setup(Level.Trial)
+    public void writeFeed() throws IOException {
+        lib = LibraryTarget.create();
+        feed = File.createTempFile("feed", ".tsv");
+        lib.writeVendorFeed(feed.getPath(), rows);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshLibrary() {
+        lib.generate(10_000, 10, 0, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        feed.delete();
+    }
+
+    @Benchmark
+    public Object importFeed() throws IOException {
+        return lib.importFeed(feed.getPath(), parseThreads);
+    }
+}
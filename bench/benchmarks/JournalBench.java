@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Cost of making one change durable: a borrow and its return, each appended to the operation
+// journal, per fsync policy. Several desks run at once so group commit can batch their fsyncs.
+// The alternative, rewriting books.csv + members.csv, is CsvBench.saveAll.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JournalBench {
+    static final int DESKS = 4;
+
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    String policy;
+
+    @Param({"100000"})
+    int catalogSize;
+
+    LibraryTarget lib;
+    Path dir;
+    final AtomicInteger desks = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lib = LibraryTarget.create();
+        lib.generate(catalogSize, 1000, 0, 42);
+        dir = Files.createTempDirectory("journal");
+        lib.openJournal(dir.toString(), policy);
+        desks.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        lib.closeJournal();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+
+    // each desk borrows and returns its own books, so desks never refuse each other
+    @State(Scope.Thread)
+    public static class Desk {
+        int desk, memberId, next;
+
+        @Setup(Level.Trial)
+        public void setup(JournalBench bench) {
+            desk = bench.desks.getAndIncrement();
+            memberId = 1001 + desk;
+        }
+    }
+
+    @Benchmark
+    public double borrowReturn(Desk d) {
+        int book = 1 + d.desk + DESKS * (d.next++ % 1_000);
+        lib.borrowBook(d.memberId, book, 14);
+        return lib.returnBook(d.memberId, book);
+    }
+}
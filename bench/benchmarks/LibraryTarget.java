@@ -0,0 +1,195 @@
+package benchmarks;
+
+// JMH will not generate benchmarks for classes in the default package, and a named package cannot
+// see default-package classes such as Library. The JMH classes therefore drive the library through
+// this interface, implemented by LibraryBenchTarget (default package, next to BenchData).
+// Results come back as Object so the JMH methods can return them to the blackhole.
+public interface LibraryTarget {
+    static LibraryTarget create() {
+        try {
+            return (LibraryTarget) Class.forName("LibraryBenchTarget").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("LibraryBenchTarget missing from the bench classpath", e);
+        }
+    }
+
+    // fresh synthetic library: books 1..catalog, members 1001.., books 1..loans lent out
+    void generate(int catalog, int members, int loans, long seed);
+
+    // a few titles with several copies each and 'desks' members (1001..); with allOut every copy
+    // is already lent to other members, so each borrow attempt is refused
+    void generateHotTitles(int titles, int copies, int desks, boolean allOut);
+
+    String word(int i);
+
+    void borrowBook(int memberId, int bookId, int days);
+
+    // non-throwing borrow; true if a copy was lent
+    boolean tryBorrowBook(int memberId, int bookId, int days);
+
+    double returnBook(int memberId, int bookId);
+
+    // one check-out batch then one check-in batch over the same pairs; returns items that succeeded
+    int circulateBatch(int[] memberIds, int[] bookIds, int days);
+
+    Object borrowRecordsForMember(int memberId);
+
+    // exactly what an instrumented Library call adds: a nanoTime pair and a histogram record
+    void recordTiming();
+
+    Object searchByTitle(String query);
+
+    Object search(String query, int offset, int limit);
+
+    Object listAllBooksSortedByTitle();
+
+    // available Fantasy novels up to maxPrice, by author when author != null, with facet counts
+    Object facetQuery(String author, double maxPrice);
+
+    // the same filter done the old way: every book in title order, tested one by one
+    Object filterByScan(String author, double maxPrice);
+
+    // the catalog listing through Library.writeCatalogListing (cached lines, one reused buffer)
+    void writeListing(java.io.Writer out) throws java.io.IOException;
+
+    // the listing as it used to be printed: every line formatted from scratch, one String each
+    void writeListingFormatted(java.io.Writer out) throws java.io.IOException;
+
+    // ids of one title-ordered page after afterBookId (0 = first page)
+    int[] listPage(int afterBookId, int limit);
+
+    void saveCsv(String booksFile, String membersFile) throws java.io.IOException;
+
+    void saveBooks(String booksFile) throws java.io.IOException;
+
+    // loads into a new Library and returns it
+    Object loadCsv(String booksFile, String membersFile) throws java.io.IOException;
+
+    // ----- catalog footprint -----
+
+    // prepares 'books' rows of field values, and both kinds of book built from them, for the methods below
+    void generateBookFields(int books, long seed);
+
+    // A book from prepared row i, either as Library holds it (dictionary codes, compact title and
+    // ISBN bytes) or with one String per field, as the loaders used to build them. The field
+    // values are prepared, so under -prof gc the bytes allocated per call are the heap one book keeps.
+    Object newBook(int row, boolean coded);
+
+    // prepared books by this author: int code compare (coded) or String.equals on every book
+    int countByAuthor(String author, boolean coded);
+
+    // ----- bulk import -----
+
+    // a generated vendor feed (.tsv) of 'rows' books; 1% of the rows repeat an earlier ISBN
+    void writeVendorFeed(String file, int rows) throws java.io.IOException;
+
+    // imports the feed into the current library with this many parse threads; returns the report
+    Object importFeed(String file, int parseThreads) throws java.io.IOException;
+
+    // ----- sharding -----
+
+    // A ShardedLibrary of 'shards' empty shards, in this JVM or (remote) each one a launched
+    // `java Main --serve`, loaded with 'books' novels and 'members' members. Returns the first
+    // member id; the others follow it.
+    int generateSharded(int shards, boolean remote, int books, int members, long seed) throws java.io.IOException;
+
+    // one borrow on the sharded library and, if it was lent, the return; true if it was lent
+    boolean shardedBorrowAndReturn(int memberId, int bookId);
+
+    // ranked search fanned out to every shard, top k
+    Object shardedSearch(String query, int k);
+
+    // adds one more shard of the same kind and moves the books it now owns; returns the rebalance
+    Object addShard() throws java.io.IOException;
+
+    void closeSharded();
+
+    // ----- circulation analytics -----
+
+    // A stream of completed loans with Zipf-skewed titles and members, fed in full both to a
+    // CirculationAnalytics and to a LoanHistory for the report methods below.
+    void generateLoanStream(int loans, int titles, int members);
+
+    // loan i (mod the stream length) started and completed on a separate CirculationAnalytics
+    void analyticsRecord(int i);
+
+    // most borrowed titles, average loan days, late rate and the monthly rows, from the sketches
+    Object analyticsReport();
+
+    // the same report by a full pass over the LoanHistory
+    Object historyReport();
+
+    // ----- catalog read scaling -----
+
+    // a fresh library of 'books' novels; addNovel continues the numbering
+    void generateNovels(int books, long seed);
+
+    // 100 reads from one CatalogVersion: getBookById, a title substring search and a 20-book
+    // title page from a random id. Throws IllegalStateException if the version changed under it.
+    long readBatch(java.util.Random rnd);
+
+    // one more novel, as an import adds them
+    void addNovel(java.util.Random rnd);
+
+    // ----- loan store -----
+
+    // a LoanStore holding 'loans' open loans (member 1001 + i % 50,000 has book i + 1), and the
+    // same loans in an ArrayList, as Library kept them before LoanStore
+    void generateLoans(int loans);
+
+    // loan i (mod loans) returned and lent again, by member and book id
+    void loanStoreCycle(int i);
+
+    // open loans of one member
+    int loanStoreForMember(int memberId);
+
+    // the old return: scan the list for the (member, book) pair, remove it and add it back
+    void loanListCycle(int i);
+
+    // ----- search structures -----
+
+    // 'books' novels straight into a SortedCatalog and its SearchIndex, with no Library around them
+    void generateSearchIndex(int books, long seed);
+
+    // title substring search through the catalog's trigram index
+    int indexTitleContains(String query);
+
+    // ranked search over title, author and genre, top k
+    int indexSearch(String query, int k);
+
+    // the old title search: lowercase every title and test contains
+    int titleScan(String query);
+
+    // ----- operation journal -----
+
+    // opens <dir>/library.journal on the current library with the named FsyncPolicy
+    void openJournal(String dir, String policy) throws java.io.IOException;
+
+    void closeJournal() throws java.io.IOException;
+
+    // ----- startup load -----
+
+    // a books.csv of 'rows' generated rows, every third a TextBook
+    void writeBooksCsv(String file, int rows) throws java.io.IOException;
+
+    // the readLine + split loader Library used before CsvLoader; returns the row count
+    int loadBooksSplit(String file) throws java.io.IOException;
+
+    // CsvLoader.loadBooks over the mapped file; returns the row count
+    int loadBooksMapped(String file, boolean parallel) throws java.io.IOException;
+
+    // ----- snapshot -----
+
+    // 'books' books (every third a TextBook), books/100 members and books/20 open loans
+    void generateSnapshotLibrary(int books);
+
+    void saveSnapshot(String file) throws java.io.IOException;
+
+    // loads into a new Library and returns it
+    Object loadBooksCsv(String booksFile) throws java.io.IOException;
+
+    Object loadSnapshot(String file) throws java.io.IOException;
+
+    // maps the snapshot and reads only its last book row
+    Object snapshotLastBook(String file) throws java.io.IOException;
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Return + lookup cost against the number of open loans. LoanStore should stay flat; the old
+// ArrayList scan (listReturn) grows linearly.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanStoreBench {
+    @Param({"10000", "100000", "1000000"})
+    int loans;
+
+    LibraryTarget lib;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generateLoans(loans);
+    }
+
+    // a random loan returned and lent again, like a return followed by a new borrow
+    @Benchmark
+    public void storeReturn() {
+        lib.loanStoreCycle(spread(next++));
+    }
+
+    @Benchmark
+    public int storeMemberLookup() {
+        return lib.loanStoreForMember(1001 + Math.floorMod(spread(next++), 50_000));
+    }
+
+    @Benchmark
+    public void listReturn() {
+        lib.loanListCycle(spread(next++));
+    }
+
+    // consecutive calls hit loans far apart, not neighbours already in cache
+    private static int spread(int i) {
+        return i * 0x9E3779B1 >>> 1;
+    }
+}
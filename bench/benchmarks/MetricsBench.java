@@ -0,0 +1,33 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-call cost of the metrics layer: the nanoTime pair and histogram record every instrumented
+// Library method pays, alone and with four threads recording into the same histogram.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBench {
+    LibraryTarget lib;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+    }
+
+    @Benchmark
+    public void recordTiming() {
+        lib.recordTiming();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordTimingContended() {
+        lib.recordTiming();
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Query latency of title substring search (the catalog's trigram index) and ranked search as the
+// catalog grows, next to the old lowercase+contains scan. The structures are built on their own,
+// without a Library; CatalogBench measures the same searches through Library.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBench {
+    static final String[] QUERIES = {"river", "win", "cro", "secret ga", "khan", "silent harbor"};
+
+    @Param({"10000", "100000", "1000000"})
+    int books;
+
+    LibraryTarget lib;
+    String needle, rare;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lib = LibraryTarget.create();
+        lib.generateSearchIndex(books, 1);
+        // a selective substring keeps the result small, like a real title lookup
+        needle = "r " + books / 2;
+        rare = "silent " + books / 2;
+    }
+
+    @Benchmark
+    public int titleContains() {
+        return lib.indexTitleContains(needle);
+    }
+
+    @Benchmark
+    public int rankedTop10() {
+        return lib.indexSearch(QUERIES[Math.floorMod(next++, QUERIES.length)], 10);
+    }
+
+    @Benchmark
+    public int rankedRare() {
+        return lib.indexSearch(rare, 10);
+    }
+
+    @Benchmark
+    public int oldScan() {
+        return lib.titleScan(needle);
+    }
+}
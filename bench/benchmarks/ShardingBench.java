@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Throughput of a ShardedLibrary against shard count. Each client thread runs a mix of 95% borrow
+// followed by return on a random book and 5% ranked search (top 10, fanned out to every shard),
+// with 16 members of its own. In-process shards share this JVM's cores, so scaling shows up only
+// with several cores; -p remote=true starts each shard as its own `java Main --serve` process.
+// The cost of adding a shard is measured by AddShardBench.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ShardingBench {
+    static final int MEMBERS_PER_CLIENT = 16;
+
+    @Param({"1", "2", "4"})
+    int shards;
+
+    @Param({"100000"})
+    int books;
+
+    @Param({"false"})
+    boolean remote;
+
+    LibraryTarget lib;
+    int firstMember;
+    final AtomicInteger clients = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lib = LibraryTarget.create();
+        // members for up to 64 client threads
+        firstMember = lib.generateSharded(shards, remote, books, 64 * MEMBERS_PER_CLIENT, 42);
+        clients.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        lib.closeSharded();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        int firstMember;
+        Random rnd;
+
+        @Setup(Level.Trial)
+        public void setup(ShardingBench bench) {
+            int n = bench.clients.getAndIncrement();
+            firstMember = bench.firstMember + n * MEMBERS_PER_CLIENT;
+            rnd = new Random(n);
+        }
+    }
+
+    @Benchmark
+    public Object mixed(Client c) {
+        Random rnd = c.rnd;
+        if (rnd.nextInt(20) == 0) {
+            return lib.shardedSearch(lib.word(rnd.nextInt()) + " " + lib.word(rnd.nextInt()), 10);
+        }
+        return lib.shardedBorrowAndReturn(c.firstMember + rnd.nextInt(MEMBERS_PER_CLIENT), 1 + rnd.nextInt(books));
+    }
+}
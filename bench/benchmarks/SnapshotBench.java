@@ -0,0 +1,55 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Restart time: books CSV vs binary snapshot, and opening the snapshot to read a single row.
+// The two file sizes are printed once per trial.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class SnapshotBench {
+    @Param({"100000", "1000000"})
+    int books;
+
+    LibraryTarget lib;
+    File csv, snap;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lib = LibraryTarget.create();
+        lib.generateSnapshotLibrary(books);
+        csv = File.createTempFile("books", ".csv");
+        snap = File.createTempFile("library", ".snap");
+        lib.saveBooks(csv.getPath());
+        lib.saveSnapshot(snap.getPath());
+        System.out.printf("%n%,d books: csv %,d KB, snapshot %,d KB%n", books, csv.length() >> 10, snap.length() >> 10);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        csv.delete();
+        snap.delete();
+    }
+
+    @Benchmark
+    public Object csvLoad() throws IOException {
+        return lib.loadBooksCsv(csv.getPath());
+    }
+
+    @Benchmark
+    public Object snapshotLoad() throws IOException {
+        return lib.loadSnapshot(snap.getPath());
+    }
+
+    @Benchmark
+    public Object snapshotOpenLastRow() throws IOException {
+        return lib.snapshotLastBook(snap.getPath());
+    }
+}
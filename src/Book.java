@@ -1,15 +1,28 @@
 public abstract class Book {
     private final int id;
-    private final String title;
-    private  final String author;
+    private final Object title;   // Latin-1 bytes or String, see CatalogStrings.compact
+    private final int authorCode; // CatalogStrings.AUTHORS
     private double price;
+    private Info info;            // cached display line, see appendInfo
+
+    // getInfo() up to the part that changes on every borrow, with the price it was rendered at;
+    // after a setPrice the prices differ and the line is rendered again
+    private static final class Info {
+        final double price;
+        final String head;
+
+        Info(double price, String head) {
+            this.price = price;
+            this.head = head;
+        }
+    }
 
 //Constractor ha --->Jab Novel/TextBook banti hai, sabse pehle ye constructor chalhta hai.
     public Book( int id ,String title, String author, double price) {
         //Object ka ID set kar raha hai.
         this.id =  id;
-        this.title = title;
-        this.author = author;
+        this.title = CatalogStrings.compact(title);
+        this.authorCode = CatalogStrings.AUTHORS.encode(author);
         this.price = price;
     }
 
@@ -18,10 +31,14 @@ public abstract class Book {
     public  int getId(){return id;}
 
 
-    public String getTitle() {return title;}
+    // a fresh String each call; SearchIndex and SortedCatalog keep their own keys
+    public String getTitle() {return CatalogStrings.text(title);}
+
+
+    public String getAuthor() {return CatalogStrings.AUTHORS.decode(authorCode);}
 
 
-    public String getAuthor() {return author;}
+    public int getAuthorCode() {return authorCode;}
 
 
     public double getPrice() {return price;}
@@ -32,7 +49,24 @@ public abstract class Book {
 
 
 
-       public  abstract String getInfo() throws BookNotAvailableException;
+    public String getInfo() {return appendInfo(new StringBuilder(128)).toString();}
+
+
+    // appends the same line getInfo() returns; only the borrowed flag is rendered per call
+    public StringBuilder appendInfo(StringBuilder sb) {
+        double p = price;
+        Info i = info;
+        if (i == null || Double.compare(i.price, p) != 0) info = i = new Info(p, renderInfo(p));
+        return appendStatus(sb.append(i.head));
+    }
+
+
+    // the display line up to its status, at the given price; formatted once per book and price
+    protected abstract String renderInfo(double price);
+
+
+    // what follows the cached part (PrintedBook: the borrowed flag)
+    protected StringBuilder appendStatus(StringBuilder sb) {return sb;}
 
 }
 //file k sequence ka sath read krna
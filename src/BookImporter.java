@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Staged bulk import of a vendor feed into a live Library, merged with what is already there:
+//   read     (1 thread)  file -> blocks of whole lines
+//   parse    (N threads) block -> rows (fields split and converted, malformed lines marked)
+//   validate (1 thread)  field rules, ISBN dedupe against the catalog and the feed, new ids
+//   insert   (1 thread)  batches into Library: one index lock and one journal append per batch
+// The catalog ISBN check in validate reads the library's live ISBN map and only saves ids; the
+// one that counts is Library.addImported claiming each ISBN with putIfAbsent as it inserts, so a
+// book added by a desk while the feed is on its way still turns the feed's copy away.
+// Stages are joined by bounded queues, so a slow stage blocks the ones before it instead of
+// letting blocks pile up in memory. Parsing is the stage that spreads over cores; validation
+// takes blocks back in file order, so "first occurrence wins" and reject line numbers do not
+// depend on thread timing. Batches inserted before a failure stay in the catalog.
+public class BookImporter {
+    public enum Format {
+        // books.csv as saveBooksToFile writes it: id,type,title,author,price,isbn,pages,info[,copies].
+        // The id column is ignored (imported books get new ids) and genre/subject take the same
+        // defaults as CsvLoader, since the file has no column for them.
+        LIBRARY_CSV((byte) ','),
+        // vendor feed: type, title, author, price, isbn, pages, genre or subject[, copies], tab separated
+        VENDOR_TSV((byte) '\t');
+
+        final byte sep;
+
+        Format(byte sep) { this.sep = sep; }
+
+        public static Format forFile(Path file) {
+            return file.getFileName().toString().endsWith(".tsv") ? VENDOR_TSV : LIBRARY_CSV;
+        }
+    }
+
+    public enum Reason { MALFORMED, INVALID, DUPLICATE_IN_FEED, ALREADY_IN_CATALOG }
+
+    public static final class Reject {
+        public final long line;
+        public final Reason reason;
+        public final String detail;
+
+        Reject(long line, Reason reason, String detail) {
+            this.line = line;
+            this.reason = reason;
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason + " (" + detail + ")";
+        }
+    }
+
+    // Live counters, readable from any thread while the import runs.
+    public static final class Progress {
+        private final long totalBytes;
+        private final AtomicLong bytesRead = new AtomicLong(), lines = new AtomicLong();
+        private final AtomicLong inserted = new AtomicLong(), rejected = new AtomicLong();
+
+        Progress(long totalBytes) { this.totalBytes = totalBytes; }
+
+        public long totalBytes() { return totalBytes; }
+
+        public long bytesRead() { return bytesRead.get(); }
+
+        public long linesParsed() { return lines.get(); }
+
+        public long inserted() { return inserted.get(); }
+
+        public long rejected() { return rejected.get(); }
+
+        @Override
+        public String toString() {
+            return String.format("%,d of %,d KB read, %,d lines parsed, %,d inserted, %,d rejected",
+                    bytesRead() >> 10, totalBytes >> 10, linesParsed(), inserted(), rejected());
+        }
+    }
+
+    public static final class Report {
+        private final Progress progress;
+        private final long[] byReason;
+        private final List<Reject> samples;
+        private final long nanos;
+
+        Report(Progress progress, long[] byReason, List<Reject> samples, long nanos) {
+            this.progress = progress;
+            this.byReason = byReason;
+            this.samples = samples;
+            this.nanos = nanos;
+        }
+
+        public long inserted() { return progress.inserted(); }
+
+        public long rejected() { return progress.rejected(); }
+
+        public long rejected(Reason r) { return byReason[r.ordinal()]; }
+
+        // the first rejects in file order, up to maxRejectSamples
+        public List<Reject> samples() { return samples; }
+
+        public long elapsedMillis() { return nanos / 1_000_000; }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%,d inserted, %,d rejected in %,d ms",
+                    inserted(), rejected(), elapsedMillis()));
+            for (Reason r : Reason.values()) if (rejected(r) > 0) sb.append(", ").append(r).append('=').append(rejected(r));
+            return sb.toString();
+        }
+    }
+
+    private static final int BLOCK = 1 << 20; // bytes read per block
+
+    private final Library lib;
+    private int parsers = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1024;
+    private int queueCapacity = 4;
+    private int maxRejectSamples = 100;
+    private Consumer<Progress> listener;
+    private long progressEveryNanos = 500_000_000L;
+
+    public BookImporter(Library lib) {
+        this.lib = lib;
+    }
+
+    public BookImporter parseThreads(int n) { this.parsers = Math.max(1, n); return this; }
+
+    public BookImporter batchSize(int n) { this.batchSize = Math.max(1, n); return this; }
+
+    // blocks (or batches) each queue holds before its producer waits
+    public BookImporter queueCapacity(int n) { this.queueCapacity = Math.max(1, n); return this; }
+
+    public BookImporter maxRejectSamples(int n) { this.maxRejectSamples = Math.max(0, n); return this; }
+
+    // called from the insert stage at most every 'everyMillis', and once at the end
+    public BookImporter onProgress(Consumer<Progress> listener, long everyMillis) {
+        this.listener = listener;
+        this.progressEveryNanos = everyMillis * 1_000_000L;
+        return this;
+    }
+
+    // ----- pipeline -----
+
+    private static final class Block {
+        final long seq;
+        final byte[] data;
+        final int len;
+
+        Block(long seq, byte[] data, int len) {
+            this.seq = seq;
+            this.data = data;
+            this.len = len;
+        }
+    }
+
+    private static final class Row {
+        int line;             // within its block, from 1
+        byte type;            // OperationJournal ADD_* codes
+        String title, author, isbn, tag;
+        double price;
+        int pages, copies = 1;
+        Reason error;         // set by the parser for lines it could not read
+        String detail;
+    }
+
+    private static final class Parsed {
+        final long seq;
+        final List<Row> rows; // null: one parser has finished
+        final int lines;
+
+        Parsed(long seq, List<Row> rows, int lines) {
+            this.seq = seq;
+            this.rows = rows;
+            this.lines = lines;
+        }
+    }
+
+    private static final Block NO_MORE_BLOCKS = new Block(-1, null, 0);
+    // books for one Library.addImported call, with the feed line each came from
+    private static final class Batch {
+        final List<Book> books;
+        final long[] lines;
+
+        Batch(int capacity) {
+            books = new ArrayList<>(capacity);
+            lines = new long[capacity];
+        }
+
+        void add(Book b, long line) {
+            lines[books.size()] = line;
+            books.add(b);
+        }
+    }
+
+    private static final Batch NO_MORE_BOOKS = new Batch(0);
+
+    // The stages of one run() and the state they share.
+    private final class Run {
+        final Path file;
+        final Format format;
+        final Progress progress;
+        final BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<Parsed> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        final long[] byReason = new long[Reason.values().length]; // validate and insert, under reject()
+        // the lowest-numbered rejects so far, largest line on top; insert rejects arrive after
+        // validate has moved on, so a cap in arrival order would not keep the first in the file
+        final PriorityQueue<Reject> samples = new PriorityQueue<>(Comparator.comparingLong((Reject r) -> r.line).reversed());
+
+        Run(Path file, Format format) throws IOException {
+            this.file = file;
+            this.format = format;
+            this.progress = new Progress(Files.size(file));
+        }
+
+        void start(String name, Stage body) {
+            Thread t = new Thread(() -> {
+                try {
+                    body.run();
+                } catch (Throwable e) {
+                    // the first failure stops every stage; the rest just see the interrupt
+                    if (failure.compareAndSet(null, e)) threads.forEach(Thread::interrupt);
+                }
+            }, name);
+            t.setDaemon(true);
+            threads.add(t);
+        }
+
+        // ----- read -----
+
+        void read() throws IOException, InterruptedException {
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] buf = new byte[BLOCK];
+                int len = 0;
+                long seq = 0;
+                for (int n; (n = in.read(buf, len, buf.length - len)) >= 0; ) {
+                    progress.bytesRead.addAndGet(n);
+                    len += n;
+                    int cut = lastIndexOf(buf, len, (byte) '\n') + 1;
+                    if (cut == 0) {
+                        if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2); // line longer than a block
+                        continue;
+                    }
+                    // the block keeps this buffer; the partial last line moves to a new one
+                    byte[] next = new byte[Math.max(BLOCK, len - cut + 1)];
+                    System.arraycopy(buf, cut, next, 0, len - cut);
+                    blocks.put(new Block(seq++, buf, cut));
+                    buf = next;
+                    len -= cut;
+                }
+                if (len > 0) blocks.put(new Block(seq, buf, len)); // no newline at the end of the file
+            }
+            for (int i = 0; i < parsers; i++) blocks.put(NO_MORE_BLOCKS);
+        }
+
+        // ----- parse -----
+
+        void parse() throws InterruptedException {
+            int[] cuts = new int[16];
+            for (Block b; (b = blocks.take()) != NO_MORE_BLOCKS; ) {
+                List<Row> rows = new ArrayList<>();
+                int line = 0;
+                for (int start = 0; start < b.len; ) {
+                    int nl = indexOf(b.data, start, b.len, (byte) '\n');
+                    int lineEnd = nl < 0 ? b.len : nl;
+                    int end = lineEnd;
+                    if (end > start && b.data[end - 1] == '\r') end--;
+                    line++;
+                    if (end > start && !(b.seq == 0 && line == 1 && isHeader(b.data, start, end))) {
+                        rows.add(parseLine(b.data, start, end, line, cuts));
+                    }
+                    start = lineEnd + 1;
+                }
+                progress.lines.addAndGet(line);
+                parsed.put(new Parsed(b.seq, rows, line));
+            }
+            parsed.put(new Parsed(-1, null, 0));
+        }
+
+        boolean isHeader(byte[] d, int start, int end) {
+            String first = field(d, start, Math.min(end, start + 8)).toLowerCase(Locale.ROOT);
+            return first.startsWith(format == Format.LIBRARY_CSV ? "id" + ',' : "type\t");
+        }
+
+        Row parseLine(byte[] d, int start, int end, int line, int[] cuts) {
+            Row r = new Row();
+            r.line = line;
+            // cuts[i] = start of field i, cuts[i + 1] - 1 = its end
+            int fields = 0;
+            cuts[fields++] = start;
+            for (int i = start; i < end; i++) {
+                if (d[i] != format.sep) continue;
+                if (fields == cuts.length) return malformed(r, "more than " + cuts.length + " columns");
+                cuts[fields++] = i + 1;
+            }
+            int min = format == Format.LIBRARY_CSV ? 8 : 7;
+            if (fields < min || fields > min + 1) return malformed(r, "expected " + min + " or " + (min + 1) + " columns, found " + fields);
+            int f = format == Format.LIBRARY_CSV ? 1 : 0; // index of the type column
+            try {
+                String type = text(d, cuts, fields, end, f);
+                r.type = type.equals("Novel") ? OperationJournal.ADD_NOVEL
+                        : type.equals("TextBook") ? OperationJournal.ADD_TEXTBOOK
+                        : type.equals("PrintedBook") ? OperationJournal.ADD_PRINTED : 0;
+                if (r.type == 0) return invalid(r, "unknown type " + type);
+                r.title = text(d, cuts, fields, end, f + 1);
+                r.author = text(d, cuts, fields, end, f + 2);
+                r.price = Double.parseDouble(text(d, cuts, fields, end, f + 3));
+                r.isbn = text(d, cuts, fields, end, f + 4);
+                r.pages = Integer.parseInt(text(d, cuts, fields, end, f + 5));
+                if (format == Format.LIBRARY_CSV) {
+                    r.tag = r.type == OperationJournal.ADD_NOVEL ? "Jasoosi" : "Unknown";
+                    if (fields > 8) r.copies = Integer.parseInt(text(d, cuts, fields, end, 8));
+                } else {
+                    r.tag = text(d, cuts, fields, end, 6);
+                    if (fields > 7) r.copies = Integer.parseInt(text(d, cuts, fields, end, 7));
+                }
+            } catch (NumberFormatException e) {
+                return malformed(r, e.getMessage());
+            }
+            return r;
+        }
+
+        // ----- validate -----
+
+        void validate() throws InterruptedException {
+            Set<String> feed = new HashSet<>();
+            Map<Long, Parsed> early = new HashMap<>(); // blocks that overtook an earlier one
+            long nextSeq = 0, lineBase = 0;
+            Batch batch = new Batch(batchSize);
+            for (int finished = 0; finished < parsers; ) {
+                Parsed p = parsed.take();
+                if (p.rows == null) {
+                    finished++;
+                    continue;
+                }
+                early.put(p.seq, p);
+                for (Parsed q; (q = early.remove(nextSeq)) != null; nextSeq++) {
+                    for (Row r : q.rows) {
+                        Book b = accept(r, lineBase + r.line, feed);
+                        if (b == null) continue;
+                        batch.add(b, lineBase + r.line);
+                        if (batch.books.size() == batchSize) {
+                            batches.put(batch);
+                            batch = new Batch(batchSize);
+                        }
+                    }
+                    lineBase += q.lines;
+                }
+            }
+            if (!batch.books.isEmpty()) batches.put(batch);
+            batches.put(NO_MORE_BOOKS);
+        }
+
+        Book accept(Row r, long line, Set<String> feed) {
+            if (r.error != null) return reject(line, r.error, r.detail);
+            if (r.title.isBlank()) return reject(line, Reason.INVALID, "empty title");
+            if (r.author.isBlank()) return reject(line, Reason.INVALID, "empty author");
+            if (!(r.price >= 0) || Double.isInfinite(r.price)) return reject(line, Reason.INVALID, "price " + r.price);
+            if (r.pages <= 0) return reject(line, Reason.INVALID, "pages " + r.pages);
+            if (r.copies < 1) return reject(line, Reason.INVALID, "copies " + r.copies);
+            String key = isbnKey(r.isbn);
+            if (key.isEmpty()) return reject(line, Reason.INVALID, "empty isbn");
+            if (lib.hasIsbn(key)) return reject(line, Reason.ALREADY_IN_CATALOG, r.isbn);
+            if (!feed.add(key)) return reject(line, Reason.DUPLICATE_IN_FEED, r.isbn);
+            int id = lib.allocateBookId();
+            switch (r.type) {
+                case OperationJournal.ADD_NOVEL:
+                    return new Novel(id, r.title, r.author, r.price, r.isbn, r.pages, r.tag, r.copies);
+                case OperationJournal.ADD_TEXTBOOK:
+                    return new TextBook(id, r.title, r.author, r.price, r.isbn, r.pages, r.tag, r.copies);
+                default:
+                    return new PrintedBook(id, r.title, r.author, r.price, r.isbn, r.pages, r.copies);
+            }
+        }
+
+        synchronized Book reject(long line, Reason reason, String detail) {
+            byReason[reason.ordinal()]++;
+            progress.rejected.incrementAndGet();
+            if (samples.size() < maxRejectSamples) {
+                samples.add(new Reject(line, reason, detail));
+            } else if (maxRejectSamples > 0 && line < samples.peek().line) {
+                samples.poll();
+                samples.add(new Reject(line, reason, detail));
+            }
+            return null;
+        }
+
+        // ----- insert -----
+
+        void insert() throws InterruptedException {
+            long lastReport = System.nanoTime();
+            for (Batch batch; (batch = batches.take()) != NO_MORE_BOOKS; ) {
+                // books whose ISBN reached the catalog after validate looked, in batch order
+                List<Book> refused = lib.addImported(batch.books);
+                for (int i = 0, j = 0; j < refused.size(); i++) {
+                    if (batch.books.get(i) != refused.get(j)) continue;
+                    reject(batch.lines[i], Reason.ALREADY_IN_CATALOG, ((PrintedBook) refused.get(j++)).getIsbn());
+                }
+                progress.inserted.addAndGet(batch.books.size() - refused.size());
+                if (listener != null && System.nanoTime() - lastReport >= progressEveryNanos) {
+                    listener.accept(progress);
+                    lastReport = System.nanoTime();
+                }
+            }
+        }
+
+        Report run() throws IOException {
+            long t0 = System.nanoTime();
+            start("import-read", this::read);
+            for (int i = 0; i < parsers; i++) start("import-parse-" + i, this::parse);
+            start("import-validate", this::validate);
+            start("import-insert", this::insert);
+            threads.forEach(Thread::start);
+            try {
+                for (Thread t : threads) t.join();
+            } catch (InterruptedException e) {
+                threads.forEach(Thread::interrupt);
+                Thread.currentThread().interrupt();
+                throw new IOException("import of " + file + " interrupted", e);
+            }
+            Throwable e = failure.get();
+            if (e instanceof IOException) throw (IOException) e;
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            if (e instanceof Error) throw (Error) e;
+            if (e != null) throw new IOException("import of " + file + " failed", e);
+            if (listener != null) listener.accept(progress);
+            List<Reject> first = new ArrayList<>(samples);
+            first.sort(Comparator.comparingLong(r -> r.line));
+            return new Report(progress, byReason, first, System.nanoTime() - t0);
+        }
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    public Report run(Path file, Format format) throws IOException {
+        return new Run(file, format).run();
+    }
+
+    // ----- helpers -----
+
+    private static Row malformed(Row r, String detail) {
+        r.error = Reason.MALFORMED;
+        r.detail = detail;
+        return r;
+    }
+
+    private static Row invalid(Row r, String detail) {
+        r.error = Reason.INVALID;
+        r.detail = detail;
+        return r;
+    }
+
+    // field i of a line split at cuts; a field past the last cut runs to the end of the line
+    private static String text(byte[] d, int[] cuts, int fields, int end, int i) {
+        int to = i + 1 < fields ? cuts[i + 1] - 1 : end;
+        return field(d, cuts[i], to).trim();
+    }
+
+    private static String field(byte[] d, int start, int end) {
+        return new String(d, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // ISBNs compare without hyphens, spaces or case: 978-0-306-40615-7 == 9780306406157
+    static String isbnKey(String isbn) {
+        StringBuilder sb = new StringBuilder(isbn.length());
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c != '-' && c != ' ') sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static int indexOf(byte[] d, int from, int to, byte b) {
+        for (int i = from; i < to; i++) if (d[i] == b) return i;
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] d, int len, byte b) {
+        for (int i = len - 1; i >= 0; i--) if (d[i] == b) return i;
+        return -1;
+    }
+}
@@ -3,25 +3,47 @@ import java.time.LocalDate;
 public class BorrowRecord {
     private final int memberId;
     private final int bookId;
+    private final int copy;             // which physical copy of the title
     private final LocalDate borrowDate;
     private final LocalDate dueDate;
+    private final LocalDate returnDate; // null while the loan is still out
 
     public BorrowRecord(int memberId, int bookId, LocalDate borrowDate, LocalDate dueDate) {
+        this(memberId, bookId, 0, borrowDate, dueDate, null);
+    }
+
+    public BorrowRecord(int memberId, int bookId, int copy, LocalDate borrowDate, LocalDate dueDate) {
+        this(memberId, bookId, copy, borrowDate, dueDate, null);
+    }
+
+    public BorrowRecord(int memberId, int bookId, LocalDate borrowDate, LocalDate dueDate, LocalDate returnDate) {
+        this(memberId, bookId, 0, borrowDate, dueDate, returnDate);
+    }
+
+    public BorrowRecord(int memberId, int bookId, int copy, LocalDate borrowDate, LocalDate dueDate,
+                        LocalDate returnDate) {
         this.memberId = memberId;
         this.bookId = bookId;
+        this.copy = copy;
         this.borrowDate = borrowDate;
         this.dueDate = dueDate;
+        this.returnDate = returnDate;
     }
 
     public int getMemberId() { return memberId; }
     public int getBookId() { return bookId; }
+    public int getCopy() { return copy; }
     public LocalDate getBorrowDate() { return borrowDate; }
     public LocalDate getDueDate() { return dueDate; }
+    public LocalDate getReturnDate() { return returnDate; }
 
     @Override
     public String toString() {
-        return String.format("BorrowRecord: member:%d book:%d borrowed:%s due:%s",
-                memberId, bookId, borrowDate, dueDate);
+        if (returnDate != null) {
+            return String.format("BorrowRecord: member:%d book:%d copy:%d borrowed:%s due:%s returned:%s",
+                    memberId, bookId, copy, borrowDate, dueDate, returnDate);
+        }
+        return String.format("BorrowRecord: member:%d book:%d copy:%d borrowed:%s due:%s",
+                memberId, bookId, copy, borrowDate, dueDate);
     }
 }
-
@@ -0,0 +1,54 @@
+// Outcome of Library.tryBorrowBook. A busy copy is an ordinary answer at a busy desk, not an
+// error, so it comes back as a status instead of an exception; the refusals are shared constants
+// and a refused borrow allocates nothing.
+public final class BorrowResult {
+    public enum Status {
+        BORROWED,
+        NOT_AVAILABLE,    // every copy is out (or kept for a hold)
+        ALREADY_HAS_COPY, // the member already has this title
+        NOT_BORROWABLE,   // digital/reference
+        NO_SUCH_MEMBER,
+        NO_SUCH_BOOK
+    }
+
+    static final BorrowResult NOT_AVAILABLE = new BorrowResult(Status.NOT_AVAILABLE, null);
+    static final BorrowResult ALREADY_HAS_COPY = new BorrowResult(Status.ALREADY_HAS_COPY, null);
+    static final BorrowResult NOT_BORROWABLE = new BorrowResult(Status.NOT_BORROWABLE, null);
+    static final BorrowResult NO_SUCH_MEMBER = new BorrowResult(Status.NO_SUCH_MEMBER, null);
+    static final BorrowResult NO_SUCH_BOOK = new BorrowResult(Status.NO_SUCH_BOOK, null);
+
+    private final Status status;
+    private final BorrowRecord record;
+
+    private BorrowResult(Status status, BorrowRecord record) {
+        this.status = status;
+        this.record = record;
+    }
+
+    static BorrowResult borrowed(BorrowRecord r) {
+        return new BorrowResult(Status.BORROWED, r);
+    }
+
+    // the shared constant for a refusal reported by status alone (e.g. by a remote shard)
+    static BorrowResult refused(Status s) {
+        switch (s) {
+            case NOT_AVAILABLE: return NOT_AVAILABLE;
+            case ALREADY_HAS_COPY: return ALREADY_HAS_COPY;
+            case NOT_BORROWABLE: return NOT_BORROWABLE;
+            case NO_SUCH_MEMBER: return NO_SUCH_MEMBER;
+            case NO_SUCH_BOOK: return NO_SUCH_BOOK;
+            default: throw new IllegalArgumentException("not a refusal: " + s);
+        }
+    }
+
+    public Status getStatus() { return status; }
+    public boolean isBorrowed() { return status == Status.BORROWED; }
+
+    // the new loan; null unless BORROWED
+    public BorrowRecord getRecord() { return record; }
+
+    @Override
+    public String toString() {
+        return record == null ? "BorrowResult: " + status : "BorrowResult: " + status + " " + record;
+    }
+}
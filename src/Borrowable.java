@@ -1,8 +1,13 @@
 public interface Borrowable {
-    void borrow() throws BookNotAvailableException;
+    // false when nothing is free to lend; the normal "busy" answer, no exception
+    boolean tryBorrow();
+
+    // same as tryBorrow, for callers that want an exception when nothing is free
+    default void borrow() throws BookNotAvailableException {
+        if (!tryBorrow()) throw new BookNotAvailableException("Not available");
+    }
+
     void returnItem();
 
     boolean isBorrowed();
 }
-
-
@@ -0,0 +1,124 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Filter for Library.query: every predicate that is set must hold, unset ones match anything.
+//   new CatalogQuery().type(Novel.class).genre("Fantasy").author("X").maxPrice(500).availableOnly()
+// Ranges are inclusive. Author, genre and subject are exact matches.
+public class CatalogQuery {
+    public enum Type { PRINTED_BOOK, NOVEL, TEXTBOOK }
+
+    Type type;
+    String author, genre, subject;
+    double minPrice = Double.NEGATIVE_INFINITY, maxPrice = Double.POSITIVE_INFINITY;
+    int minPages = Integer.MIN_VALUE, maxPages = Integer.MAX_VALUE;
+    Boolean borrowed; // null = either
+
+    public CatalogQuery type(Type type) { this.type = type; return this; }
+
+    public CatalogQuery type(Class<? extends Book> cls) { return type(typeOf(cls)); }
+
+    public CatalogQuery author(String author) { this.author = author; return this; }
+
+    public CatalogQuery genre(String genre) { this.genre = genre; return this; }
+
+    public CatalogQuery subject(String subject) { this.subject = subject; return this; }
+
+    public CatalogQuery minPrice(double min) { this.minPrice = min; return this; }
+
+    public CatalogQuery maxPrice(double max) { this.maxPrice = max; return this; }
+
+    public CatalogQuery priceBetween(double min, double max) { return minPrice(min).maxPrice(max); }
+
+    public CatalogQuery pagesBetween(int min, int max) { this.minPages = min; this.maxPages = max; return this; }
+
+    public CatalogQuery borrowed(boolean borrowed) { this.borrowed = borrowed; return this; }
+
+    public CatalogQuery availableOnly() { return borrowed(false); }
+
+    static Type typeOf(Class<?> cls) {
+        if (Novel.class.isAssignableFrom(cls)) return Type.NOVEL;
+        if (TextBook.class.isAssignableFrom(cls)) return Type.TEXTBOOK;
+        return Type.PRINTED_BOOK;
+    }
+
+    // looks the strings up once per query; null if one was never seen, so nothing can match.
+    // The query itself is left alone, so one CatalogQuery can be run from several threads.
+    Plan plan() {
+        int authorCode = CatalogStrings.AUTHORS.code(author);
+        int genreCode = CatalogStrings.GENRES.code(genre);
+        int subjectCode = CatalogStrings.SUBJECTS.code(subject);
+        if ((author != null && authorCode < 0) || (genre != null && genreCode < 0)
+                || (subject != null && subjectCode < 0)) return null;
+        return new Plan(this, authorCode, genreCode, subjectCode);
+    }
+
+    // one run of a query: the query's predicates with its strings resolved to dictionary codes
+    static final class Plan {
+        final CatalogQuery q;
+        final int authorCode, genreCode, subjectCode;
+
+        private Plan(CatalogQuery q, int authorCode, int genreCode, int subjectCode) {
+            this.q = q;
+            this.authorCode = authorCode;
+            this.genreCode = genreCode;
+            this.subjectCode = subjectCode;
+        }
+
+        boolean pagesSet() {
+            return q.minPages != Integer.MIN_VALUE || q.maxPages != Integer.MAX_VALUE;
+        }
+
+        boolean priceSet() {
+            return q.minPrice != Double.NEGATIVE_INFINITY || q.maxPrice != Double.POSITIVE_INFINITY;
+        }
+
+        // the whole predicate against one book; the facet indexes only narrow down who gets asked
+        boolean test(Book b) {
+            if (q.type != null && typeOf(b.getClass()) != q.type) return false;
+            if (q.author != null && b.getAuthorCode() != authorCode) return false;
+            if (q.genre != null && !(b instanceof Novel && ((Novel) b).getGenreCode() == genreCode)) return false;
+            if (q.subject != null && !(b instanceof TextBook && ((TextBook) b).getSubjectCode() == subjectCode)) return false;
+            double price = b.getPrice();
+            if (price < q.minPrice || price > q.maxPrice) return false;
+            if (pagesSet()) {
+                if (!(b instanceof PrintedBook)) return false;
+                int pages = ((PrintedBook) b).getPages();
+                if (pages < q.minPages || pages > q.maxPages) return false;
+            }
+            if (q.borrowed != null && isOut(b) != q.borrowed) return false;
+            return true;
+        }
+    }
+
+    // every copy lent (or kept for a hold); books that can't be borrowed are never out
+    static boolean isOut(Book b) {
+        return b instanceof Borrowable && ((Borrowable) b).isBorrowed();
+    }
+
+    // One page of matches in book id order, the total, and facet counts over all matches
+    // (not just the page) for a result sidebar. Facet maps are ordered most common first;
+    // authors are cut to the top ten.
+    public static class Result {
+        private final List<Book> page;
+        private final int total;
+        private final Map<String, Map<String, Integer>> facets;
+
+        Result(List<Book> page, int total, Map<String, Map<String, Integer>> facets) {
+            this.page = page;
+            this.total = total;
+            this.facets = facets;
+        }
+
+        public List<Book> getPage() { return page; }
+
+        public int getTotal() { return total; }
+
+        // facet names: type, genre, subject, author, price, pages, availability
+        public Map<String, Integer> facet(String name) {
+            return facets.getOrDefault(name, Collections.emptyMap());
+        }
+
+        public Map<String, Map<String, Integer>> getFacets() { return facets; }
+    }
+}
@@ -0,0 +1,29 @@
+import java.nio.charset.StandardCharsets;
+
+// Shared string storage for the catalog.
+// Author, genre and subject repeat across thousands of books, so they are dictionary-encoded
+// once per process and books keep int codes. Titles and ISBNs are unique per book, so they are
+// kept as compact text instead: a Latin-1 byte[] when every char fits (almost every title), which
+// saves the String object wrapped around the same bytes, and the String itself otherwise.
+public final class CatalogStrings {
+    public static final StringDictionary AUTHORS = new StringDictionary();
+    public static final StringDictionary GENRES = new StringDictionary();
+    public static final StringDictionary SUBJECTS = new StringDictionary();
+
+    private CatalogStrings() {}
+
+    // byte[] (Latin-1) or String, for a field that should be read back with text()
+    static Object compact(String s) {
+        if (s == null) return null;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) return s;
+        }
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // builds a new String for byte[] fields; callers on hot paths keep their own copy
+    static String text(Object compact) {
+        if (compact instanceof byte[]) return new String((byte[]) compact, StandardCharsets.ISO_8859_1);
+        return (String) compact;
+    }
+}
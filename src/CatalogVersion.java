@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// One immutable state of the catalog. Three persistent indexes over the same entries:
+//  - byId   : book id -> entry (PersistentIntMap)
+//  - titles : entries in title order (TitleTreap), for listings, cursor pages and title ranges
+//  - grams  : hash of a folded title trigram -> entries whose title has it, for substring search
+// A new version shares every node the change did not touch with the one it came from, so a
+// reader holding an old version keeps a consistent catalog for as long as it likes, and writers
+// never wait for readers. Titles are compared and searched in the same per-char case folding.
+public final class CatalogVersion {
+    static final class Entry {
+        final Book book;
+        final String folded;
+
+        Entry(Book book) {
+            this.book = book;
+            this.folded = SortedCatalog.fold(book.getTitle());
+        }
+    }
+
+    public static final CatalogVersion EMPTY =
+            new CatalogVersion(PersistentIntMap.empty(), null, PersistentIntMap.empty(), 0);
+
+    private final PersistentIntMap<Entry> byId;
+    private final TitleTreap.Node titles;
+    private final PersistentIntMap<PersistentIntMap<Entry>> grams;
+    private final long number;
+
+    private CatalogVersion(PersistentIntMap<Entry> byId, TitleTreap.Node titles,
+                           PersistentIntMap<PersistentIntMap<Entry>> grams, long number) {
+        this.byId = byId;
+        this.titles = titles;
+        this.grams = grams;
+        this.number = number;
+    }
+
+    // counts published versions; a reader can tell whether the catalog moved on since it looked
+    public long number() {
+        return number;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    public Book get(int bookId) {
+        Entry e = byId.get(bookId);
+        return e == null ? null : e.book;
+    }
+
+    public int[] bookIds() {
+        int[] ids = new int[byId.size()];
+        int[] n = new int[1];
+        byId.forEachInt((id, e) -> ids[n[0]++] = id);
+        return ids;
+    }
+
+    // ----- title order -----
+
+    public List<Book> all() {
+        List<Book> out = new ArrayList<>(size());
+        TitleTreap.walkFrom(titles, null, 0, true, e -> out.add(e.book));
+        return out;
+    }
+
+    public void forEach(Consumer<Book> action) {
+        TitleTreap.walkFrom(titles, null, 0, true, e -> {
+            action.accept(e.book);
+            return true;
+        });
+    }
+
+    // up to 'limit' books after the book with id afterBookId (0 = from the start)
+    public List<Book> pageAfter(int afterBookId, int limit) {
+        List<Book> out = new ArrayList<>(Math.min(Math.max(limit, 0), 1024));
+        if (limit <= 0) return out;
+        String from = null;
+        if (afterBookId != 0) {
+            Entry after = byId.get(afterBookId);
+            if (after == null) throw new IllegalArgumentException("No book: " + afterBookId);
+            from = after.folded;
+        }
+        TitleTreap.walkFrom(titles, from, afterBookId, false, e -> out.add(e.book) && out.size() < limit);
+        return out;
+    }
+
+    // titles starting at 'from' up to and including titles that start with 'to', e.g. range("M", "P")
+    public List<Book> range(String from, String to, int limit) {
+        List<Book> out = new ArrayList<>();
+        String lo = SortedCatalog.fold(from), hi = SortedCatalog.fold(to) + Character.MAX_VALUE;
+        if (limit <= 0 || lo.compareTo(hi) > 0) return out;
+        TitleTreap.walkFrom(titles, lo, Integer.MIN_VALUE, true,
+                e -> e.folded.compareTo(hi) <= 0 && out.add(e.book) && out.size() < limit);
+        return out;
+    }
+
+    // ----- substring search -----
+
+    // case-insensitive "title contains query"; in no particular order
+    public List<Book> titleContains(String query) {
+        String q = SortedCatalog.fold(query);
+        List<Book> out = new ArrayList<>();
+        if (q.length() < 3) {
+            // too short for trigrams
+            byId.forEachInt((id, e) -> {
+                if (e.folded.contains(q)) out.add(e.book);
+            });
+            return out;
+        }
+        List<PersistentIntMap<Entry>> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            PersistentIntMap<Entry> p = grams.get(gram(q, i));
+            if (p == null) return out;
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        PersistentIntMap<Entry> first = lists.get(0);
+        List<PersistentIntMap<Entry>> rest = lists.subList(1, lists.size());
+        first.forEachInt((id, e) -> {
+            for (PersistentIntMap<Entry> p : rest) if (!p.containsKey(id)) return;
+            if (e.folded.contains(q)) out.add(e.book); // gram hashes can collide; the title decides
+        });
+        return out;
+    }
+
+    // whether that book's title contains 'folded' (already folded with SortedCatalog.fold)
+    boolean titleHas(int bookId, String folded) {
+        Entry e = byId.get(bookId);
+        return e != null && e.folded.contains(folded);
+    }
+
+    static int gram(String s, int i) {
+        return (int) ShardRing.mix(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+    }
+
+    // ----- next versions -----
+
+    // adds the books, replacing any with the same id, in one new version
+    CatalogVersion with(Collection<Book> batch) {
+        if (batch.isEmpty()) return this;
+        Object edit = new Object(); // nodes made for this batch are reused by the rest of it
+        PersistentIntMap<Entry> ids = byId;
+        TitleTreap.Node t = titles;
+        PersistentIntMap<PersistentIntMap<Entry>> gs = grams;
+        for (Book b : batch) {
+            Entry old = ids.get(b.getId());
+            if (old != null) {
+                t = TitleTreap.remove(t, old.folded, b.getId(), edit);
+                gs = unindexGrams(gs, old, edit);
+            }
+            Entry e = new Entry(b);
+            ids = ids.plus(b.getId(), e, edit);
+            t = TitleTreap.insert(t, e, edit);
+            String f = e.folded;
+            for (int i = 0; i + 3 <= f.length(); i++) {
+                int g = gram(f, i);
+                PersistentIntMap<Entry> p = gs.get(g);
+                gs = gs.plus(g, (p == null ? PersistentIntMap.<Entry>empty() : p).plus(b.getId(), e, edit), edit);
+            }
+        }
+        return new CatalogVersion(ids, t, gs, number + 1);
+    }
+
+    CatalogVersion without(int bookId) {
+        Entry old = byId.get(bookId);
+        if (old == null) return this;
+        return new CatalogVersion(byId.minus(bookId), TitleTreap.remove(titles, old.folded, bookId, null),
+                unindexGrams(grams, old, null), number + 1);
+    }
+
+    // the empty catalog, numbered after this one
+    CatalogVersion cleared() {
+        return new CatalogVersion(PersistentIntMap.empty(), null, PersistentIntMap.empty(), number + 1);
+    }
+
+    private static PersistentIntMap<PersistentIntMap<Entry>> unindexGrams(
+            PersistentIntMap<PersistentIntMap<Entry>> gs, Entry e, Object edit) {
+        String f = e.folded;
+        int id = e.book.getId();
+        for (int i = 0; i + 3 <= f.length(); i++) {
+            int g = gram(f, i);
+            PersistentIntMap<Entry> p = gs.get(g);
+            if (p == null || !p.containsKey(id)) continue; // a gram repeated in the title
+            PersistentIntMap<Entry> smaller = p.minus(id, edit);
+            gs = smaller.isEmpty() ? gs.minus(g, edit) : gs.plus(g, smaller, edit);
+        }
+        return gs;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogVersion#" + number + " (" + size() + " books)";
+    }
+}
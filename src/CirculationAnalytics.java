@@ -0,0 +1,198 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Circulation reports kept up to date as loans start and end, so reading one never rescans
+// LoanHistory. Every event costs a fixed amount of work:
+//   - most borrowed titles and most active members: Space-Saving top-k (approximate, with error bounds)
+//   - borrows of any one title or member: count-min sketches (never under-counted)
+//   - average loan length, late-return rate: running sums
+//   - returns, late returns and fines collected per calendar month of return
+// Borrows count when the loan starts; durations, lateness and fines when it is returned.
+// The top-k summaries are the only part with a lock, so borrows don't take it one by one: each
+// thread appends to one of a few striped buffers, and a full buffer is folded into both summaries
+// with one lock each per PENDING_BATCH borrows. Reports flush the buffers first and miss nothing.
+// Library feeds it from live circulation and journal replay, and rebuilds it from the
+// snapshot's history and open loans on load.
+public class CirculationAnalytics {
+    static final int TOP_CAPACITY = 1_000;       // Space-Saving counters per report
+    static final double SKETCH_EPSILON = 0.0005; // count-min error, as a share of all borrows
+    static final double SKETCH_DELTA = 0.001;
+    static final int PENDING_BATCH = 256;        // borrows buffered per stripe before a fold
+
+    // one month of returns
+    public static final class Period {
+        private final LongAdder returns = new LongAdder(), late = new LongAdder();
+        private final DoubleAdder fines = new DoubleAdder();
+
+        public long getReturns() { return returns.sum(); }
+
+        public long getLateReturns() { return late.sum(); }
+
+        public double getFinesCollected() { return fines.sum(); }
+
+        @Override
+        public String toString() {
+            return getReturns() + " returns, " + getLateReturns() + " late, fines " + getFinesCollected();
+        }
+    }
+
+    private final SpaceSaving topBooks = new SpaceSaving(TOP_CAPACITY);
+    private final SpaceSaving topMembers = new SpaceSaving(TOP_CAPACITY);
+    private final CountMinSketch bookBorrows = new CountMinSketch(SKETCH_EPSILON, SKETCH_DELTA);
+    private final CountMinSketch memberBorrows = new CountMinSketch(SKETCH_EPSILON, SKETCH_DELTA);
+    private final LongAdder borrows = new LongAdder(), returns = new LongAdder(), late = new LongAdder();
+    private final LongAdder loanDays = new LongAdder();
+    private final DoubleAdder fines = new DoubleAdder();
+    private final Map<YearMonth, Period> months = new ConcurrentHashMap<>();
+
+    // borrows not yet folded into topBooks/topMembers
+    private static final class Pending {
+        final int[] books = new int[PENDING_BATCH], members = new int[PENDING_BATCH];
+        int n;
+    }
+
+    // a power of two, at least twice the cores, so threads rarely share a buffer
+    private final Pending[] pending = newPending(Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1);
+
+    private static Pending[] newPending(int stripes) {
+        Pending[] out = new Pending[stripes];
+        for (int i = 0; i < stripes; i++) out[i] = new Pending();
+        return out;
+    }
+
+    // ----- events -----
+
+    public void loanStarted(int memberId, int bookId) {
+        borrows.increment();
+        bookBorrows.add(bookId, 1);
+        memberBorrows.add(memberId, 1);
+        Pending p = pending[(int) ShardRing.mix(Thread.currentThread().getId()) & (pending.length - 1)];
+        synchronized (p) {
+            p.books[p.n] = bookId;
+            p.members[p.n] = memberId;
+            if (++p.n == PENDING_BATCH) fold(p);
+        }
+    }
+
+    // caller holds p
+    private void fold(Pending p) {
+        topBooks.addAll(p.books, p.n);
+        topMembers.addAll(p.members, p.n);
+        p.n = 0;
+    }
+
+    private void flush() {
+        for (Pending p : pending) {
+            synchronized (p) {
+                if (p.n > 0) fold(p);
+            }
+        }
+    }
+
+    // dates are epoch days, as in LoanHistory
+    public void loanCompleted(int memberId, int bookId, int borrowedDay, int dueDay, int returnedDay) {
+        returns.increment();
+        loanDays.add(returnedDay - borrowedDay);
+        Period p = months.computeIfAbsent(YearMonth.from(LocalDate.ofEpochDay(returnedDay)), m -> new Period());
+        p.returns.increment();
+        if (returnedDay > dueDay) {
+            double fine = (returnedDay - dueDay) * OverdueEngine.FINE_PER_DAY;
+            late.increment();
+            fines.add(fine);
+            p.late.increment();
+            p.fines.add(fine);
+        }
+    }
+
+    public void loanCompleted(BorrowRecord r, LocalDate returned) {
+        loanCompleted(r.getMemberId(), r.getBookId(), (int) r.getBorrowDate().toEpochDay(),
+                (int) r.getDueDate().toEpochDay(), (int) returned.toEpochDay());
+    }
+
+    // Starts over from a history and the loans still out (after a snapshot load).
+    // Not safe against concurrent events, like the loaders that call it.
+    void rebuild(LoanHistory history, Iterable<BorrowRecord> open) {
+        clear();
+        history.forEach((m, b, borrowed, due, returned) -> {
+            loanStarted(m, b);
+            loanCompleted(m, b, borrowed, due, returned);
+        });
+        for (BorrowRecord r : open) loanStarted(r.getMemberId(), r.getBookId());
+    }
+
+    void clear() {
+        for (Pending p : pending) {
+            synchronized (p) {
+                p.n = 0;
+            }
+        }
+        topBooks.clear();
+        topMembers.clear();
+        bookBorrows.clear();
+        memberBorrows.clear();
+        borrows.reset();
+        returns.reset();
+        late.reset();
+        loanDays.reset();
+        fines.reset();
+        months.clear();
+    }
+
+    // ----- reports -----
+
+    // entry keys are book ids; exact while fewer than TOP_CAPACITY titles have been borrowed
+    public List<SpaceSaving.Entry> mostBorrowedBooks(int k) {
+        flush();
+        return topBooks.top(k);
+    }
+
+    // entry keys are member ids
+    public List<SpaceSaving.Entry> mostActiveMembers(int k) {
+        flush();
+        return topMembers.top(k);
+    }
+
+    // upper estimate, within SKETCH_EPSILON * getBorrowCount() with high probability
+    public long estimatedBorrows(int bookId) {
+        return bookBorrows.estimate(bookId);
+    }
+
+    public long estimatedMemberBorrows(int memberId) {
+        return memberBorrows.estimate(memberId);
+    }
+
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    public long getReturnCount() {
+        return returns.sum();
+    }
+
+    public double averageLoanDays() {
+        long n = returns.sum();
+        return n == 0 ? 0.0 : loanDays.sum() / (double) n;
+    }
+
+    // share of returns that came back after the due date
+    public double lateReturnRate() {
+        long n = returns.sum();
+        return n == 0 ? 0.0 : late.sum() / (double) n;
+    }
+
+    public double getFinesCollected() {
+        return fines.sum();
+    }
+
+    // month of return -> that month's returns and fines, oldest first
+    public NavigableMap<YearMonth, Period> byMonth() {
+        return new TreeMap<>(months);
+    }
+}
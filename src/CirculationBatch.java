@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+// A load of check-outs and check-ins from a self-service kiosk or a returns sorter, applied in
+// order by Library.applyBatch. Items are kept in parallel int arrays and results come back the
+// same way (one outcome/fine/record slot per item), so a batch of thousands of barcodes is a few
+// arrays rather than thousands of small objects.
+public class CirculationBatch {
+    public enum Outcome {
+        BORROWED,
+        RETURNED,
+        NOT_AVAILABLE,
+        ALREADY_HAS_COPY,
+        NOT_BORROWABLE,
+        NOT_ON_LOAN,     // check-in of a book this member doesn't have
+        NO_SUCH_MEMBER,
+        NO_SUCH_BOOK
+    }
+
+    static final byte CHECK_OUT = 0, CHECK_IN = 1;
+
+    private byte[] kind;
+    private int[] member, book, days;
+    private int size;
+
+    public CirculationBatch() {
+        this(64);
+    }
+
+    public CirculationBatch(int expectedItems) {
+        int n = Math.max(expectedItems, 1);
+        kind = new byte[n];
+        member = new int[n];
+        book = new int[n];
+        days = new int[n];
+    }
+
+    public CirculationBatch checkOut(int memberId, int bookId, int borrowDays) {
+        return add(CHECK_OUT, memberId, bookId, borrowDays);
+    }
+
+    public CirculationBatch checkIn(int memberId, int bookId) {
+        return add(CHECK_IN, memberId, bookId, 0);
+    }
+
+    private CirculationBatch add(byte k, int memberId, int bookId, int d) {
+        if (size == kind.length) {
+            int n = size * 2;
+            kind = Arrays.copyOf(kind, n);
+            member = Arrays.copyOf(member, n);
+            book = Arrays.copyOf(book, n);
+            days = Arrays.copyOf(days, n);
+        }
+        kind[size] = k;
+        member[size] = memberId;
+        book[size] = bookId;
+        days[size] = d;
+        size++;
+        return this;
+    }
+
+    public int size() { return size; }
+
+    boolean isCheckOut(int i) { return kind[i] == CHECK_OUT; }
+    int memberId(int i) { return member[i]; }
+    int bookId(int i) { return book[i]; }
+    int days(int i) { return days[i]; }
+
+    // per-item results, index-aligned with the batch
+    public static class Results {
+        private final Outcome[] outcome;
+        private final double[] fine;
+        private final BorrowRecord[] record;
+
+        Results(int n) {
+            outcome = new Outcome[n];
+            fine = new double[n];
+            record = new BorrowRecord[n];
+        }
+
+        void set(int i, Outcome o, BorrowRecord r, double f) {
+            outcome[i] = o;
+            record[i] = r;
+            fine[i] = f;
+        }
+
+        public int size() { return outcome.length; }
+        public Outcome outcome(int i) { return outcome[i]; }
+
+        // fine charged on a check-in; 0 otherwise
+        public double fine(int i) { return fine[i]; }
+
+        // the new loan for a check-out, the closed loan for a check-in; null if refused
+        public BorrowRecord record(int i) { return record[i]; }
+
+        public int count(Outcome o) {
+            int n = 0;
+            for (Outcome x : outcome) if (x == o) n++;
+            return n;
+        }
+
+        public double totalFines() {
+            double t = 0;
+            for (double f : fine) t += f;
+            return t;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Which physical copies of one title are out: one bit per copy, 64 copies to a word.
+// Bits past the last copy are set up front so a scan never hands them out.
+// The free count is reserved before a bit is claimed and given back after a bit is cleared,
+// so it never exceeds the number of clear bits: "any copy free?" is a single read, and a
+// caller holding a reservation is guaranteed to find a clear bit.
+public class CopyBitmap {
+    private final int copies;
+    private final AtomicLongArray words;
+    private final AtomicInteger available;
+
+    public CopyBitmap(int copies) {
+        if (copies < 1) throw new IllegalArgumentException("a title needs at least one copy: " + copies);
+        this.copies = copies;
+        this.words = new AtomicLongArray((copies + 63) >>> 6);
+        int tail = copies & 63;
+        if (tail != 0) words.set(words.length() - 1, -1L << tail);
+        this.available = new AtomicInteger(copies);
+    }
+
+    public int copies() { return copies; }
+
+    public int available() { return available.get(); }
+
+    public boolean isOut(int copy) {
+        checkCopy(copy);
+        return (words.get(copy >>> 6) & (1L << copy)) != 0;
+    }
+
+    // claims the lowest free copy; -1 when every copy is out
+    public int acquire() {
+        if (!reserve()) return -1;
+        while (true) {
+            for (int w = 0; w < words.length(); w++) {
+                long v = words.get(w);
+                while (v != -1L) {
+                    long bit = Long.lowestOneBit(~v);
+                    if (words.compareAndSet(w, v, v | bit)) return (w << 6) + Long.numberOfTrailingZeros(bit);
+                    v = words.get(w);
+                }
+            }
+            // a copy freed behind the scan while a later one was taken; the reservation says one is there
+        }
+    }
+
+    // claims one particular copy (snapshot restore, journal replay); false if it is already out
+    public boolean acquire(int copy) {
+        checkCopy(copy);
+        if (!reserve()) return false;
+        int w = copy >>> 6;
+        long bit = 1L << copy;
+        while (true) {
+            long v = words.get(w);
+            if ((v & bit) != 0) {
+                available.incrementAndGet();
+                return false;
+            }
+            if (words.compareAndSet(w, v, v | bit)) return true;
+        }
+    }
+
+    // false if that copy was not out
+    public boolean release(int copy) {
+        checkCopy(copy);
+        int w = copy >>> 6;
+        long bit = 1L << copy;
+        while (true) {
+            long v = words.get(w);
+            if ((v & bit) == 0) return false;
+            if (words.compareAndSet(w, v, v & ~bit)) {
+                available.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // frees the lowest copy that is out, for callers that don't track which copy they hold
+    public int releaseAny() {
+        for (int c = 0; c < copies; c++) {
+            if (isOut(c) && release(c)) return c;
+        }
+        return -1;
+    }
+
+    private boolean reserve() {
+        int a;
+        do {
+            a = available.get();
+            if (a == 0) return false;
+        } while (!available.compareAndSet(a, a - 1));
+        return true;
+    }
+
+    private void checkCopy(int copy) {
+        if (copy < 0 || copy >= copies) throw new IndexOutOfBoundsException("copy " + copy + " of " + copies);
+    }
+}
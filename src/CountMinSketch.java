@@ -0,0 +1,60 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Approximate event counts per int key in fixed memory. Each of `depth` rows hashes the key to one
+// of `width` counters; add bumps one counter per row and estimate takes the smallest of them.
+// An estimate never under-counts, and over-counts by at most epsilon * total() with probability
+// 1 - delta, where width = e / epsilon and depth = ln(1 / delta). Adds are lock-free.
+public class CountMinSketch {
+    private final int depth, mask;
+    private final long[] seeds;
+    private final AtomicLongArray counts; // row-major, depth * width
+    private final LongAdder total = new LongAdder();
+
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be in (0, 1)");
+        }
+        int width = Integer.highestOneBit((int) Math.ceil(Math.E / epsilon) - 1) << 1; // next power of two
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        this.mask = width - 1;
+        this.seeds = new long[depth];
+        for (int d = 0; d < depth; d++) seeds[d] = ShardRing.mix(0x9E3779B97F4A7C15L * (d + 1));
+        this.counts = new AtomicLongArray(depth * width);
+    }
+
+    public void add(int key, long n) {
+        int width = mask + 1;
+        for (int d = 0; d < depth; d++) counts.getAndAdd(d * width + slot(key, d), n);
+        total.add(n);
+    }
+
+    public long estimate(int key) {
+        int width = mask + 1;
+        long min = Long.MAX_VALUE;
+        for (int d = 0; d < depth; d++) min = Math.min(min, counts.get(d * width + slot(key, d)));
+        return min;
+    }
+
+    public long total() {
+        return total.sum();
+    }
+
+    public int width() {
+        return mask + 1;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    // not atomic with respect to concurrent adds
+    public void clear() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        total.reset();
+    }
+
+    private int slot(int key, int row) {
+        return (int) ShardRing.mix(key ^ seeds[row]) & mask;
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Streaming parser for books.csv / members.csv.
+// The file is memory-mapped in line-aligned regions and each field is parsed straight out of
+// the mapped bytes: numbers are parsed in place, the type column is matched without decoding,
+// and only the Strings a Book/Member keeps are created (the trailing info column is skipped).
+// Large files can be split into line-aligned chunks and parsed on several cores.
+public class CsvLoader {
+    private static final int REGION = 64 << 20;           // bytes mapped at a time
+    private static final int MIN_PARALLEL_BYTES = 4 << 20; // below this one thread is faster
+    private static final byte[] NOVEL = "Novel".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXTBOOK = "TextBook".getBytes(StandardCharsets.US_ASCII);
+
+    // loads every book row; with parallel=true chunks are parsed on all cores
+    public static List<Book> loadBooks(Path file, boolean parallel) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (!parallel || threads == 1 || size < MIN_PARALLEL_BYTES) {
+                List<Book> out = new ArrayList<>();
+                parseBooks(ch, 0, size, out);
+                return out;
+            }
+            long[] cuts = chunkBounds(ch, size, threads);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<List<Book>>> parts = new ArrayList<>();
+                for (int i = 0; i + 1 < cuts.length; i++) {
+                    long from = cuts[i], to = cuts[i + 1];
+                    parts.add(pool.submit(() -> {
+                        List<Book> out = new ArrayList<>();
+                        parseBooks(ch, from, to, out);
+                        return out;
+                    }));
+                }
+                List<Book> all = new ArrayList<>();
+                for (Future<List<Book>> f : parts) all.addAll(get(f));
+                return all;
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    public static List<Member> loadMembers(Path file) throws IOException {
+        List<Member> out = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            new Regions(ch, 0, ch.size()).forEachLine((buf, start, end, cur) -> {
+                // id,name,joinedOn
+                int c1 = indexOf(buf, start, end, (byte) ',');
+                int c2 = c1 < 0 ? -1 : indexOf(buf, c1 + 1, end, (byte) ',');
+                if (c2 < 0) return;
+                int id = parseInt(buf, start, c1);
+                out.add(new Member(id, cur.string(buf, c1 + 1, c2)));
+            });
+        }
+        return out;
+    }
+
+    private static void parseBooks(FileChannel ch, long from, long to, List<Book> out) throws IOException {
+        int[] commas = new int[7];
+        new Regions(ch, from, to).forEachLine((buf, start, end, cur) -> {
+            // id,type,title,author,price,isbn,pages,info[,copies] -- the info column is never read;
+            // files written before copies existed have no ninth column and mean one copy
+            int pos = start;
+            for (int i = 0; i < 7; i++) {
+                int c = indexOf(buf, pos, end, (byte) ',');
+                if (c < 0) return; // fewer than 8 columns: skip the row, as the old split() loader did
+                commas[i] = c;
+                pos = c + 1;
+            }
+            int id = parseInt(buf, start, commas[0]);
+            String title = cur.string(buf, commas[1] + 1, commas[2]);
+            String author = cur.string(buf, commas[2] + 1, commas[3]);
+            double price = parseDouble(buf, commas[3] + 1, commas[4], cur);
+            String isbn = cur.string(buf, commas[4] + 1, commas[5]);
+            int pages = parseInt(buf, commas[5] + 1, commas[6]);
+            int last = indexOf(buf, commas[6] + 1, end, (byte) ',');
+            int copies = last < 0 ? 1 : parseInt(buf, last + 1, end);
+            if (matches(buf, commas[0] + 1, commas[1], NOVEL)) {
+                // genre is not stored in the CSV; same default as before
+                out.add(new Novel(id, title, author, price, isbn, pages, "Jasoosi", copies));
+            } else if (matches(buf, commas[0] + 1, commas[1], TEXTBOOK)) {
+                out.add(new TextBook(id, title, author, price, isbn, pages, "Unknown", copies));
+            } else {
+                out.add(new PrintedBook(id, title, author, price, isbn, pages, copies));
+            }
+        });
+    }
+
+    // ----- region walking -----
+
+    private interface LineHandler {
+        void line(ByteBuffer buf, int start, int end, Regions cur);
+    }
+
+    // Maps [from, to) one region at a time. A region always ends on a line break, so a line is
+    // never split across two mappings; the next region starts right after it.
+    private static final class Regions {
+        private final FileChannel ch;
+        private final long from, to;
+        private byte[] scratch = new byte[256]; // reused for UTF-8 decoding of kept fields
+
+        Regions(FileChannel ch, long from, long to) {
+            this.ch = ch;
+            this.from = from;
+            this.to = to;
+        }
+
+        void forEachLine(LineHandler h) throws IOException {
+            long pos = from;
+            while (pos < to) {
+                int len = (int) Math.min(REGION, to - pos);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int usable = len;
+                if (pos + len < to) {
+                    usable = lastIndexOf(buf, len, (byte) '\n') + 1;
+                    if (usable == 0) throw new IOException("line longer than " + REGION + " bytes at offset " + pos);
+                }
+                int start = 0;
+                while (start < usable) {
+                    int nl = indexOf(buf, start, usable, (byte) '\n');
+                    int lineEnd = nl < 0 ? usable : nl;
+                    int end = lineEnd;
+                    if (end > start && buf.get(end - 1) == '\r') end--;
+                    if (end > start) h.line(buf, start, end, this);
+                    start = lineEnd + 1;
+                }
+                pos += usable;
+            }
+        }
+
+        String string(ByteBuffer buf, int start, int end) {
+            int n = end - start;
+            if (scratch.length < n) scratch = new byte[Math.max(n, scratch.length * 2)];
+            boolean ascii = true;
+            for (int i = 0; i < n; i++) {
+                byte b = buf.get(start + i);
+                scratch[i] = b;
+                if (b < 0) ascii = false;
+            }
+            return new String(scratch, 0, n, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+    }
+
+    // line-aligned split points: cuts[0] = 0, cuts[last] = size
+    private static long[] chunkBounds(FileChannel ch, long size, int parts) throws IOException {
+        long[] cuts = new long[parts + 1];
+        ByteBuffer one = ByteBuffer.allocate(4096);
+        for (int i = 1; i < parts; i++) {
+            long p = Math.max(size * i / parts, cuts[i - 1]);
+            // advance to just past the next line break
+            outer:
+            while (p < size) {
+                one.clear();
+                int n = ch.read(one, p);
+                if (n <= 0) { p = size; break; }
+                for (int k = 0; k < n; k++) {
+                    if (one.get(k) == '\n') { p += k + 1; break outer; }
+                }
+                p += n;
+            }
+            cuts[i] = Math.min(p, size);
+        }
+        cuts[parts] = size;
+        return cuts;
+    }
+
+    // ----- in-place field parsing -----
+
+    private static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) if (buf.get(i) == b) return i;
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buf, int to, byte b) {
+        for (int i = to - 1; i >= 0; i--) if (buf.get(i) == b) return i;
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buf, int start, int end, byte[] word) {
+        if (end - start != word.length) return false;
+        for (int i = 0; i < word.length; i++) if (buf.get(start + i) != word[i]) return false;
+        return true;
+    }
+
+    static int parseInt(ByteBuffer buf, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) neg = buf.get(i++) == '-';
+        if (i == end || end - i > 10) return Integer.parseInt(ascii(buf, start, end)); // let it report the error
+        long v = 0;
+        for (; i < end; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) return Integer.parseInt(ascii(buf, start, end));
+            v = v * 10 + d;
+        }
+        v = neg ? -v : v;
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) return Integer.parseInt(ascii(buf, start, end));
+        return (int) v;
+    }
+
+    // Fast path for the plain "1234.56" that saveBooksToFile writes; anything else
+    // (exponents, long fractions, NaN) goes through Double.parseDouble.
+    static double parseDouble(ByteBuffer buf, int start, int end, Regions cur) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) neg = buf.get(i++) == '-';
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && !dot) {
+                dot = true;
+            } else if (b >= '0' && b <= '9' && digits < 15) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (dot) scale++;
+            } else {
+                return Double.parseDouble(cur.string(buf, start, end).trim());
+            }
+        }
+        if (digits == 0) return Double.parseDouble(cur.string(buf, start, end).trim());
+        double v = mantissa / POW10[scale];
+        return neg ? -v : v;
+    }
+
+    private static final double[] POW10 = new double[16];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private static String ascii(ByteBuffer buf, int start, int end) {
+        byte[] b = new byte[end - start];
+        for (int i = 0; i < b.length; i++) b[i] = buf.get(start + i);
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+
+    private static <T> T get(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while loading", e);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException) throw (IOException) c;
+            if (c instanceof RuntimeException) throw (RuntimeException) c;
+            throw new IOException(c);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Per-facet indexes over book ids, kept up to date as books are added, for CatalogQuery.
+//  - type, genre, subject, page band, price band : one BitSet per value (few values, dense sets)
+//  - author : a posting list of ids per author code (hundreds of thousands of authors, a
+//             handful of books each, where a BitSet per author would cost catalog/8 bytes)
+//  - available : one bit per book with a copy on the shelf. Library flips it on every borrow
+//             and return through availabilityChanged, which takes no lock (see LiveBits).
+// A query starts from its most selective index (an author's postings, else the AND of the set
+// bitmaps) and runs the full predicate only on those candidates, so price, page and
+// availability are always checked against the live Book. A price change has to go through
+// Library.setPrice, which re-indexes the book, or the book stays in its old price band.
+// Same locking as SearchIndex: queries share a read lock, only additions take the write lock.
+public class FacetIndex {
+    static final int[] PAGE_BANDS = {0, 100, 200, 300, 500, 1000};  // lower edges
+    static final int[] PRICE_BANDS = {0, 100, 250, 500, 1000, 2000};
+    private static final int TOP_AUTHORS = 10;
+
+    // A bit per book id that can be flipped without the index lock, for availability, which
+    // changes on every borrow. Pages are allocated under the write lock and never copied
+    // afterwards, so a flip can't be lost to a resize; growing only copies the page array.
+    private static final class LiveBits {
+        private static final int PAGE_SHIFT = 16, PAGE_WORDS = 1 << (PAGE_SHIFT - 6);
+        private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+        // caller holds the write lock
+        void ensure(int id) {
+            AtomicLongArray[] ps = pages;
+            int p = id >>> PAGE_SHIFT;
+            if (p < ps.length) return;
+            AtomicLongArray[] grown = Arrays.copyOf(ps, p + 1);
+            for (int i = ps.length; i <= p; i++) grown[i] = new AtomicLongArray(PAGE_WORDS);
+            pages = grown;
+        }
+
+        void set(int id, boolean on) {
+            AtomicLongArray[] ps = pages;
+            int p = id >>> PAGE_SHIFT;
+            if (p >= ps.length) return; // not indexed yet; put() reads the book itself
+            AtomicLongArray words = ps[p];
+            int w = (id >>> 6) & (PAGE_WORDS - 1);
+            long bit = 1L << id;
+            while (true) {
+                long cur = words.get(w);
+                if (((cur & bit) != 0) == on) return;
+                if (words.compareAndSet(w, cur, on ? cur | bit : cur & ~bit)) return;
+            }
+        }
+
+        BitSet snapshot() {
+            AtomicLongArray[] ps = pages;
+            long[] words = new long[ps.length * PAGE_WORDS];
+            for (int p = 0; p < ps.length; p++) {
+                for (int w = 0; w < PAGE_WORDS; w++) words[p * PAGE_WORDS + w] = ps[p].get(w);
+            }
+            return BitSet.valueOf(words);
+        }
+    }
+
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, --size - i);
+                    return;
+                }
+            }
+        }
+    }
+
+    private Book[] byId = new Book[1024];
+    private final BitSet all = new BitSet();
+    private final BitSet[] types = new BitSet[CatalogQuery.Type.values().length];
+    private final BitSet[] pageBands = new BitSet[PAGE_BANDS.length];
+    private final BitSet[] priceBands = new BitSet[PRICE_BANDS.length];
+    private volatile LiveBits available = new LiveBits();
+    private final Map<Integer, BitSet> genres = new HashMap<>();
+    private final Map<Integer, BitSet> subjects = new HashMap<>();
+    private final Map<Integer, Postings> authors = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Collection<Book> pending; // set by rebuildLater; indexed on first use
+
+    public FacetIndex() {
+        for (int i = 0; i < types.length; i++) types[i] = new BitSet();
+        for (int i = 0; i < pageBands.length; i++) pageBands[i] = new BitSet();
+        for (int i = 0; i < priceBands.length; i++) priceBands[i] = new BitSet();
+    }
+
+    // ----- maintenance -----
+
+    public void rebuildLater(Collection<Book> source) {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(byId, null);
+            all.clear();
+            for (BitSet s : types) s.clear();
+            for (BitSet s : pageBands) s.clear();
+            for (BitSet s : priceBands) s.clear();
+            available = new LiveBits();
+            genres.clear();
+            subjects.clear();
+            authors.clear();
+            pending = source;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt() {
+        if (pending == null) return;
+        lock.writeLock().lock();
+        try {
+            Collection<Book> source = pending;
+            if (source == null) return;
+            pending = null;
+            for (Book b : source) put(b);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(Book b) {
+        addAll(List.of(b));
+    }
+
+    // one write lock for the whole batch
+    public void addAll(Collection<Book> batch) {
+        ensureBuilt();
+        lock.writeLock().lock();
+        try {
+            for (Book b : batch) put(b);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int bookId) {
+        ensureBuilt();
+        lock.writeLock().lock();
+        try {
+            if (bookId < byId.length && byId[bookId] != null) {
+                unindex(byId[bookId]);
+                byId[bookId] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called by Library after a borrow or return may have changed whether b has a copy on the
+    // shelf. Re-reads the book after setting the bit: if another desk changed it meanwhile, that
+    // desk's own call may have run first, so this one sets it again.
+    public void availabilityChanged(Book b) {
+        LiveBits bits = available;
+        while (true) {
+            boolean on = !CatalogQuery.isOut(b);
+            bits.set(b.getId(), on);
+            if (on == !CatalogQuery.isOut(b)) return;
+        }
+    }
+
+    // Called by Library.setPrice: moves the book to its new price band.
+    public void repriced(Book b) {
+        ensureBuilt();
+        lock.writeLock().lock();
+        try {
+            int id = b.getId();
+            if (id >= byId.length || byId[id] != b) return;
+            for (BitSet s : priceBands) s.clear(id);
+            priceBands[band(PRICE_BANDS, b.getPrice())].set(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(Book b) {
+        int id = b.getId();
+        if (id >= byId.length) byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+        if (byId[id] != null) unindex(byId[id]);
+        byId[id] = b;
+        all.set(id);
+        types[CatalogQuery.typeOf(b.getClass()).ordinal()].set(id);
+        authors.computeIfAbsent(b.getAuthorCode(), k -> new Postings()).add(id);
+        if (b instanceof Novel) genres.computeIfAbsent(((Novel) b).getGenreCode(), k -> new BitSet()).set(id);
+        if (b instanceof TextBook) subjects.computeIfAbsent(((TextBook) b).getSubjectCode(), k -> new BitSet()).set(id);
+        if (b instanceof PrintedBook) pageBands[band(PAGE_BANDS, ((PrintedBook) b).getPages())].set(id);
+        priceBands[band(PRICE_BANDS, b.getPrice())].set(id);
+        available.ensure(id);
+        availabilityChanged(b);
+    }
+
+    private void unindex(Book b) {
+        int id = b.getId();
+        all.clear(id);
+        types[CatalogQuery.typeOf(b.getClass()).ordinal()].clear(id);
+        Postings p = authors.get(b.getAuthorCode());
+        if (p != null) p.remove(id);
+        if (b instanceof Novel) genres.get(((Novel) b).getGenreCode()).clear(id);
+        if (b instanceof TextBook) subjects.get(((TextBook) b).getSubjectCode()).clear(id);
+        if (b instanceof PrintedBook) pageBands[band(PAGE_BANDS, ((PrintedBook) b).getPages())].clear(id);
+        for (BitSet s : priceBands) s.clear(id); // the price may have changed since it was indexed
+        available.set(id, false);
+    }
+
+    static int band(int[] lowerEdges, double v) {
+        int i = lowerEdges.length - 1;
+        while (i > 0 && v < lowerEdges[i]) i--;
+        return i;
+    }
+
+    // ----- queries -----
+
+    public CatalogQuery.Result query(CatalogQuery q, int offset, int limit) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            int[] ids = matches(q);
+            List<Book> page = new ArrayList<>();
+            for (int i = Math.max(0, offset); i < ids.length && page.size() < limit; i++) page.add(byId[ids[i]]);
+            return new CatalogQuery.Result(page, ids.length, facets(ids));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids of every matching book, ascending
+    private int[] matches(CatalogQuery q) {
+        CatalogQuery.Plan plan = q.plan();
+        if (plan == null) return new int[0];
+        int[] out = new int[16];
+        int n = 0;
+        if (q.author != null) {
+            Postings p = authors.get(plan.authorCode);
+            if (p == null) return new int[0];
+            for (int i = 0; i < p.size; i++) {
+                Book b = byId[p.ids[i]];
+                if (plan.test(b)) {
+                    if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                    out[n++] = b.getId();
+                }
+            }
+            out = Arrays.copyOf(out, n);
+            Arrays.sort(out); // postings are in insertion order, which a reload does not keep
+            return out;
+        }
+        BitSet candidates = candidates(plan);
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            Book b = byId[id];
+            // a late flip can leave an availability bit on a book removed meanwhile
+            if (b != null && plan.test(b)) {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = id;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // AND of the bitmaps for the facets the query sets; all books if it sets none
+    private BitSet candidates(CatalogQuery.Plan plan) {
+        CatalogQuery q = plan.q;
+        List<BitSet> sets = new ArrayList<>();
+        if (q.type != null) sets.add(types[q.type.ordinal()]);
+        if (q.genre != null) sets.add(genres.getOrDefault(plan.genreCode, new BitSet()));
+        if (q.subject != null) sets.add(subjects.getOrDefault(plan.subjectCode, new BitSet()));
+        if (plan.pagesSet()) sets.add(bandRange(pageBands, PAGE_BANDS, q.minPages, q.maxPages));
+        if (plan.priceSet()) sets.add(bandRange(priceBands, PRICE_BANDS, q.minPrice, q.maxPrice));
+        if (q.borrowed != null) {
+            BitSet shelf = available.snapshot();
+            if (q.borrowed) {
+                BitSet out = (BitSet) all.clone();
+                out.andNot(shelf);
+                shelf = out;
+            }
+            sets.add(shelf);
+        }
+        if (sets.isEmpty()) return all;
+        sets.sort(Comparator.comparingInt(BitSet::cardinality));
+        BitSet out = (BitSet) sets.get(0).clone();
+        for (int i = 1; i < sets.size() && !out.isEmpty(); i++) out.and(sets.get(i));
+        return out;
+    }
+
+    // OR of the bands that overlap [min, max]
+    private static BitSet bandRange(BitSet[] sets, int[] lowerEdges, double min, double max) {
+        BitSet out = new BitSet();
+        if (min > max) return out;
+        int lo = band(lowerEdges, min), hi = band(lowerEdges, max);
+        for (int i = lo; i <= hi; i++) out.or(sets[i]);
+        return out;
+    }
+
+    private Map<String, Map<String, Integer>> facets(int[] ids) {
+        CatalogQuery.Type[] typeValues = CatalogQuery.Type.values();
+        int[] type = new int[typeValues.length], pages = new int[PAGE_BANDS.length], price = new int[PRICE_BANDS.length];
+        int[] genre = new int[CatalogStrings.GENRES.size()], subject = new int[CatalogStrings.SUBJECTS.size()];
+        Map<Integer, Integer> author = new HashMap<>();
+        int borrowed = 0;
+        for (int id : ids) {
+            Book b = byId[id];
+            type[CatalogQuery.typeOf(b.getClass()).ordinal()]++;
+            author.merge(b.getAuthorCode(), 1, Integer::sum);
+            price[band(PRICE_BANDS, b.getPrice())]++;
+            if (b instanceof Novel) genre = increment(genre, ((Novel) b).getGenreCode());
+            if (b instanceof TextBook) subject = increment(subject, ((TextBook) b).getSubjectCode());
+            if (b instanceof PrintedBook) pages[band(PAGE_BANDS, ((PrintedBook) b).getPages())]++;
+            if (CatalogQuery.isOut(b)) borrowed++;
+        }
+        Map<String, Map<String, Integer>> out = new LinkedHashMap<>();
+        Map<String, Integer> m = new LinkedHashMap<>();
+        for (int i = 0; i < type.length; i++) if (type[i] > 0) m.put(typeValues[i].name(), type[i]);
+        out.put("type", byCount(m, Integer.MAX_VALUE));
+        out.put("genre", byCount(genre, CatalogStrings.GENRES));
+        out.put("subject", byCount(subject, CatalogStrings.SUBJECTS));
+        m = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> e : author.entrySet()) m.put(CatalogStrings.AUTHORS.decode(e.getKey()), e.getValue());
+        out.put("author", byCount(m, TOP_AUTHORS));
+        out.put("price", bands(PRICE_BANDS, price));
+        out.put("pages", bands(PAGE_BANDS, pages));
+        m = new LinkedHashMap<>();
+        if (ids.length > borrowed) m.put("available", ids.length - borrowed);
+        if (borrowed > 0) m.put("borrowed", borrowed);
+        out.put("availability", m);
+        return out;
+    }
+
+    // counts per genre / subject over the whole catalog: bitmap cardinalities, no scan of the books
+    public Map<String, Integer> genreCounts() {
+        return cardinalities(genres, CatalogStrings.GENRES);
+    }
+
+    public Map<String, Integer> subjectCounts() {
+        return cardinalities(subjects, CatalogStrings.SUBJECTS);
+    }
+
+    private Map<String, Integer> cardinalities(Map<Integer, BitSet> sets, StringDictionary dict) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> m = new LinkedHashMap<>();
+            for (Map.Entry<Integer, BitSet> e : sets.entrySet()) {
+                int n = e.getValue().cardinality();
+                if (n > 0) m.put(dict.decode(e.getKey()), n);
+            }
+            return byCount(m, Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids in ascending order for one author
+    public List<Book> byAuthor(String author) {
+        return query(new CatalogQuery().author(author), 0, Integer.MAX_VALUE).getPage();
+    }
+
+    // ----- counting helpers -----
+
+    // the dictionary can grow while we count, so the array may need to as well
+    private static int[] increment(int[] counts, int code) {
+        if (code < 0) return counts;
+        if (code >= counts.length) counts = Arrays.copyOf(counts, Math.max(code + 1, counts.length * 2));
+        counts[code]++;
+        return counts;
+    }
+
+    private static Map<String, Integer> byCount(int[] counts, StringDictionary dict) {
+        Map<String, Integer> m = new LinkedHashMap<>();
+        for (int c = 0; c < counts.length; c++) if (counts[c] > 0) m.put(dict.decode(c), counts[c]);
+        return byCount(m, Integer.MAX_VALUE);
+    }
+
+    private static Map<String, Integer> byCount(Map<String, Integer> counts, int limit) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : entries) {
+            if (out.size() == limit) break;
+            out.put(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+
+    // labels like "100-249" and "2000+", in band order, empty bands left out
+    private static Map<String, Integer> bands(int[] lowerEdges, int[] counts) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            String label = i + 1 < lowerEdges.length ? lowerEdges[i] + "-" + (lowerEdges[i + 1] - 1) : lowerEdges[i] + "+";
+            out.put(label, counts[i]);
+        }
+        return out;
+    }
+}
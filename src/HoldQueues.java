@@ -0,0 +1,213 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Per-title waiting lists for copies that are all out.
+//  - place          : joins the title's lock-free FIFO queue; served at once if a copy is free
+//  - giveBack       : on return, the copy goes straight to the next live hold and never reaches
+//                     the shelf, so a walk-in can't take it in between
+//  - collect        : the holder's borrow consumes the ready hold and gets that copy
+//  - pickup window  : a ready hold not collected in time expires on a daemon scheduler and the
+//                     copy moves on to the next in line (or back to the shelf)
+// Each hold's state only changes by CAS, so a cancel, an expiry and a collect racing on the
+// same hold have exactly one winner. Cancelled holds stay in the queue and are skipped.
+// Holds live in memory only; they are not journaled or snapshotted.
+public class HoldQueues {
+    public enum Status { WAITING, READY, COLLECTED, CANCELLED, EXPIRED }
+
+    public static final class Hold {
+        private final int memberId;
+        private final int bookId;
+        private final Instant placedAt;
+        private final AtomicReference<Status> status = new AtomicReference<>(Status.WAITING);
+        private volatile int copy = -1;
+        private volatile Instant readyUntil;
+        private volatile ScheduledFuture<?> expiry;
+
+        Hold(int memberId, int bookId, Instant placedAt) {
+            this.memberId = memberId;
+            this.bookId = bookId;
+            this.placedAt = placedAt;
+        }
+
+        public int getMemberId() { return memberId; }
+        public int getBookId() { return bookId; }
+        public Instant getPlacedAt() { return placedAt; }
+        public Status getStatus() { return status.get(); }
+        public int getCopy() { return copy; }
+        public Instant getReadyUntil() { return readyUntil; }
+
+        @Override
+        public String toString() {
+            return status.get() == Status.READY
+                    ? String.format("Hold: member:%d book:%d copy:%d ready until:%s", memberId, bookId, copy, readyUntil)
+                    : String.format("Hold: member:%d book:%d %s since:%s", memberId, bookId, status.get(), placedAt);
+        }
+    }
+
+    private final ConcurrentMap<Integer, Queue<Hold>> waiting = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Hold> byKey = new ConcurrentHashMap<>(); // live holds (waiting or ready)
+    private final ConcurrentMap<Integer, PrintedBook> titles = new ConcurrentHashMap<>();
+    private volatile Duration pickupWindow = Duration.ofDays(3);
+    private volatile Consumer<Hold> onReady = h -> { };
+    private volatile Consumer<PrintedBook> onShelf = b -> { };
+    private volatile ScheduledExecutorService scheduler;
+
+    public void setPickupWindow(Duration window) {
+        if (window.isNegative() || window.isZero()) throw new IllegalArgumentException("pickup window must be positive");
+        this.pickupWindow = window;
+    }
+
+    public Duration getPickupWindow() { return pickupWindow; }
+
+    // told about every hold that becomes ready, on the thread that made it ready
+    public void setReadyListener(Consumer<Hold> listener) {
+        this.onReady = listener == null ? h -> { } : listener;
+    }
+
+    // told after a copy may have reached or left the shelf: a return, a hold placed, cancelled or expired
+    public void setShelfListener(Consumer<PrintedBook> listener) {
+        this.onShelf = listener == null ? b -> { } : listener;
+    }
+
+    // one live hold per member and title; placing it again returns the existing one
+    public Hold place(int memberId, PrintedBook book) {
+        Hold h = new Hold(memberId, book.getId(), Instant.now());
+        Hold existing = byKey.putIfAbsent(LoanStore.key(memberId, book.getId()), h);
+        if (existing != null) return existing;
+        titles.putIfAbsent(book.getId(), book);
+        waiting.computeIfAbsent(book.getId(), k -> new ConcurrentLinkedQueue<>()).add(h);
+        drain(book); // a copy may have been shelved just before the hold was queued
+        onShelf.accept(book);
+        return h;
+    }
+
+    // the copy a ready hold was keeping, or -1 if this member has no ready hold on the title
+    public int collect(int memberId, int bookId) {
+        Hold h = byKey.get(LoanStore.key(memberId, bookId));
+        if (h == null || !h.status.compareAndSet(Status.READY, Status.COLLECTED)) return -1;
+        finish(h);
+        return h.copy;
+    }
+
+    public boolean cancel(int memberId, int bookId) {
+        Hold h = byKey.get(LoanStore.key(memberId, bookId));
+        if (h == null) return false;
+        if (h.status.compareAndSet(Status.WAITING, Status.CANCELLED)) {
+            finish(h);
+            Queue<Hold> q = waiting.get(bookId);
+            if (q != null) q.remove(h);
+            return true;
+        }
+        if (h.status.compareAndSet(Status.READY, Status.CANCELLED)) {
+            finish(h);
+            giveBack(titles.get(bookId), h.copy);
+            return true;
+        }
+        return false;
+    }
+
+    // Called with a copy that was just given back. Hands it to the next live hold and returns
+    // true, or returns false and leaves the copy with the caller to shelve.
+    public boolean handOff(PrintedBook book, int copy) {
+        Queue<Hold> q = waiting.get(book.getId());
+        if (q == null) return false;
+        Hold h;
+        while ((h = q.poll()) != null) {
+            if (makeReady(h, copy)) return true;
+        }
+        return false;
+    }
+
+    // a returned copy: to the next live hold if there is one, otherwise back on the shelf
+    public void giveBack(PrintedBook book, int copy) {
+        if (handOff(book, copy)) return;
+        book.returnCopy(copy);
+        drain(book);
+        onShelf.accept(book);
+    }
+
+    // Serves holds from free shelf copies. Runs after a hold is queued and after a copy is
+    // shelved; each side re-checks the other after its own step, so a hold queued while a copy
+    // is on its way to the shelf is never left waiting next to a free copy.
+    private void drain(PrintedBook book) {
+        Queue<Hold> q = waiting.get(book.getId());
+        if (q == null) return;
+        while (!q.isEmpty()) {
+            int copy = book.tryBorrowCopy();
+            if (copy < 0) return; // nothing on the shelf; the next return hands off
+            if (!handOff(book, copy)) book.returnCopy(copy); // only cancelled holds were left
+        }
+    }
+
+    public List<Hold> waitingFor(int bookId) {
+        List<Hold> out = new ArrayList<>();
+        Queue<Hold> q = waiting.get(bookId);
+        if (q != null) for (Hold h : q) if (h.status.get() == Status.WAITING) out.add(h);
+        return out;
+    }
+
+    public Hold find(int memberId, int bookId) {
+        return byKey.get(LoanStore.key(memberId, bookId));
+    }
+
+    public void clear() {
+        for (Hold h : byKey.values()) {
+            ScheduledFuture<?> f = h.expiry;
+            if (f != null) f.cancel(false);
+        }
+        waiting.clear();
+        byKey.clear();
+        titles.clear();
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    // ----- internals -----
+
+    private boolean makeReady(Hold h, int copy) {
+        h.copy = copy;
+        h.readyUntil = Instant.now().plus(pickupWindow);
+        if (!h.status.compareAndSet(Status.WAITING, Status.READY)) return false; // cancelled while queued
+        h.expiry = scheduler().schedule(() -> expire(h), pickupWindow.toMillis(), TimeUnit.MILLISECONDS);
+        onReady.accept(h);
+        return true;
+    }
+
+    private void expire(Hold h) {
+        if (!h.status.compareAndSet(Status.READY, Status.EXPIRED)) return;
+        finish(h);
+        giveBack(titles.get(h.bookId), h.copy);
+    }
+
+    private void finish(Hold h) {
+        byKey.remove(LoanStore.key(h.memberId, h.bookId), h);
+        ScheduledFuture<?> f = h.expiry;
+        if (f != null) f.cancel(false);
+    }
+
+    private ScheduledExecutorService scheduler() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) return s;
+        synchronized (this) {
+            if (scheduler == null) {
+                ScheduledThreadPoolExecutor e = new ScheduledThreadPoolExecutor(1, r -> {
+                    Thread t = new Thread(r, "hold-expiry");
+                    t.setDaemon(true);
+                    return t;
+                });
+                e.setRemoveOnCancelPolicy(true); // collected holds shouldn't leave their timers queued
+                scheduler = e;
+            }
+            return scheduler;
+        }
+    }
+}
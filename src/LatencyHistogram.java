@@ -0,0 +1,103 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent latency histogram in the HdrHistogram layout: every power of two is split into 16
+// linear sub-buckets, so a recorded value is reported to within 1/16 (about 6%) at any scale,
+// from single nanoseconds up to 2^40 ns (about 18 minutes; longer values land in the last bucket).
+// Recording is one bucket increment plus striped count/sum adders, with no locks and no allocation.
+// The buckets are striped the way LongAdder stripes its cells: one bucket array to start with,
+// and when a CAS on it fails because another thread got there first, the stripes double (up
+// to the next power of two at or above the core count). A thread picks its stripe by a hash of
+// its id, so a few hot latencies recorded from every core do not share one cache line.
+// Reads add the stripes up.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4, SUB = 1 << SUB_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 2) * SUB;
+    private static final int MAX_STRIPES = maxStripes();
+
+    private volatile AtomicLongArray[] stripes = {new AtomicLongArray(BUCKETS)};
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int i = index(nanos);
+        AtomicLongArray[] s = stripes;
+        AtomicLongArray counts = s[(int) ShardRing.mix(Thread.currentThread().getId()) & (s.length - 1)];
+        long c = counts.get(i);
+        if (!counts.compareAndSet(i, c, c + 1)) {
+            counts.incrementAndGet(i);
+            if (s.length < MAX_STRIPES) grow(s);
+        }
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long count() { return count.sum(); }
+
+    public long maxNanos() { return max.get(); }
+
+    public double meanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : sum.sum() / (double) n;
+    }
+
+    // upper edge of the bucket holding the p-th value (p in 0..1), never above the recorded max
+    public long percentileNanos(double p) {
+        long[] snap = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) snap[i] += counts.get(i);
+        }
+        for (int i = 0; i < BUCKETS; i++) total += snap[i];
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(total * p)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= target) return Math.min(lowerBound(i + 1) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    // doubles the stripes unless another thread already has; the old ones keep their counts
+    private synchronized void grow(AtomicLongArray[] seen) {
+        if (stripes != seen) return;
+        AtomicLongArray[] grown = Arrays.copyOf(seen, seen.length * 2);
+        for (int i = seen.length; i < grown.length; i++) grown[i] = new AtomicLongArray(BUCKETS);
+        stripes = grown;
+    }
+
+    private static int maxStripes() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors()) n <<= 1;
+        return n;
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int magnitude = 63 - Long.numberOfLeadingZeros(v);
+        int shift = magnitude - SUB_BITS;
+        int sub = (int) (v >>> shift) & (SUB - 1); // bits just below the leading one
+        return Math.min((shift + 1) * SUB + sub, BUCKETS - 1);
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB) return index;
+        int shift = index / SUB - 1;
+        return (long) (SUB + index % SUB) << shift;
+    }
+}
@@ -1,48 +1,190 @@
 import java.io.*;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.random.RandomGenerator;
-import java.util.stream.Collectors;
 
+// Safe to share between circulation desks: maps are concurrent, ids come from atomic counters,
+// and a copy is claimed with a CAS in PrintedBook.borrow, so borrow/return take no global lock.
+// Bulk loads (loadBooksFromFile/loadMembersFromFile) replace the maps and should run before desks start.
+// Once openJournal has been called, every add/borrow/return is also appended to the operation journal.
+// Journal order has to match the order changes took effect (a copy returned and lent again must
+// replay as return-then-borrow), so with a journal open a title's borrows and returns run under
+// one of CIRCULATION_STRIPES locks and queue their record before letting go of it.
+// Catalog reads (getBookById, title listings and pages, searchByTitle) read one immutable
+// CatalogVersion and take no lock, so they never wait for adds or a running import.
 public class Library {
-    private final Map<Integer, Book> books = new HashMap<>();        // id -> Book
-    private final Map<Integer, Member> members = new HashMap<>();    // id -> Member
-    private final List<BorrowRecord> borrowRecords = new ArrayList<>();
-    private int nextBookId = 1;
-    private int nextMemberId = 1001;
-    private static final double FINE_PER_DAY = 10.0; // rupees per day
+    private final Map<Integer, Book> books = new ConcurrentHashMap<>();      // id -> Book
+    private final Map<Integer, Member> members = new ConcurrentHashMap<>();  // id -> Member
+    private final Map<String, Integer> isbns = new ConcurrentHashMap<>();    // ISBN key -> book id
+    private final LoanStore loans = new LoanStore();                 // active loans
+    private final SortedCatalog sortedCatalog = new SortedCatalog(); // read side: immutable versions
+    private final SearchIndex searchIndex = new SearchIndex(sortedCatalog); // ranked title/author/genre search
+    private final FacetIndex facets = new FacetIndex();              // type/author/genre/... bitmaps
+    private final AtomicInteger nextBookId = new AtomicInteger(1);
+    private final AtomicInteger nextMemberId = new AtomicInteger(1001);
+    private final OverdueEngine overdue = new OverdueEngine(loans);  // due-date bucketed overdue queries
+    private final LoanHistory history = new LoanHistory(false);      // completed loans, columnar
+    private final CirculationAnalytics analytics = new CirculationAnalytics(); // reports kept per event
+    private final HoldQueues holds = new HoldQueues();               // waiting lists, hand-off on return
+    private final LibraryMetrics metrics = new LibraryMetrics(this); // latency histograms and counters
+    private volatile OperationJournal journal;                       // null until openJournal
+    private long snapshotHistoryRows;                                // history rows loaded from the snapshot
+    private static final int CIRCULATION_STRIPES = 1024;
+    private final Object[] circulationLocks = new Object[CIRCULATION_STRIPES];
+
+    {
+        for (int i = 0; i < CIRCULATION_STRIPES; i++) circulationLocks[i] = new Object();
+        holds.setShelfListener(facets::availabilityChanged);
+        overdue.setRunListener(day -> {
+            OperationJournal j = journal;
+            if (j != null) log(() -> j.logOverdueRun(day));
+        });
+    }
 
     // ----- Book management -----
     
 
     public int addNewTextBook(String title, String author, double price, String isbn, int pages, String subject) {
-        int id = nextBookId++;
-        Book b = new TextBook(id, title, author, price, isbn, pages, subject);
-        books.put(id, b);
+        return addNewTextBook(title, author, price, isbn, pages, subject, 1);
+    }
+
+    public int addNewTextBook(String title, String author, double price, String isbn, int pages, String subject,
+                              int copies) {
+        int id = nextBookId.getAndIncrement();
+        Book b = new TextBook(id, title, author, price, isbn, pages, subject, copies);
+        addBook(b);
         return id;
     }
 
+    private void addBook(Book b) {
+        books.put(b.getId(), b);
+        claimIsbn(b);
+        indexAndLog(b);
+    }
+
+    // False if another book already holds b's ISBN (keys as BookImporter.isbnKey compares them).
+    // Desk adds do not refuse a repeated ISBN, so there the first book simply keeps the entry;
+    // only the importer turns a book away on it.
+    private boolean claimIsbn(Book b) {
+        String key = isbnKey(b);
+        return key == null || isbns.putIfAbsent(key, b.getId()) == null;
+    }
+
+    private static String isbnKey(Book b) {
+        if (!(b instanceof PrintedBook)) return null;
+        String key = BookImporter.isbnKey(((PrintedBook) b).getIsbn());
+        return key.isEmpty() ? null : key;
+    }
+
+    boolean hasIsbn(String key) {
+        return isbns.containsKey(key);
+    }
+
+    private void indexAndLog(Book b) {
+        sortedCatalog.add(b); // first: ranked search reads title substrings from it
+        searchIndex.add(b);
+        facets.add(b);
+        OperationJournal j = journal;
+        if (j != null) log(() -> j.logAddBook(b));
+    }
+
+    public int getBookCount() {
+        return sortedCatalog.size();
+    }
+
+    public boolean isCatalogEmpty() {
+        return sortedCatalog.isEmpty();
+    }
+
     public Optional<Book> getBookById(int id) {
-        return Optional.ofNullable(books.get(id));
+        return Optional.ofNullable(sortedCatalog.get(id));
+    }
+
+    // Book.setPrice plus the facet index's price bands; the journal has no record for a price
+    // change, so it reaches disk with the next snapshot
+    public void setPrice(int bookId, double price) {
+        Book b = books.get(bookId);
+        if (b == null) throw new IllegalArgumentException("No book: " + bookId);
+        b.setPrice(price);
+        facets.repriced(b);
+    }
+
+    // The catalog as of now, for several reads that must agree with each other (a listing
+    // streamed in pages, a lookup after a search). One volatile read; never blocks writers.
+    public CatalogVersion catalogSnapshot() {
+        return sortedCatalog.version();
     }
 
     public List<Book> listAllBooksSortedByTitle() {
-        return books.values().stream()
-                .sorted(Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER))
-                .collect(Collectors.toList());
+        return sortedCatalog.all();
+    }
+
+    // one page in title order, continuing after afterBookId (0 for the first page)
+    public List<Book> listBooksSortedByTitle(int afterBookId, int limit) {
+        return sortedCatalog.pageAfter(afterBookId, limit);
+    }
+
+    // titles from 'from' through titles starting with 'to', e.g. ("M", "P")
+    public List<Book> listBooksInTitleRange(String from, String to, int limit) {
+        return sortedCatalog.range(from, to, limit);
     }
 
     public List<Book> searchByTitle(String query) {
-        String q = query.toLowerCase();
-        return books.values().stream()
-                .filter(b -> b.getTitle().toLowerCase().contains(q))
-                .collect(Collectors.toList());
+        long t0 = System.nanoTime();
+        List<Book> found = sortedCatalog.titleContains(query);
+        metrics.record(LibraryMetrics.Op.SEARCH_TITLE, t0);
+        return found;
+    }
+
+    // ranked search over title, author and genre/subject; offset/limit select one page
+    public List<Book> search(String query, int offset, int limit) {
+        long t0 = System.nanoTime();
+        List<Book> found = searchIndex.search(query, offset, limit);
+        metrics.record(LibraryMetrics.Op.SEARCH, t0);
+        return found;
+    }
+
+    // ranked like search(), with the scores, for merging results from several libraries
+    public List<SearchIndex.Hit> searchHits(String query, int offset, int limit) {
+        long t0 = System.nanoTime();
+        List<SearchIndex.Hit> found = searchIndex.searchHits(query, offset, limit);
+        metrics.record(LibraryMetrics.Op.SEARCH, t0);
+        return found;
+    }
+
+    // books matching every predicate set on q; see CatalogQuery.Result for the facet counts
+    public CatalogQuery.Result query(CatalogQuery q, int offset, int limit) {
+        long t0 = System.nanoTime();
+        CatalogQuery.Result r = facets.query(q, offset, limit);
+        metrics.record(LibraryMetrics.Op.QUERY, t0);
+        return r;
+    }
+
+    // exact author match, from the author's posting list
+    public List<Book> listBooksByAuthor(String author) {
+        return facets.byAuthor(author);
+    }
+
+    // number of novels per genre, most common first
+    public Map<String, Integer> countBooksByGenre() {
+        return facets.genreCounts();
+    }
+
+    // number of textbooks per subject, most common first
+    public Map<String, Integer> countBooksBySubject() {
+        return facets.subjectCounts();
     }
 
     // ----- Member management -----
     public int addMember(String name) {
-        int id = nextMemberId++;
-        members.put(id, new Member(id, name));
+        int id = nextMemberId.getAndIncrement();
+        Member m = new Member(id, name);
+        members.put(id, m);
+        OperationJournal j = journal;
+        if (j != null) log(() -> j.logAddMember(m));
         return id;
     }
 
@@ -52,156 +194,659 @@ public class Library {
 
     // ----- Borrow/Return -----
     // borrowDays defines how many days until due (e.g., 14)
+    // Throwing form of tryBorrowBook, kept for existing callers.
     public void borrowBook(int memberId, int bookId, int borrowDays) throws BookNotAvailableException {
-        Member m = members.get(memberId);
+        BorrowResult res = tryBorrowBook(memberId, bookId, borrowDays);
+        switch (res.getStatus()) {
+            case BORROWED:
+                return;
+            case NO_SUCH_MEMBER:
+                throw new IllegalArgumentException("No member: " + memberId);
+            case NO_SUCH_BOOK:
+                throw new IllegalArgumentException("No book: " + bookId);
+            case NOT_BORROWABLE:
+                metrics.borrowException();
+                throw new BookNotAvailableException("This book cannot be borrowed (digital/reference): " + titleOf(bookId));
+            case ALREADY_HAS_COPY:
+                metrics.borrowException();
+                throw new BookNotAvailableException("Member " + memberId + " already has a copy of: " + titleOf(bookId));
+            default:
+                metrics.borrowException();
+                throw new BookNotAvailableException("Already borrowed: " + titleOf(bookId));
+        }
+    }
+
+    // Every refusal comes back as a status; nothing is thrown on the borrow path.
+    public BorrowResult tryBorrowBook(int memberId, int bookId, int borrowDays) {
+        long t0 = System.nanoTime();
+        BorrowResult res = borrowChecked(memberId, bookId, borrowDays);
+        metrics.borrowOutcome(res.getStatus());
+        metrics.record(LibraryMetrics.Op.BORROW, t0);
+        return res;
+    }
+
+    private BorrowResult borrowChecked(int memberId, int bookId, int borrowDays) {
+        if (!members.containsKey(memberId)) return BorrowResult.NO_SUCH_MEMBER;
         Book b = books.get(bookId);
-        if (m == null) throw new IllegalArgumentException("No member: " + memberId);
-        if (b == null) throw new IllegalArgumentException("No book: " + bookId);
+        if (b == null) return BorrowResult.NO_SUCH_BOOK;
+        OperationJournal j = journal;
+        long[] seq = new long[1];
+        BorrowResult res = lend(memberId, b, borrowDays, LocalDate.now(), j, seq);
+        if (seq[0] != 0) log(() -> j.awaitDurable(seq[0]));
+        return res;
+    }
 
-        if (b instanceof Borrowable) {
-            Borrowable br = (Borrowable) b;
-            br.borrow(); // may throw BookNotAvailableException
-            LocalDate borrowDate = LocalDate.now();
-            LocalDate due = borrowDate.plusDays(borrowDays);
-            borrowRecords.add(new BorrowRecord(memberId, bookId, borrowDate, due));
-        } else {
-            throw new BookNotAvailableException("This book cannot be borrowed (digital/reference): " + b.getTitle());
+    // With a journal, lends under the title's lock and queues the loan's record before releasing
+    // it; seq[0] gets the record's journal position for the caller to wait on outside the lock.
+    private BorrowResult lend(int memberId, Book b, int borrowDays, LocalDate today, OperationJournal j, long[] seq) {
+        if (j == null) return lend(memberId, b, borrowDays, today);
+        synchronized (circulationLock(b.getId())) {
+            BorrowResult res = lend(memberId, b, borrowDays, today);
+            if (res.isBorrowed()) seq[0] = queue(() -> j.queueBorrow(res.getRecord()));
+            return res;
         }
     }
 
+    // member and book already checked; not journaled
+    private BorrowResult lend(int memberId, Book b, int borrowDays, LocalDate today) {
+        if (!(b instanceof Borrowable)) return BorrowResult.NOT_BORROWABLE;
+        int copy = 0;
+        if (b instanceof PrintedBook) {
+            copy = holds.collect(memberId, b.getId()); // the copy kept for this member's ready hold
+            if (copy < 0) copy = ((PrintedBook) b).tryBorrowCopy();
+            if (copy < 0) return BorrowResult.NOT_AVAILABLE;
+        } else if (!((Borrowable) b).tryBorrow()) {
+            return BorrowResult.NOT_AVAILABLE;
+        }
+        BorrowRecord r = new BorrowRecord(memberId, b.getId(), copy, today, today.plusDays(borrowDays));
+        if (!loans.add(r)) {
+            // one copy per title per member; hand the copy just taken back
+            returnCopy(b, copy);
+            return BorrowResult.ALREADY_HAS_COPY;
+        }
+        facets.availabilityChanged(b);
+        analytics.loanStarted(memberId, b.getId());
+        return BorrowResult.borrowed(r);
+    }
+
+    private String titleOf(int bookId) {
+        Book b = books.get(bookId);
+        return b == null ? "#" + bookId : b.getTitle();
+    }
+
     public double returnBook(int memberId, int bookId) {
+        return Math.max(0.0, tryReturnBook(memberId, bookId));
+    }
+
+    // returnBook's fine, or -1 if the member doesn't have the book (returnBook reports 0.0 for both)
+    public double tryReturnBook(int memberId, int bookId) {
+        long t0 = System.nanoTime();
         Member m = members.get(memberId);
         Book b = books.get(bookId);
         if (m == null) throw new IllegalArgumentException("No member: " + memberId);
         if (b == null) throw new IllegalArgumentException("No book: " + bookId);
 
+        // fine calculation
+        LocalDate today = LocalDate.now();
+        OperationJournal j = journal;
+        long[] seq = new long[1];
+        BorrowRecord found = takeBack(memberId, b, today, j, seq);
+        if (found == null) {
+            // nothing to return (could be eBook). The copy is left alone: it may be
+            // on loan to another member, and freeing it here would let it be lent twice.
+            metrics.record(LibraryMetrics.Op.RETURN, t0);
+            return -1;
+        }
+        if (seq[0] != 0) log(() -> j.awaitDurable(seq[0]));
+        metrics.record(LibraryMetrics.Op.RETURN, t0);
+        return OverdueEngine.fine(found, today);
+    }
+
+    // Like lend: with a journal, the return (and the history row it got) is queued before the
+    // copy can be lent again. The row is appended before the loan is dropped, so a snapshot
+    // written meanwhile (loans first, then history) holds the loan in one place or both, never neither.
+    private BorrowRecord takeBack(int memberId, Book b, LocalDate today, OperationJournal j, long[] seq) {
+        if (j == null) return takeBack(memberId, b, today);
+        synchronized (circulationLock(b.getId())) {
+            BorrowRecord found = loans.find(memberId, b.getId());
+            if (found == null) return null;
+            long row = history.append(found, today);
+            loans.remove(memberId, b.getId());
+            seq[0] = queue(() -> j.queueReturn(memberId, b.getId(), today, row));
+            returnCopy(b, found.getCopy());
+            analytics.loanCompleted(found, today);
+            return found;
+        }
+    }
+
+    // closes the loan and frees its copy; null if the member doesn't have the book. Not journaled.
+    private BorrowRecord takeBack(int memberId, Book b, LocalDate today) {
         // remove borrow record (assume only one active borrow per book)
-        BorrowRecord found = null;
-        for (BorrowRecord r : borrowRecords) {
-            if (r.getBookId() == bookId && r.getMemberId() == memberId) {
-                found = r;
-                break;
-            }
+        BorrowRecord found = loans.remove(memberId, b.getId());
+        if (found == null) return null;
+        history.append(found, today);
+        returnCopy(b, found.getCopy());
+        analytics.loanCompleted(found, today);
+        return found;
+    }
+
+    // ----- Batch circulation -----
+
+    // Applies a kiosk/sorter batch in order. Members and books are resolved in one pass up front,
+    // every item shares one date, and each item's record is queued as it takes effect; the batch
+    // then waits once for all of them to be durable.
+    // Problems with one item (unknown id, copy out, not on loan) are reported in its result slot
+    // and never stop the rest of the batch.
+    public CirculationBatch.Results applyBatch(CirculationBatch batch) {
+        long t0 = System.nanoTime();
+        int n = batch.size();
+        Book[] resolved = new Book[n];
+        boolean[] memberOk = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            memberOk[i] = members.containsKey(batch.memberId(i));
+            resolved[i] = books.get(batch.bookId(i));
         }
-        if (found == null) {
-            // nothing to return (could be eBook)
-            if (b instanceof Borrowable) {
-                // just allow return
-                ((Borrowable) b).returnItem();
+
+        LocalDate today = LocalDate.now();
+        OperationJournal j = journal;
+        long[] seq = new long[1];
+        long last = 0;
+        CirculationBatch.Results out = new CirculationBatch.Results(n);
+        for (int i = 0; i < n; i++) {
+            int memberId = batch.memberId(i);
+            Book b = resolved[i];
+            if (!memberOk[i]) {
+                out.set(i, CirculationBatch.Outcome.NO_SUCH_MEMBER, null, 0.0);
+            } else if (b == null) {
+                out.set(i, CirculationBatch.Outcome.NO_SUCH_BOOK, null, 0.0);
+            } else if (batch.isCheckOut(i)) {
+                BorrowResult res = lend(memberId, b, batch.days(i), today, j, seq);
+                out.set(i, CirculationBatch.Outcome.valueOf(res.getStatus().name()), res.getRecord(), 0.0);
+            } else {
+                BorrowRecord found = takeBack(memberId, b, today, j, seq);
+                if (found == null) {
+                    out.set(i, CirculationBatch.Outcome.NOT_ON_LOAN, null, 0.0);
+                } else {
+                    out.set(i, CirculationBatch.Outcome.RETURNED, found, OverdueEngine.fine(found, today));
+                }
             }
-            return 0.0;
+            last = Math.max(last, seq[0]);
         }
+        long upTo = last;
+        if (upTo != 0) log(() -> j.awaitDurable(upTo));
+        metrics.batchItems(n);
+        metrics.record(LibraryMetrics.Op.BATCH, t0);
+        return out;
+    }
 
-        borrowRecords.remove(found);
-        if (b instanceof Borrowable) ((Borrowable) b).returnItem();
+    // a copy coming back goes to the next hold on the title before it can reach the shelf
+    private void returnCopy(Book b, int copy) {
+        if (b instanceof PrintedBook) {
+            holds.giveBack((PrintedBook) b, copy); // tells the facets once the copy has settled
+        } else if (b instanceof Borrowable) {
+            ((Borrowable) b).returnItem();
+            facets.availabilityChanged(b);
+        }
+    }
 
-        // fine calculation
-        LocalDate today = LocalDate.now();
-        if (today.isAfter(found.getDueDate())) {
-            long daysLate = java.time.temporal.ChronoUnit.DAYS.between(found.getDueDate(), today);
-            return daysLate * FINE_PER_DAY;
+    // ----- Holds -----
+
+    // Queues the member for the title. If a copy is free it is kept for them at once; either
+    // way the hold turns READY when a copy is set aside, and borrowBook then lends that copy.
+    public HoldQueues.Hold placeHold(int memberId, int bookId) {
+        if (!members.containsKey(memberId)) throw new IllegalArgumentException("No member: " + memberId);
+        Book b = books.get(bookId);
+        if (b == null) throw new IllegalArgumentException("No book: " + bookId);
+        if (!(b instanceof PrintedBook)) {
+            throw new BookNotAvailableException("This book cannot be borrowed (digital/reference): " + b.getTitle());
         }
-        return 0.0;
+        return holds.place(memberId, (PrintedBook) b);
+    }
+
+    public boolean cancelHold(int memberId, int bookId) {
+        return holds.cancel(memberId, bookId);
+    }
+
+    // members still waiting on a title, first in line first
+    public List<HoldQueues.Hold> getHoldQueue(int bookId) {
+        return holds.waitingFor(bookId);
+    }
+
+    public HoldQueues getHolds() {
+        return holds;
+    }
+
+    // free copies of a title; 0 for anything that can't be borrowed
+    public int getAvailableCopies(int bookId) {
+        Book b = books.get(bookId);
+        return b instanceof PrintedBook ? ((PrintedBook) b).getAvailableCopies() : 0;
     }
 
     public List<BorrowRecord> getBorrowRecordsForMember(int memberId) {
-        return borrowRecords.stream()
-                .filter(r -> r.getMemberId() == memberId)
-                .collect(Collectors.toList());
+        return loans.forMember(memberId);
+    }
+
+    public int getActiveLoanCount() {
+        return loans.size();
+    }
+
+    // every completed loan, oldest first
+    public LoanHistory getLoanHistory() {
+        return history;
+    }
+
+    public List<BorrowRecord> getLoanHistoryForMember(int memberId) {
+        return history.forMember(memberId);
+    }
+
+    // most borrowed titles, busiest members, loan length, late returns, fines per month
+    public CirculationAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    // ----- Overdue -----
+    public List<BorrowRecord> getOverdueLoans(LocalDate asOf) {
+        return overdue.overdueAsOf(asOf);
+    }
+
+    // memberId -> fine accrued on loans still out
+    public Map<Integer, Double> getAccruedFines(LocalDate asOf) {
+        return overdue.accruedFinesAsOf(asOf);
+    }
+
+    public double getAccruedFine(int memberId, LocalDate asOf) {
+        return overdue.accruedFine(memberId, asOf);
+    }
+
+    // loans past their due date, counted without building the list
+    public int getOverdueLoanCount(LocalDate asOf) {
+        return loans.countDueBefore(asOf);
+    }
+
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    public OverdueEngine getOverdueEngine() {
+        return overdue;
     }
 
     // ----- Simple Persistence (CSV) -----
     public void saveBooksToFile(String filename) throws IOException {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filename))) {
+        long t0 = System.nanoTime();
+        try (Writer w = new BufferedWriter(new FileWriter(filename), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(1 << 16);
             for (Book b : books.values()) {
-                String type = b.getClass().getSimpleName();
-                // minimal CSV: id,type,title,author,price,extra1,extra2
-                if (b instanceof Novel) {
-                    Novel n = (Novel) b;
-                    pw.printf("%d,%s,%s,%s,%.2f,%s,%d,%s%n",
-                            n.getId(), "Novel", escape(n.getTitle()), escape(n.getAuthor()), n.getPrice(),
-                            n.getIsbn(), n.getPages(), escape(n.getInfo())); // info saved for debug
-                } else if (b instanceof TextBook) {
-                    TextBook t = (TextBook) b;
-                    pw.printf("%d,%s,%s,%s,%.2f,%s,%d,%s%n",
-                            t.getId(), "TextBook", escape(t.getTitle()), escape(t.getAuthor()), t.getPrice(),
-                            t.getIsbn(), t.getPages(), escape(t.getInfo()));
-                } else if (b instanceof PrintedBook) {
-                    PrintedBook p = (PrintedBook) b;
-                    pw.printf("%d,%s,%s,%s,%.2f,%s,%d,%s%n",
-                            p.getId(), p.getClass().getSimpleName(), escape(p.getTitle()), escape(p.getAuthor()),
-                            p.getPrice(), p.getIsbn(), p.getPages(), escape(p.getInfo()));
-                }
+                if (!(b instanceof PrintedBook)) continue;
+                PrintedBook p = (PrintedBook) b;
+                // minimal CSV: id,type,title,author,price,isbn,pages,info,copies
+                sb.append(p.getId()).append(',').append(p.getClass().getSimpleName()).append(',')
+                        .append(escape(p.getTitle())).append(',').append(escape(p.getAuthor())).append(',');
+                appendPrice(sb, p.getPrice()).append(',').append(p.getIsbn()).append(',').append(p.getPages()).append(',');
+                int info = sb.length();
+                p.appendInfo(sb); // info saved for debug; the cached line, not formatted again
+                for (int i = info; i < sb.length(); i++) if (sb.charAt(i) == ',') sb.setCharAt(i, ' ');
+                sb.append(',').append(p.getCopies()).append(System.lineSeparator());
+                if (sb.length() > (1 << 16) - 512) flush(sb, w);
             }
+            flush(sb, w);
         }
+        metrics.record(LibraryMetrics.Op.SAVE_BOOKS_CSV, t0);
+    }
+
+    // Every book in title order, one getInfo() line each, through one reused buffer. The lines
+    // come from the per-book cache, so a repeat listing only renders the borrowed flags.
+    public void writeCatalogListing(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder(1 << 16);
+        IOException[] failed = new IOException[1];
+        sortedCatalog.forEach(b -> {
+            if (failed[0] != null) return;
+            b.appendInfo(sb).append(System.lineSeparator());
+            if (sb.length() > (1 << 16) - 512) {
+                try {
+                    flush(sb, out);
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+            }
+        });
+        if (failed[0] != null) throw failed[0];
+        flush(sb, out);
+        out.flush();
+    }
+
+    private static void flush(StringBuilder sb, Writer w) throws IOException {
+        w.append(sb);
+        sb.setLength(0);
+    }
+
+    // two decimals with a '.' whatever the default locale (CsvLoader expects one), without the Formatter
+    static StringBuilder appendPrice(StringBuilder sb, double price) {
+        long cents = Math.round(Math.abs(price) * 100);
+        if (price < 0 && cents != 0) sb.append('-');
+        sb.append(cents / 100).append('.');
+        long c = cents % 100;
+        return sb.append(c < 10 ? "0" : "").append(c);
     }
 
     public void loadBooksFromFile(String filename) throws IOException {
         File f = new File(filename);
         if (!f.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            books.clear();
-            int maxId = 0;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",", 8);
-                if (parts.length < 8) continue;
-                int id = Integer.parseInt(parts[0]);
-                String type = parts[1];
-                String title = unescape(parts[2]);
-                String author = unescape(parts[3]);
-                double price = Double.parseDouble(parts[4]);
-                String isbn = parts[5];
-                int pages = Integer.parseInt(parts[6]);
-                // ignore last field (info)
-                if ("Novel".equals(type)) {
-                    // for simplicity set genre unknown
-                    books.put(id, new Novel(id, title, author, price, isbn, pages, "Jasoosi"));
-                } else if ("TextBook".equals(type)) {
-                    books.put(id, new TextBook(id, title, author, price, isbn, pages, "Unknown"));
-                } else {
-                    books.put(id, new PrintedBook(id, title, author, price, isbn, pages));
-                }
-                if (id > maxId) maxId = id;
-            }
-            nextBookId = maxId + 1;
+        long t0 = System.nanoTime();
+        // parsed straight off a memory-mapped file, on all cores for big catalogs
+        List<Book> loaded = CsvLoader.loadBooks(f.toPath(), true);
+        books.clear();
+        isbns.clear();
+        holds.clear();
+        int maxId = 0;
+        for (Book b : loaded) {
+            books.put(b.getId(), b);
+            claimIsbn(b);
+            if (b.getId() > maxId) maxId = b.getId();
         }
+        sortedCatalog.replaceAll(loaded);
+        searchIndex.rebuildLater(books.values());
+        facets.rebuildLater(books.values());
+        nextBookId.set(maxId + 1);
+        metrics.record(LibraryMetrics.Op.LOAD_BOOKS_CSV, t0);
     }
 
     private String escape(String s) {
         return s.replace(",", " "); // simple escape
     }
 
-    private String unescape(String s) {
-        return s;
-    }
-
     // save/load members (simple)
     public void saveMembersToFile(String filename) throws IOException {
+        long t0 = System.nanoTime();
         try (PrintWriter pw = new PrintWriter(new FileWriter(filename))) {
             for (Member m : members.values()) {
                 pw.printf("%d,%s,%s%n", m.getMemberId(), escape(m.getName()), m.getJoinedOn());
             }
         }
+        metrics.record(LibraryMetrics.Op.SAVE_MEMBERS_CSV, t0);
     }
 
     public void loadMembersFromFile(String filename) throws IOException {
         File f = new File(filename);
         if (!f.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            members.clear();
-            int maxId = 1000;
-            while ((line = br.readLine()) != null) {
-                String[] p = line.split(",", 3);
-                if (p.length < 3) continue;
-                int id = Integer.parseInt(p[0]);
-                String name = unescape(p[1]);
-                members.put(id, new Member(id, name));
-                if (id > maxId) maxId = id;
+        long t0 = System.nanoTime();
+        List<Member> loaded = CsvLoader.loadMembers(f.toPath());
+        members.clear();
+        int maxId = 1000;
+        for (Member m : loaded) {
+            members.put(m.getMemberId(), m);
+            if (m.getMemberId() > maxId) maxId = m.getMemberId();
+        }
+        nextMemberId.set(maxId + 1);
+        metrics.record(LibraryMetrics.Op.LOAD_MEMBERS_CSV, t0);
+    }
+
+    // ----- Moving books and members between libraries (shards) -----
+
+    // a book that already has an id, given to it by a router or another shard
+    public void addExistingBook(Book b) {
+        if (books.putIfAbsent(b.getId(), b) != null) throw new IllegalArgumentException("Book id taken: " + b.getId());
+        claimIsbn(b);
+        nextBookId.accumulateAndGet(b.getId() + 1, Math::max);
+        indexAndLog(b);
+    }
+
+    // false if the id is already a member here
+    public boolean addExistingMember(Member m) {
+        if (members.putIfAbsent(m.getMemberId(), m) != null) return false;
+        nextMemberId.accumulateAndGet(m.getMemberId() + 1, Math::max);
+        OperationJournal j = journal;
+        if (j != null) log(() -> j.logAddMember(m));
+        return true;
+    }
+
+    // Takes a title out of the catalog, e.g. to move it to another shard; null if there is no such
+    // book. Refused while a copy is out or members are waiting for it. Every copy is claimed before
+    // the book is dropped, so a borrow racing with the removal either wins (and the removal is
+    // refused) or finds nothing on the shelf; the returned Book keeps its copies marked out.
+    public Book removeBook(int bookId) throws BookNotAvailableException {
+        Book b = books.get(bookId);
+        if (b == null) return null;
+        if (!holds.waitingFor(bookId).isEmpty()) {
+            throw new BookNotAvailableException("Members are waiting for: " + b.getTitle());
+        }
+        if (b instanceof PrintedBook) {
+            PrintedBook p = (PrintedBook) b;
+            for (int c = 0; c < p.getCopies(); c++) {
+                if (p.borrowCopy(c)) continue;
+                for (int d = 0; d < c; d++) p.returnCopy(d);
+                facets.availabilityChanged(b); // a borrow may have seen the copies claimed meanwhile
+                throw new BookNotAvailableException("A copy is on loan: " + b.getTitle());
             }
-            nextMemberId = maxId + 1;
         }
+        unindex(bookId);
+        OperationJournal j = journal;
+        if (j != null) log(() -> j.logRemoveBook(bookId));
+        return b;
+    }
+
+    private void unindex(int bookId) {
+        Book b = books.remove(bookId);
+        String key = b == null ? null : isbnKey(b);
+        if (key != null) isbns.remove(key, bookId);
+        searchIndex.remove(bookId);
+        sortedCatalog.remove(bookId);
+        facets.remove(bookId);
+    }
+
+    public int[] getBookIds() {
+        return books.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    int peekNextBookId() {
+        return nextBookId.get();
+    }
+
+    int peekNextMemberId() {
+        return nextMemberId.get();
+    }
+
+    // ----- Bulk import -----
+    // Merges a feed into the catalog instead of replacing it; safe while desks are running.
+    // .tsv files are read as vendor feeds, anything else as books.csv; see BookImporter.
+    public BookImporter.Report importBooks(String filename) throws IOException {
+        Path file = new File(filename).toPath();
+        return importBooks(new BookImporter(this), file, BookImporter.Format.forFile(file));
+    }
+
+    public BookImporter.Report importBooks(BookImporter importer, Path file, BookImporter.Format format)
+            throws IOException {
+        long t0 = System.nanoTime();
+        BookImporter.Report r = importer.run(file, format);
+        metrics.record(LibraryMetrics.Op.IMPORT_BOOKS, t0);
+        return r;
+    }
+
+    int allocateBookId() {
+        return nextBookId.getAndIncrement();
+    }
+
+    // One insert batch from BookImporter; the ids come from allocateBookId, so nothing is replaced.
+    // Each ISBN is claimed as its book goes in; returns the books left out because their ISBN is
+    // already in the catalog, in batch order.
+    List<Book> addImported(List<Book> batch) {
+        List<Book> added = new ArrayList<>(batch.size()), refused = new ArrayList<>();
+        for (Book b : batch) {
+            if (!claimIsbn(b)) {
+                refused.add(b);
+                continue;
+            }
+            books.put(b.getId(), b);
+            added.add(b);
+        }
+        if (added.isEmpty()) return refused;
+        sortedCatalog.addAll(added);
+        searchIndex.addAll(added);
+        facets.addAll(added);
+        OperationJournal j = journal;
+        if (j != null) {
+            OperationJournal.Batch log = new OperationJournal.Batch();
+            for (Book b : added) log.addBook(b);
+            log(() -> j.log(log));
+        }
+        return refused;
+    }
+
+    // ----- Binary snapshot -----
+    // Books (with genre/subject), members (with joinedOn), active loans, id counters and the last overdue run.
+    public void saveSnapshot(String filename) throws IOException {
+        long t0 = System.nanoTime();
+        LibrarySnapshot.write(new File(filename).toPath(), books.values(), members.values(), loans.all(), history,
+                nextBookId.get(), nextMemberId.get(), overdue.getLastRun());
+        metrics.record(LibraryMetrics.Op.SAVE_SNAPSHOT, t0);
+    }
+
+    // replaces the current state; like the CSV loaders, run it before desks start
+    public void loadSnapshot(String filename) throws IOException {
+        File f = new File(filename);
+        if (!f.exists()) return;
+        long t0 = System.nanoTime();
+        LibrarySnapshot.Reader snap = LibrarySnapshot.open(f.toPath());
+        books.clear();
+        isbns.clear();
+        members.clear();
+        loans.clear();
+        holds.clear();
+        List<Book> loaded = new ArrayList<>(snap.bookCount());
+        for (int i = 0; i < snap.bookCount(); i++) {
+            Book b = snap.book(i);
+            books.put(b.getId(), b);
+            claimIsbn(b);
+            loaded.add(b);
+        }
+        sortedCatalog.replaceAll(loaded);
+        searchIndex.rebuildLater(books.values());
+        facets.rebuildLater(books.values());
+        for (int i = 0; i < snap.memberCount(); i++) {
+            Member m = snap.member(i);
+            members.put(m.getMemberId(), m);
+        }
+        for (int i = 0; i < snap.loanCount(); i++) {
+            BorrowRecord r = snap.loan(i);
+            Book b = books.get(r.getBookId());
+            // a snapshot taken during compaction can hold a loan on a book added after the books
+            // section was written; the journal still has both, and replay restores them together
+            if (b == null) continue;
+            if (!claimCopy(b, r)) continue;
+            loans.add(r);
+        }
+        history.clear();
+        snap.copyHistoryInto(history);
+        snapshotHistoryRows = history.size();
+        analytics.rebuild(history, loans.all());
+        nextBookId.set(snap.nextBookId());
+        nextMemberId.set(snap.nextMemberId());
+        overdue.restoreLastRun(snap.overdueLastRun());
+        metrics.record(LibraryMetrics.Op.LOAD_SNAPSHOT, t0);
+    }
+
+    // ----- Operation journal -----
+    // Replays <journalBase>.NNNNNN segments on top of the state already loaded (snapshot or CSV),
+    // then logs every change from here on. Segments are compacted into snapshotFile in the
+    // background once one grows past compactAfterBytes.
+    public void openJournal(String journalBase, String snapshotFile, OperationJournal.FsyncPolicy policy,
+                            long compactAfterBytes) throws IOException {
+        if (journal != null) throw new IllegalStateException("journal already open");
+        // replay leaves the reports alone; they are rebuilt once from the final history and loans
+        if (OperationJournal.replay(new File(journalBase).toPath(), this) > 0) analytics.rebuild(history, loans.all());
+        journal = new OperationJournal(new File(journalBase).toPath(), policy, 200, compactAfterBytes,
+                () -> saveSnapshot(snapshotFile));
+    }
+
+    // writes a snapshot now and drops the journal segments it covers
+    public void compactJournal() throws IOException {
+        if (journal != null) journal.compact();
+    }
+
+    public void closeJournal() throws IOException {
+        OperationJournal j = journal;
+        journal = null;
+        if (j != null) j.close();
+    }
+
+    private interface JournalWrite {
+        void run() throws IOException;
+    }
+
+    private static void log(JournalWrite w) {
+        try {
+            w.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("journal write failed", e);
+        }
+    }
+
+    private interface JournalQueue {
+        long run() throws IOException;
+    }
+
+    private static long queue(JournalQueue q) {
+        try {
+            return q.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("journal write failed", e);
+        }
+    }
+
+    private Object circulationLock(int bookId) {
+        return circulationLocks[(int) ShardRing.mix(bookId) & (CIRCULATION_STRIPES - 1)];
+    }
+
+    // Replay entry points. Each one is idempotent, because a snapshot written during compaction
+    // may already contain some of the operations still in the journal.
+    void replayAddBook(Book b) {
+        if (books.putIfAbsent(b.getId(), b) == null) {
+            claimIsbn(b);
+            sortedCatalog.add(b);
+            searchIndex.add(b);
+            facets.add(b);
+        }
+        nextBookId.accumulateAndGet(b.getId() + 1, Math::max);
+    }
+
+    void replayOverdueRun(LocalDate day) {
+        overdue.restoreLastRun(day);
+    }
+
+    void replayRemoveBook(int bookId) {
+        if (books.containsKey(bookId)) unindex(bookId);
+    }
+
+    void replayAddMember(Member m) {
+        members.putIfAbsent(m.getMemberId(), m);
+        nextMemberId.accumulateAndGet(m.getMemberId() + 1, Math::max);
+    }
+
+    void replayBorrow(BorrowRecord r) {
+        if (loans.find(r.getMemberId(), r.getBookId()) != null) return;
+        Book b = books.get(r.getBookId());
+        if (!(b instanceof Borrowable) || !members.containsKey(r.getMemberId())) return;
+        if (!claimCopy(b, r)) return; // the snapshot already shows that copy with a later borrower
+        loans.add(r);
+        facets.availabilityChanged(b);
+    }
+
+    // marks the exact copy a restored loan holds
+    private static boolean claimCopy(Book b, BorrowRecord r) {
+        if (b instanceof PrintedBook) {
+            PrintedBook p = (PrintedBook) b;
+            return r.getCopy() < p.getCopies() && p.borrowCopy(r.getCopy());
+        }
+        return !(b instanceof Borrowable) || ((Borrowable) b).tryBorrow();
+    }
+
+    // historyRow is the LoanHistory row the return was given; below snapshotHistoryRows the
+    // snapshot's history already has it (the snapshot was written after the return was logged)
+    void replayReturn(int memberId, int bookId, LocalDate returned, long historyRow) {
+        BorrowRecord r = loans.remove(memberId, bookId);
+        if (r == null) return;
+        returnCopy(books.get(bookId), r.getCopy());
+        if (historyRow >= snapshotHistoryRows) history.append(r, returned);
     }
 
     // ----- Utility for quick demo -----
@@ -214,10 +859,15 @@ public class Library {
 
     public int addNewNovel(String title, String author, int price, String isbn, int pages, String genre)
     {
-        int novelId = nextBookId++;
-        Novel novel = new Novel(novelId, title, author, price, isbn, pages, genre);
+        return addNewNovel(title, author, price, isbn, pages, genre, 1);
+    }
+
+    public int addNewNovel(String title, String author, int price, String isbn, int pages, String genre, int copies)
+    {
+        int novelId = nextBookId.getAndIncrement();
+        Novel novel = new Novel(novelId, title, author, price, isbn, pages, genre, copies);
         // save new novel into in-memory
-        books.put(novel.getId(), novel);
+        addBook(novel);
 
         return novel.getId();
     }
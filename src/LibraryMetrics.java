@@ -0,0 +1,182 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Latency histograms and counters for Library operations, plus gauges read from the Library on
+// demand. Library records into it inline (two nanoTime calls and a histogram record per call).
+// Exposed over JMX as library:type=LibraryMetrics with attributes named "<op>.count",
+// "<op>.p99Micros", "borrow.outcome.<STATUS>", "gauge.activeLoans" and so on, and as a text table.
+public class LibraryMetrics implements DynamicMBean {
+    public enum Op {
+        BORROW, RETURN, BATCH, SEARCH_TITLE, SEARCH, QUERY,
+        LOAD_BOOKS_CSV, SAVE_BOOKS_CSV, LOAD_MEMBERS_CSV, SAVE_MEMBERS_CSV,
+        LOAD_SNAPSHOT, SAVE_SNAPSHOT, IMPORT_BOOKS;
+
+        final String key = name().toLowerCase();
+    }
+
+    public static final String OBJECT_NAME = "library:type=LibraryMetrics";
+
+    private final Library lib;
+    private final LatencyHistogram[] latency = new LatencyHistogram[Op.values().length];
+    private final LongAdder[] borrowOutcomes = new LongAdder[BorrowResult.Status.values().length];
+    private final LongAdder borrowExceptions = new LongAdder(); // BookNotAvailableException thrown by borrowBook
+    private final LongAdder batchItems = new LongAdder();
+    private final Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+
+    LibraryMetrics(Library lib) {
+        this.lib = lib;
+        for (Op op : Op.values()) latency[op.ordinal()] = new LatencyHistogram();
+        for (BorrowResult.Status s : BorrowResult.Status.values()) borrowOutcomes[s.ordinal()] = new LongAdder();
+
+        for (Op op : Op.values()) {
+            LatencyHistogram h = latency[op.ordinal()];
+            attributes.put(op.key + ".count", h::count);
+            attributes.put(op.key + ".meanMicros", () -> h.meanNanos() / 1000.0);
+            attributes.put(op.key + ".p50Micros", () -> h.percentileNanos(0.50) / 1000.0);
+            attributes.put(op.key + ".p99Micros", () -> h.percentileNanos(0.99) / 1000.0);
+            attributes.put(op.key + ".p999Micros", () -> h.percentileNanos(0.999) / 1000.0);
+            attributes.put(op.key + ".maxMicros", () -> h.maxNanos() / 1000.0);
+        }
+        for (BorrowResult.Status s : BorrowResult.Status.values()) {
+            attributes.put("borrow.outcome." + s, borrowOutcomes[s.ordinal()]::sum);
+        }
+        attributes.put("borrow.exceptions", borrowExceptions::sum);
+        attributes.put("batch.items", batchItems::sum);
+        attributes.put("gauge.catalogSize", () -> (long) lib.getBookCount());
+        attributes.put("gauge.activeLoans", () -> (long) lib.getActiveLoanCount());
+        attributes.put("gauge.overdueLoans", () -> (long) lib.getOverdueLoanCount(LocalDate.now()));
+    }
+
+    // ----- recording -----
+
+    void record(Op op, long startNanos) {
+        latency[op.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    void borrowOutcome(BorrowResult.Status s) {
+        borrowOutcomes[s.ordinal()].increment();
+    }
+
+    void borrowException() {
+        borrowExceptions.increment();
+    }
+
+    void batchItems(int n) {
+        batchItems.add(n);
+    }
+
+    // ----- reading -----
+
+    public LatencyHistogram latency(Op op) {
+        return latency[op.ordinal()];
+    }
+
+    public long borrowOutcomes(BorrowResult.Status s) {
+        return borrowOutcomes[s.ordinal()].sum();
+    }
+
+    public long borrowExceptions() {
+        return borrowExceptions.sum();
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : latency) h.reset();
+        for (LongAdder a : borrowOutcomes) a.reset();
+        borrowExceptions.reset();
+        batchItems.reset();
+    }
+
+    // table of every operation that has run, then counters and gauges
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-18s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "mean_us", "p50_us", "p99_us", "p99.9_us", "max_us"));
+        for (Op op : Op.values()) {
+            LatencyHistogram h = latency[op.ordinal()];
+            if (h.count() == 0) continue;
+            sb.append(String.format("%-18s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", op.key, h.count(),
+                    h.meanNanos() / 1000.0, h.percentileNanos(0.50) / 1000.0, h.percentileNanos(0.99) / 1000.0,
+                    h.percentileNanos(0.999) / 1000.0, h.maxNanos() / 1000.0));
+        }
+        sb.append("borrow outcomes:");
+        for (BorrowResult.Status s : BorrowResult.Status.values()) sb.append(' ').append(s).append('=').append(borrowOutcomes(s));
+        sb.append(String.format("%nborrow exceptions: %d   batch items: %d%n", borrowExceptions.sum(), batchItems.sum()));
+        sb.append(String.format("catalog size: %d   active loans: %d   overdue loans: %d%n",
+                lib.getBookCount(), lib.getActiveLoanCount(), lib.getOverdueLoanCount(LocalDate.now())));
+        return sb.toString();
+    }
+
+    // registers with the platform MBean server; returns false if the name is already taken
+    public boolean registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            return true;
+        } catch (InstanceAlreadyExistsException e) {
+            return false;
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    // ----- DynamicMBean -----
+
+    @Override
+    public Object getAttribute(String name) throws AttributeNotFoundException {
+        Supplier<Object> s = attributes.get(name);
+        if (s == null) throw new AttributeNotFoundException(name);
+        return s.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        AttributeList out = new AttributeList();
+        for (String n : names) {
+            Supplier<Object> s = attributes.get(n);
+            if (s != null) out.add(new Attribute(n, s.get()));
+        }
+        return out;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+        if (action.equals("reset") && (params == null || params.length == 0)) {
+            reset();
+            return null;
+        }
+        if (action.equals("dump") && (params == null || params.length == 0)) return dump();
+        throw new ReflectionException(new NoSuchMethodException(action));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Object>> e : attributes.entrySet()) {
+            String type = e.getKey().endsWith("Micros") ? "double" : "long";
+            attrs.add(new MBeanAttributeInfo(e.getKey(), type, e.getKey(), true, false, false));
+        }
+        MBeanOperationInfo[] ops = {
+                new MBeanOperationInfo("reset", "clear all histograms and counters", new MBeanParameterInfo[0],
+                        "void", MBeanOperationInfo.ACTION),
+                new MBeanOperationInfo("dump", "text table of all metrics", new MBeanParameterInfo[0],
+                        String.class.getName(), MBeanOperationInfo.INFO)};
+        return new MBeanInfo(getClass().getName(), "Library operation metrics",
+                attrs.toArray(new MBeanAttributeInfo[0]), null, ops, null);
+    }
+}
@@ -0,0 +1,510 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Embedded HTTP/JSON front end over a Library, on the JDK's com.sun.net.httpserver.
+// Every request runs on its own virtual thread when the JDK has them (21+); on older JDKs it
+// falls back to a cached pool of daemon threads. Parameters come from the query string.
+//
+//   GET  /books?after=<id>&limit=<n>   title order; without limit the whole catalog is streamed
+//   GET  /books/<id>
+//   GET  /search?q=<words>&offset=&limit=     ranked;   GET /search?title=<text>   substring
+//   GET  /query?type=Novel&author=&genre=&subject=&minPrice=&maxPrice=&minPages=&maxPages=
+//              &available=true|false&offset=&limit=    filtered page plus facet counts
+//   GET  /members/<id>                 GET /members/<id>/loans
+//   POST /members?name=<name>
+//   POST /borrow?member=&book=&days=   POST /return?member=&book=
+//   POST /holds?member=&book=          DELETE /holds?member=&book=
+//   GET  /analytics?top=<n>            top titles and members, loan length, late rate, fines by month
+//
+// Used by RemoteShard when this server is one shard of a ShardedLibrary:
+//   GET  /books/ids                    GET /stats   (book count and id counters)
+//   POST /books?id=&type=&title=&author=&price=&isbn=&pages=&tag=&copies=   DELETE /books/<id>
+//   POST /members?id=&name=&joined=    GET /search?q=&limit=&scores=true
+//
+// Refusals come back as JSON with a status field: 404 for unknown ids, 409 for a copy that
+// can't be lent, 400 for a malformed request.
+//
+// There is no authentication, and the shard endpoints can add and delete books, so the server
+// listens on the loopback address unless it is given another one.
+public class LibraryServer {
+    private static final int STREAM_PAGE = 512; // books fetched per step while streaming the catalog
+
+    private final Library lib;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    // loopback only: nothing here is authenticated
+    public LibraryServer(Library lib, int port) throws IOException {
+        this(lib, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public LibraryServer(Library lib, InetAddress host, int port) throws IOException {
+        this.lib = lib;
+        this.http = HttpServer.create(new InetSocketAddress(host, port), 4096);
+        this.executor = requestExecutor();
+        http.setExecutor(executor);
+        route("/books", this::books);
+        route("/search", this::search);
+        route("/query", this::query);
+        route("/members", this::members);
+        route("/borrow", this::borrow);
+        route("/return", this::giveBack);
+        route("/holds", this::holds);
+        route("/stats", this::stats);
+        route("/analytics", this::analytics);
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    public void stop(int delaySeconds) {
+        http.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds + 1L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // virtual thread per request where available, without requiring a newer JDK to build
+    static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "http-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ----- handlers -----
+
+    private interface Handler {
+        void handle(HttpExchange ex, String[] path, Map<String, String> q) throws IOException;
+    }
+
+    private void route(String prefix, Handler h) {
+        HttpHandler wrapped = ex -> {
+            try {
+                // createContext matches by prefix; /booksX is not /books
+                String p = ex.getRequestURI().getPath();
+                if (!p.equals(prefix) && !p.startsWith(prefix + "/")) {
+                    send(ex, 404, error("not_found", "no such path: " + p));
+                    return;
+                }
+                String[] path = p.substring(1).split("/");
+                h.handle(ex, path, query(ex.getRequestURI()));
+            } catch (NumberFormatException | BadRequest e) {
+                send(ex, 400, error("bad_request", e.getMessage()));
+            } catch (IllegalArgumentException e) {
+                send(ex, 404, error("not_found", e.getMessage()));
+            } catch (RuntimeException e) {
+                send(ex, 500, error("error", String.valueOf(e.getMessage())));
+            } finally {
+                ex.close();
+            }
+        };
+        http.createContext(prefix, wrapped);
+    }
+
+    private void books(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        if (ex.getRequestMethod().equals("POST") && path.length == 1) {
+            Book b = bookFromParams(q);
+            try {
+                lib.addExistingBook(b);
+            } catch (IllegalArgumentException e) {
+                send(ex, 409, error("id_taken", e.getMessage()));
+                return;
+            }
+            send(ex, 201, book(new StringBuilder(), b).toString());
+            return;
+        }
+        if (ex.getRequestMethod().equals("DELETE") && path.length == 2) {
+            int id = Integer.parseInt(path[1]);
+            try {
+                Book b = lib.removeBook(id);
+                if (b == null) throw new IllegalArgumentException("No book: " + id);
+                send(ex, 200, book(new StringBuilder(), b).toString());
+            } catch (BookNotAvailableException e) {
+                send(ex, 409, error("in_use", e.getMessage()));
+            }
+            return;
+        }
+        method(ex, "GET");
+        if (path.length == 2 && path[1].equals("ids")) {
+            StringBuilder sb = new StringBuilder("[");
+            for (int id : lib.getBookIds()) {
+                if (sb.length() > 1) sb.append(',');
+                sb.append(id);
+            }
+            send(ex, 200, sb.append(']').toString());
+            return;
+        }
+        if (path.length == 2) {
+            int id = Integer.parseInt(path[1]);
+            Book b = lib.getBookById(id).orElseThrow(() -> new IllegalArgumentException("No book: " + id));
+            send(ex, 200, book(new StringBuilder(), b).toString());
+            return;
+        }
+        int after = intParam(q, "after", 0);
+        if (q.containsKey("limit")) {
+            send(ex, 200, bookArray(lib.listBooksSortedByTitle(after, intParam(q, "limit", 50))));
+            return;
+        }
+        // whole catalog: chunked, one page at a time, so nothing catalog-sized is built in memory;
+        // every page comes from the same catalog version, so books added or removed meanwhile
+        // neither appear halfway nor break the cursor
+        CatalogVersion catalog = lib.catalogSnapshot();
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, 0);
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+            w.write('[');
+            boolean first = true;
+            StringBuilder sb = new StringBuilder(256);
+            while (true) {
+                List<Book> page = catalog.pageAfter(after, STREAM_PAGE);
+                for (Book b : page) {
+                    sb.setLength(0);
+                    if (!first) sb.append(',');
+                    first = false;
+                    w.append(book(sb, b));
+                }
+                if (page.size() < STREAM_PAGE) break;
+                after = page.get(page.size() - 1).getId();
+            }
+            w.write(']');
+        }
+    }
+
+    private void search(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        method(ex, "GET");
+        if (q.containsKey("title")) {
+            send(ex, 200, bookArray(lib.searchByTitle(q.get("title"))));
+        } else {
+            String words = required(q, "q");
+            int offset = intParam(q, "offset", 0), limit = intParam(q, "limit", 20);
+            if (!Boolean.parseBoolean(q.get("scores"))) {
+                send(ex, 200, bookArray(lib.search(words, offset, limit)));
+                return;
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for (SearchIndex.Hit h : lib.searchHits(words, offset, limit)) {
+                if (sb.length() > 1) sb.append(',');
+                book(sb.append("{\"score\":").append(h.getScore()).append(",\"book\":"), h.getBook()).append('}');
+            }
+            send(ex, 200, sb.append(']').toString());
+        }
+    }
+
+    private void query(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        method(ex, "GET");
+        CatalogQuery cq = new CatalogQuery();
+        if (q.containsKey("type")) cq.type(typeParam(q.get("type")));
+        if (q.containsKey("author")) cq.author(q.get("author"));
+        if (q.containsKey("genre")) cq.genre(q.get("genre"));
+        if (q.containsKey("subject")) cq.subject(q.get("subject"));
+        if (q.containsKey("minPrice")) cq.minPrice(Double.parseDouble(q.get("minPrice")));
+        if (q.containsKey("maxPrice")) cq.maxPrice(Double.parseDouble(q.get("maxPrice")));
+        cq.pagesBetween(intParam(q, "minPages", Integer.MIN_VALUE), intParam(q, "maxPages", Integer.MAX_VALUE));
+        if (q.containsKey("available")) cq.borrowed(!Boolean.parseBoolean(q.get("available")));
+        CatalogQuery.Result r = lib.query(cq, intParam(q, "offset", 0), intParam(q, "limit", 20));
+
+        StringBuilder sb = new StringBuilder("{\"total\":").append(r.getTotal()).append(",\"books\":")
+                .append(bookArray(r.getPage())).append(",\"facets\":{");
+        boolean firstFacet = true;
+        for (Map.Entry<String, Map<String, Integer>> f : r.getFacets().entrySet()) {
+            if (!firstFacet) sb.append(',');
+            firstFacet = false;
+            str(sb, f.getKey()).append(":{");
+            boolean first = true;
+            for (Map.Entry<String, Integer> e : f.getValue().entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                str(sb, e.getKey()).append(':').append(e.getValue());
+            }
+            sb.append('}');
+        }
+        send(ex, 200, sb.append("}}").toString());
+    }
+
+    private static CatalogQuery.Type typeParam(String v) {
+        switch (v) {
+            case "Novel": return CatalogQuery.Type.NOVEL;
+            case "TextBook": return CatalogQuery.Type.TEXTBOOK;
+            case "PrintedBook": return CatalogQuery.Type.PRINTED_BOOK;
+            default: throw new BadRequest("unknown type: " + v);
+        }
+    }
+
+    private void members(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        if (path.length == 1 && q.containsKey("id")) {
+            method(ex, "POST");
+            Member m = new Member(Integer.parseInt(q.get("id")), required(q, "name"),
+                    q.containsKey("joined") ? LocalDate.parse(q.get("joined")) : LocalDate.now());
+            boolean added = lib.addExistingMember(m);
+            send(ex, added ? 201 : 200, "{\"memberId\":" + m.getMemberId() + ",\"added\":" + added + "}");
+            return;
+        }
+        if (path.length == 1) {
+            method(ex, "POST");
+            int id = lib.addMember(required(q, "name"));
+            send(ex, 201, "{\"memberId\":" + id + "}");
+            return;
+        }
+        method(ex, "GET");
+        int id = Integer.parseInt(path[1]);
+        Member m = lib.getMemberById(id).orElseThrow(() -> new IllegalArgumentException("No member: " + id));
+        if (path.length == 3 && path[2].equals("loans")) {
+            StringBuilder sb = new StringBuilder("[");
+            for (BorrowRecord r : lib.getBorrowRecordsForMember(id)) {
+                if (sb.length() > 1) sb.append(',');
+                loan(sb, r);
+            }
+            send(ex, 200, sb.append(']').toString());
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{\"memberId\":").append(m.getMemberId()).append(",\"name\":");
+        str(sb, m.getName()).append(",\"joinedOn\":\"").append(m.getJoinedOn()).append("\"}");
+        send(ex, 200, sb.toString());
+    }
+
+    private void borrow(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        method(ex, "POST");
+        BorrowResult res = lib.tryBorrowBook(intParam(q, "member", -1), intParam(q, "book", -1), intParam(q, "days", 14));
+        StringBuilder sb = new StringBuilder("{\"status\":\"").append(res.getStatus()).append('"');
+        if (res.isBorrowed()) loan(sb.append(",\"loan\":"), res.getRecord());
+        send(ex, statusCode(res.getStatus()), sb.append('}').toString());
+    }
+
+    private void giveBack(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        method(ex, "POST");
+        // tryReturnBook tells NOT_ON_LOAN apart from returnBook's silent 0.0; unknown ids throw (404)
+        double fine = lib.tryReturnBook(intParam(q, "member", -1), intParam(q, "book", -1));
+        if (fine < 0) {
+            send(ex, 409, "{\"status\":\"" + CirculationBatch.Outcome.NOT_ON_LOAN + "\",\"fine\":0.0}");
+            return;
+        }
+        send(ex, 200, num(new StringBuilder("{\"status\":\"" + CirculationBatch.Outcome.RETURNED + "\",\"fine\":"), fine)
+                .append('}').toString());
+    }
+
+    private void holds(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        int member = intParam(q, "member", -1), book = intParam(q, "book", -1);
+        if (ex.getRequestMethod().equals("DELETE")) {
+            send(ex, 200, "{\"cancelled\":" + lib.cancelHold(member, book) + "}");
+            return;
+        }
+        method(ex, "POST");
+        HoldQueues.Hold h;
+        try {
+            h = lib.placeHold(member, book);
+        } catch (BookNotAvailableException e) {
+            send(ex, 409, error(BorrowResult.Status.NOT_BORROWABLE.name(), e.getMessage()));
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{\"status\":\"").append(h.getStatus()).append('"');
+        if (h.getReadyUntil() != null) sb.append(",\"readyUntil\":\"").append(h.getReadyUntil()).append('"');
+        send(ex, 200, sb.append('}').toString());
+    }
+
+    private void analytics(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        method(ex, "GET");
+        CirculationAnalytics an = lib.getAnalytics();
+        int top = intParam(q, "top", 10);
+        StringBuilder sb = new StringBuilder("{\"borrows\":").append(an.getBorrowCount())
+                .append(",\"returns\":").append(an.getReturnCount())
+                .append(",\"averageLoanDays\":");
+        num(sb, an.averageLoanDays()).append(",\"lateReturnRate\":");
+        num(sb, an.lateReturnRate()).append(",\"finesCollected\":");
+        num(sb, an.getFinesCollected()).append(",\"topBooks\":");
+        topArray(sb, an.mostBorrowedBooks(top), "bookId").append(",\"topMembers\":");
+        topArray(sb, an.mostActiveMembers(top), "memberId").append(",\"months\":[");
+        boolean first = true;
+        for (Map.Entry<java.time.YearMonth, CirculationAnalytics.Period> e : an.byMonth().entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            CirculationAnalytics.Period p = e.getValue();
+            sb.append("{\"month\":\"").append(e.getKey()).append("\",\"returns\":").append(p.getReturns())
+                    .append(",\"late\":").append(p.getLateReturns())
+                    .append(",\"fines\":");
+            num(sb, p.getFinesCollected()).append('}');
+        }
+        send(ex, 200, sb.append("]}").toString());
+    }
+
+    private static StringBuilder topArray(StringBuilder sb, List<SpaceSaving.Entry> entries, String key) {
+        sb.append('[');
+        for (int i = 0; i < entries.size(); i++) {
+            SpaceSaving.Entry e = entries.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"").append(key).append("\":").append(e.getKey()).append(",\"count\":").append(e.getCount())
+                    .append(",\"error\":").append(e.getError()).append('}');
+        }
+        return sb.append(']');
+    }
+
+    private void stats(HttpExchange ex, String[] path, Map<String, String> q) throws IOException {
+        method(ex, "GET");
+        send(ex, 200, "{\"books\":" + lib.getBookCount() + ",\"nextBookId\":" + lib.peekNextBookId()
+                + ",\"nextMemberId\":" + lib.peekNextMemberId() + "}");
+    }
+
+    private static Book bookFromParams(Map<String, String> q) {
+        int id = Integer.parseInt(required(q, "id"));
+        String title = required(q, "title"), author = required(q, "author"), isbn = q.getOrDefault("isbn", "");
+        double price = Double.parseDouble(required(q, "price"));
+        int pages = intParam(q, "pages", 0), copies = intParam(q, "copies", 1);
+        String type = required(q, "type"), tag = q.getOrDefault("tag", "");
+        switch (type) {
+            case "Novel": return new Novel(id, title, author, price, isbn, pages, tag, copies);
+            case "TextBook": return new TextBook(id, title, author, price, isbn, pages, tag, copies);
+            case "PrintedBook": return new PrintedBook(id, title, author, price, isbn, pages, copies);
+            default: throw new BadRequest("unknown type: " + type);
+        }
+    }
+
+    private static int statusCode(BorrowResult.Status s) {
+        switch (s) {
+            case BORROWED: return 200;
+            case NO_SUCH_MEMBER:
+            case NO_SUCH_BOOK: return 404;
+            default: return 409;
+        }
+    }
+
+    // ----- JSON -----
+
+    private static String bookArray(List<Book> books) {
+        StringBuilder sb = new StringBuilder(64 + books.size() * 160).append('[');
+        for (Book b : books) {
+            if (sb.length() > 1) sb.append(',');
+            book(sb, b);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static StringBuilder book(StringBuilder sb, Book b) {
+        sb.append("{\"id\":").append(b.getId()).append(",\"type\":\"").append(b.getClass().getSimpleName())
+                .append("\",\"title\":");
+        str(sb, b.getTitle()).append(",\"author\":");
+        num(str(sb, b.getAuthor()).append(",\"price\":"), b.getPrice());
+        if (b instanceof PrintedBook) {
+            PrintedBook p = (PrintedBook) b;
+            sb.append(",\"isbn\":");
+            str(sb, p.getIsbn()).append(",\"pages\":").append(p.getPages())
+                    .append(",\"copies\":").append(p.getCopies())
+                    .append(",\"available\":").append(p.getAvailableCopies());
+        }
+        String tag = SearchIndex.tagOf(b);
+        if (tag != null) str(sb.append(b instanceof TextBook ? ",\"subject\":" : ",\"genre\":"), tag);
+        return sb.append('}');
+    }
+
+    private static StringBuilder loan(StringBuilder sb, BorrowRecord r) {
+        return sb.append("{\"memberId\":").append(r.getMemberId()).append(",\"bookId\":").append(r.getBookId())
+                .append(",\"copy\":").append(r.getCopy())
+                .append(",\"borrowed\":\"").append(r.getBorrowDate())
+                .append("\",\"due\":\"").append(r.getDueDate()).append("\"}");
+    }
+
+    private static String error(String status, String message) {
+        return str(new StringBuilder("{\"status\":\"").append(status).append("\",\"message\":"), message)
+                .append('}').toString();
+    }
+
+    // JSON has no NaN or Infinity; those (an average over nothing, a bad price) go out as null
+    static StringBuilder num(StringBuilder sb, double d) {
+        return Double.isNaN(d) || Double.isInfinite(d) ? sb.append("null") : sb.append(d);
+    }
+
+    static StringBuilder str(StringBuilder sb, String s) {
+        if (s == null) return sb.append("null");
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    // ----- plumbing -----
+
+    private static final class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) { super(message); }
+    }
+
+    private static void method(HttpExchange ex, String expected) {
+        if (!ex.getRequestMethod().equals(expected)) {
+            throw new BadRequest(ex.getRequestMethod() + " not supported on " + ex.getRequestURI().getPath());
+        }
+    }
+
+    private static String required(Map<String, String> q, String name) {
+        String v = q.get(name);
+        if (v == null || v.isEmpty()) throw new BadRequest("missing parameter: " + name);
+        return v;
+    }
+
+    private static int intParam(Map<String, String> q, String name, int dflt) {
+        String v = q.get(name);
+        return v == null ? dflt : Integer.parseInt(v);
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> out = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static void send(HttpExchange ex, int code, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
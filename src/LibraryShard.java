@@ -0,0 +1,48 @@
+import java.io.Closeable;
+import java.util.List;
+import java.util.Optional;
+
+// One branch's slice of a ShardedLibrary: a LocalShard wraps a Library in this process, a
+// RemoteShard talks to a LibraryServer in another JVM. Book and member ids are assigned by the
+// router, never by the shard. A remote shard reports I/O failures as UncheckedIOException.
+public interface LibraryShard extends Closeable {
+    String name();
+
+    // ----- catalog -----
+
+    // the book keeps its id; IllegalArgumentException if the shard already has that id
+    void addBook(Book b);
+
+    // null if absent; refused while a copy is out or members are waiting (see Library.removeBook)
+    Book removeBook(int bookId) throws BookNotAvailableException;
+
+    Optional<Book> getBook(int bookId);
+
+    int[] bookIds();
+
+    int bookCount();
+
+    List<Book> searchByTitle(String query);
+
+    // the best `limit` hits, in SearchIndex.Hit.RANK order
+    List<SearchIndex.Hit> search(String query, int limit);
+
+    // ----- members and circulation -----
+
+    // false if the shard already knows the member
+    boolean addMember(Member m);
+
+    BorrowResult borrow(int memberId, int bookId, int borrowDays);
+
+    // fine due, 0.0 if the member did not have the book; IllegalArgumentException for unknown ids
+    double returnBook(int memberId, int bookId);
+
+    // ----- id counters, so a router can resume numbering after a restart -----
+
+    int nextBookId();
+
+    int nextMemberId();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,363 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.Collection;
+
+// Versioned binary snapshot of the whole Library state.
+//
+// file    = "LIBSNAP1" | int version | int sectionCount | section*
+// section = int sectionId | long payloadLength | payload        (unknown ids are skipped)
+//
+// Payloads are columnar: a row count, then one fixed-width array per numeric column, then
+// string columns stored as int offsets[count + 1] followed by the UTF-8 bytes. Dates are epoch days.
+//   COUNTERS : nextBookId, nextMemberId
+//   BOOKS    : id[], type[] (byte), price[] (double), pages[], title, author, isbn, tag (genre/subject)
+//   MEMBERS  : id[], joinedOn[], name
+//   LOANS    : memberId[], bookId[], borrowDate[], dueDate[]
+//   HISTORY  : memberId[], bookId[], borrowDate[], dueDate[], returnDate[]   (completed loans)
+//   COPIES   : copies[]   per BOOKS row   (absent: one copy each)
+//   LOAN_COPY: copy[]     per LOANS row   (absent: copy 0)
+//   OVERDUE  : lastRun    the last day OverdueEngine emitted (absent: never ran)
+//
+// Versions: 1 = COUNTERS..HISTORY; 2 adds COPIES and LOAN_COPY; 3 adds OVERDUE. A reader takes any version up to
+// its own and refuses newer ones, since a newer file may depend on sections it would skip.
+//
+// open() maps the file in 1 GB regions addressed by long offsets (one mapping tops out at 2 GB)
+// and only walks the section headers; rows are decoded on demand. Row counts and string column
+// offsets are ints, so write() refuses state that doesn't fit them, before anything is replaced.
+public class LibrarySnapshot {
+    static final byte[] MAGIC = "LIBSNAP1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 3;
+    static final int COUNTERS = 1, BOOKS = 2, MEMBERS = 3, LOANS = 4, HISTORY = 5, COPIES = 6, LOAN_COPY = 7,
+            OVERDUE = 8;
+    static final byte PRINTED = 0, NOVEL = 1, TEXTBOOK = 2;
+
+    // ----- writing -----
+
+    // Written to a temp file of its own and moved into place, so a crash never leaves half a
+    // snapshot and two writers at once never share a file; the last move wins.
+    public static void write(Path file, Collection<Book> books, Collection<Member> members,
+                             Collection<BorrowRecord> loans, LoanHistory history,
+                             int nextBookId, int nextMemberId, LocalDate overdueLastRun) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName() + ".", ".tmp");
+        try {
+            writeTo(tmp, books, members, loans, history, nextBookId, nextMemberId, overdueLastRun);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeTo(Path tmp, Collection<Book> books, Collection<Member> members,
+                                Collection<BorrowRecord> loans, LoanHistory history,
+                                int nextBookId, int nextMemberId, LocalDate overdueLastRun) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(overdueLastRun == null ? 7 : 8);
+
+            out.writeInt(COUNTERS);
+            out.writeLong(8);
+            out.writeInt(nextBookId);
+            out.writeInt(nextMemberId);
+
+            writeBooks(out, books);
+            writeMembers(out, members);
+            writeLoans(out, loans); // before history: Library logs a return's history row before dropping the loan
+            writeHistory(out, history);
+            if (overdueLastRun != null) {
+                out.writeInt(OVERDUE);
+                out.writeLong(4);
+                out.writeInt((int) overdueLastRun.toEpochDay());
+            }
+            out.flush();
+            fos.getChannel().force(true);
+        }
+    }
+
+    // BOOKS and COPIES are written from the same array so their rows line up
+    private static void writeBooks(DataOutputStream out, Collection<Book> books) throws IOException {
+        Book[] rows = books.toArray(new Book[0]);
+        int n = rows.length;
+        byte[][] title = new byte[n][], author = new byte[n][], isbn = new byte[n][], tag = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            Book b = rows[i];
+            title[i] = utf8(b.getTitle());
+            author[i] = utf8(b.getAuthor());
+            isbn[i] = utf8(b instanceof PrintedBook ? ((PrintedBook) b).getIsbn() : "");
+            tag[i] = utf8(SearchIndex.tagOf(b));
+        }
+        out.writeInt(BOOKS);
+        out.writeLong(4 + (long) n * (4 + 1 + 8 + 4)
+                + columnSize(title) + columnSize(author) + columnSize(isbn) + columnSize(tag));
+        out.writeInt(n);
+        for (Book b : rows) out.writeInt(b.getId());
+        for (Book b : rows) out.writeByte(b instanceof Novel ? NOVEL : b instanceof TextBook ? TEXTBOOK : PRINTED);
+        for (Book b : rows) out.writeDouble(b.getPrice());
+        for (Book b : rows) out.writeInt(b instanceof PrintedBook ? ((PrintedBook) b).getPages() : 0);
+        writeColumn(out, title);
+        writeColumn(out, author);
+        writeColumn(out, isbn);
+        writeColumn(out, tag);
+
+        out.writeInt(COPIES);
+        out.writeLong(4 + (long) n * 4);
+        out.writeInt(n);
+        for (Book b : rows) out.writeInt(b instanceof PrintedBook ? ((PrintedBook) b).getCopies() : 1);
+    }
+
+    private static void writeMembers(DataOutputStream out, Collection<Member> members) throws IOException {
+        Member[] rows = members.toArray(new Member[0]);
+        int n = rows.length;
+        byte[][] name = new byte[n][];
+        for (int i = 0; i < n; i++) name[i] = utf8(rows[i].getName());
+        out.writeInt(MEMBERS);
+        out.writeLong(4 + (long) n * (4 + 4) + columnSize(name));
+        out.writeInt(n);
+        for (Member m : rows) out.writeInt(m.getMemberId());
+        for (Member m : rows) out.writeInt((int) m.getJoinedOn().toEpochDay());
+        writeColumn(out, name);
+    }
+
+    private static void writeLoans(DataOutputStream out, Collection<BorrowRecord> loans) throws IOException {
+        BorrowRecord[] rows = loans.toArray(new BorrowRecord[0]);
+        out.writeInt(LOANS);
+        out.writeLong(4 + (long) rows.length * 16);
+        out.writeInt(rows.length);
+        for (BorrowRecord r : rows) out.writeInt(r.getMemberId());
+        for (BorrowRecord r : rows) out.writeInt(r.getBookId());
+        for (BorrowRecord r : rows) out.writeInt((int) r.getBorrowDate().toEpochDay());
+        for (BorrowRecord r : rows) out.writeInt((int) r.getDueDate().toEpochDay());
+
+        out.writeInt(LOAN_COPY);
+        out.writeLong(4 + (long) rows.length * 4);
+        out.writeInt(rows.length);
+        for (BorrowRecord r : rows) out.writeInt(r.getCopy());
+    }
+
+    // one column at a time through a single scratch array; rows appended meanwhile wait for the next snapshot
+    private static void writeHistory(DataOutputStream out, LoanHistory history) throws IOException {
+        long n = history.size();
+        if (n > Integer.MAX_VALUE - 8) throw new IOException("loan history too large for one snapshot: " + n);
+        out.writeInt(HISTORY);
+        out.writeLong(4 + n * 20);
+        out.writeInt((int) n);
+        int[] col = new int[(int) n];
+        for (int c = 0; c < 5; c++) {
+            history.copyColumn(c, col);
+            for (int v : col) out.writeInt(v);
+        }
+    }
+
+    // string offsets are ints
+    private static long columnSize(byte[][] col) throws IOException {
+        long bytes = 0;
+        for (byte[] b : col) bytes += b.length;
+        if (bytes > Integer.MAX_VALUE) throw new IOException("string column too large for one snapshot: " + bytes);
+        return 4L * (col.length + 1) + bytes;
+    }
+
+    private static void writeColumn(DataOutputStream out, byte[][] col) throws IOException {
+        int off = 0;
+        out.writeInt(0);
+        for (byte[] b : col) {
+            off += b.length;
+            out.writeInt(off);
+        }
+        for (byte[] b : col) out.write(b);
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ----- reading -----
+
+    public static Reader open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Reader(new Mapped(ch));
+        }
+    }
+
+    // A read-only file mapped as REGION-sized buffers. Each region also maps the 8 bytes after it,
+    // so an int, long or double never straddles two regions; only byte runs may.
+    static final class Mapped {
+        static final int REGION_BITS = 30;
+        private final int regionBits;
+        private final long region, mask;
+        private final MappedByteBuffer[] regions;
+        final long size;
+
+        Mapped(FileChannel ch) throws IOException {
+            this(ch, REGION_BITS);
+        }
+
+        // smaller regions exercise the region arithmetic without a multi-gigabyte file
+        Mapped(FileChannel ch, int regionBits) throws IOException {
+            this.regionBits = regionBits;
+            region = 1L << regionBits;
+            mask = region - 1;
+            size = ch.size();
+            regions = new MappedByteBuffer[(int) Math.max(1, (size + region - 1) / region)];
+            for (int r = 0; r < regions.length; r++) {
+                long start = r * region;
+                regions[r] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, region + 8));
+            }
+        }
+
+        byte get(long pos) { return regions[(int) (pos >>> regionBits)].get((int) (pos & mask)); }
+
+        int getInt(long pos) { return regions[(int) (pos >>> regionBits)].getInt((int) (pos & mask)); }
+
+        long getLong(long pos) { return regions[(int) (pos >>> regionBits)].getLong((int) (pos & mask)); }
+
+        double getDouble(long pos) { return regions[(int) (pos >>> regionBits)].getDouble((int) (pos & mask)); }
+
+        void get(long pos, byte[] dst, int off, int len) {
+            while (len > 0) {
+                int at = (int) (pos & mask), n = (int) Math.min(len, region - at);
+                regions[(int) (pos >>> regionBits)].get(at, dst, off, n);
+                pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    // Random access over a mapped snapshot. Nothing is decoded until a row is asked for.
+    // Not thread-safe: rows are decoded through one reused scratch buffer.
+    public static class Reader {
+        private final Mapped buf;
+        private byte[] scratch = new byte[256];
+        private int nextBookId = 1, nextMemberId = 1001;
+        private int bookCount, memberCount, loanCount, historyCount;
+        private long bookBase = -1, memberBase = -1, loanBase = -1, historyBase = -1;
+        private long copiesBase = -1, loanCopyBase = -1;
+        private LocalDate overdueLastRun;
+        private long titleCol, authorCol, isbnCol, tagCol, nameCol;
+
+        Reader(Mapped buf) throws IOException {
+            this.buf = buf;
+            byte[] magic = new byte[MAGIC.length];
+            if (buf.size < MAGIC.length + 8) throw new IOException("not a library snapshot");
+            buf.get(0, magic, 0, magic.length);
+            if (!java.util.Arrays.equals(magic, MAGIC)) throw new IOException("not a library snapshot");
+            int version = buf.getInt(8);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("unsupported snapshot version " + version + " (this build reads 1 to " + VERSION + ")");
+            }
+            int sections = buf.getInt(12);
+            long pos = 16;
+            for (int s = 0; s < sections; s++) {
+                int id = buf.getInt(pos);
+                long len = buf.getLong(pos + 4);
+                long p = pos + 12;
+                if (len < 0 || p + len > buf.size) throw new IOException("truncated snapshot section " + id);
+                switch (id) {
+                    case COUNTERS:
+                        nextBookId = buf.getInt(p);
+                        nextMemberId = buf.getInt(p + 4);
+                        break;
+                    case BOOKS:
+                        bookCount = buf.getInt(p);
+                        bookBase = p + 4;
+                        titleCol = bookBase + bookCount * 17L;
+                        authorCol = skipColumn(titleCol, bookCount);
+                        isbnCol = skipColumn(authorCol, bookCount);
+                        tagCol = skipColumn(isbnCol, bookCount);
+                        break;
+                    case MEMBERS:
+                        memberCount = buf.getInt(p);
+                        memberBase = p + 4;
+                        nameCol = memberBase + memberCount * 8L;
+                        break;
+                    case LOANS:
+                        loanCount = buf.getInt(p);
+                        loanBase = p + 4;
+                        break;
+                    case COPIES:
+                        copiesBase = p + 4;
+                        break;
+                    case LOAN_COPY:
+                        loanCopyBase = p + 4;
+                        break;
+                    case HISTORY:
+                        historyCount = buf.getInt(p);
+                        historyBase = p + 4;
+                        break;
+                    case OVERDUE:
+                        overdueLastRun = LocalDate.ofEpochDay(buf.getInt(p));
+                        break;
+                    default:
+                        break; // unknown section id: skipped by its length
+                }
+                pos = p + len;
+            }
+        }
+
+        public int nextBookId() { return nextBookId; }
+        public int nextMemberId() { return nextMemberId; }
+        public int bookCount() { return bookCount; }
+        public int memberCount() { return memberCount; }
+        public int loanCount() { return loanCount; }
+        public int historyCount() { return historyCount; }
+        public LocalDate overdueLastRun() { return overdueLastRun; } // null if it never ran
+
+        public int bookId(int i) { return buf.getInt(bookBase + 4L * i); }
+
+        public Book book(int i) {
+            long n = bookCount;
+            int id = bookId(i);
+            byte type = buf.get(bookBase + 4 * n + i);
+            double price = buf.getDouble(bookBase + 5 * n + 8L * i);
+            int pages = buf.getInt(bookBase + 13 * n + 4L * i);
+            String title = string(titleCol, n, i), author = string(authorCol, n, i);
+            String isbn = string(isbnCol, n, i);
+            int copies = copiesBase < 0 ? 1 : buf.getInt(copiesBase + 4L * i);
+            switch (type) {
+                case NOVEL: return new Novel(id, title, author, price, isbn, pages, string(tagCol, n, i), copies);
+                case TEXTBOOK: return new TextBook(id, title, author, price, isbn, pages, string(tagCol, n, i), copies);
+                default: return new PrintedBook(id, title, author, price, isbn, pages, copies);
+            }
+        }
+
+        public Member member(int i) {
+            int id = buf.getInt(memberBase + 4L * i);
+            LocalDate joined = LocalDate.ofEpochDay(buf.getInt(memberBase + 4L * memberCount + 4L * i));
+            return new Member(id, string(nameCol, memberCount, i), joined);
+        }
+
+        public BorrowRecord loan(int i) {
+            long n = loanCount;
+            int copy = loanCopyBase < 0 ? 0 : buf.getInt(loanCopyBase + 4L * i);
+            return new BorrowRecord(buf.getInt(loanBase + 4L * i), buf.getInt(loanBase + 4 * n + 4L * i), copy,
+                    LocalDate.ofEpochDay(buf.getInt(loanBase + 8 * n + 4L * i)),
+                    LocalDate.ofEpochDay(buf.getInt(loanBase + 12 * n + 4L * i)));
+        }
+
+        // copies completed loans straight from the mapped columns, no BorrowRecord per row
+        public void copyHistoryInto(LoanHistory history) {
+            long n = historyCount, b = historyBase;
+            for (long i = 0; i < n; i++) {
+                history.append(buf.getInt(b + 4 * i), buf.getInt(b + 4 * (n + i)), buf.getInt(b + 4 * (2 * n + i)),
+                        buf.getInt(b + 4 * (3 * n + i)), buf.getInt(b + 4 * (4 * n + i)));
+            }
+        }
+
+        private long skipColumn(long col, int n) {
+            return col + 4L * (n + 1) + buf.getInt(col + 4L * n);
+        }
+
+        private String string(long col, long n, int i) {
+            int start = buf.getInt(col + 4L * i), len = buf.getInt(col + 4L * (i + 1)) - start;
+            if (scratch.length < len) scratch = new byte[Math.max(len, 2 * scratch.length)];
+            buf.get(col + 4 * (n + 1) + start, scratch, 0, len);
+            return new String(scratch, 0, len, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Every completed loan, stored as five int columns instead of one object per loan:
+// memberId, bookId, and borrowed / due / returned dates as epoch days (20 bytes a loan).
+// Rows live in fixed-size chunks so growing never copies old data; a chunk is one IntBuffer
+// holding the five columns back to back, on the heap or off-heap (direct) as chosen at construction.
+// Appends are serialized; readers only see rows below the published size, so scans need no lock.
+public class LoanHistory {
+    static final int CHUNK_ROWS = 1 << 16;
+    private static final int COLUMNS = 5;
+    private static final int MEMBER = 0, BOOK = 1, BORROWED = 2, DUE = 3, RETURNED = 4;
+
+    // primitive row callback for scans; dates are epoch days
+    public interface RowVisitor {
+        void row(int memberId, int bookId, int borrowedDay, int dueDay, int returnedDay);
+    }
+
+    private final boolean offHeap;
+    private volatile IntBuffer[] chunks = new IntBuffer[0];
+    private volatile long size;
+
+    public LoanHistory(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    // returns the new row's index
+    public long append(BorrowRecord r, LocalDate returned) {
+        return append(r.getMemberId(), r.getBookId(), (int) r.getBorrowDate().toEpochDay(),
+                (int) r.getDueDate().toEpochDay(), (int) returned.toEpochDay());
+    }
+
+    public synchronized long append(int memberId, int bookId, int borrowedDay, int dueDay, int returnedDay) {
+        long n = size;
+        int c = (int) (n / CHUNK_ROWS), row = (int) (n % CHUNK_ROWS);
+        IntBuffer[] cs = chunks;
+        if (c == cs.length) {
+            IntBuffer[] grown = Arrays.copyOf(cs, c + 1);
+            grown[c] = newChunk();
+            chunks = cs = grown;
+        }
+        IntBuffer chunk = cs[c];
+        chunk.put(MEMBER * CHUNK_ROWS + row, memberId);
+        chunk.put(BOOK * CHUNK_ROWS + row, bookId);
+        chunk.put(BORROWED * CHUNK_ROWS + row, borrowedDay);
+        chunk.put(DUE * CHUNK_ROWS + row, dueDay);
+        chunk.put(RETURNED * CHUNK_ROWS + row, returnedDay);
+        size = n + 1; // publish the row
+        return n;
+    }
+
+    private IntBuffer newChunk() {
+        int bytes = COLUMNS * CHUNK_ROWS * Integer.BYTES;
+        return offHeap ? ByteBuffer.allocateDirect(bytes).asIntBuffer() : IntBuffer.allocate(COLUMNS * CHUNK_ROWS);
+    }
+
+    public long size() { return size; }
+
+    public synchronized void clear() {
+        chunks = new IntBuffer[0];
+        size = 0;
+    }
+
+    // ----- BorrowRecord view -----
+
+    public BorrowRecord get(long index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("history row " + index);
+        IntBuffer chunk = chunks[(int) (index / CHUNK_ROWS)];
+        int row = (int) (index % CHUNK_ROWS);
+        return new BorrowRecord(chunk.get(MEMBER * CHUNK_ROWS + row), chunk.get(BOOK * CHUNK_ROWS + row),
+                LocalDate.ofEpochDay(chunk.get(BORROWED * CHUNK_ROWS + row)),
+                LocalDate.ofEpochDay(chunk.get(DUE * CHUNK_ROWS + row)),
+                LocalDate.ofEpochDay(chunk.get(RETURNED * CHUNK_ROWS + row)));
+    }
+
+    public List<BorrowRecord> forMember(int memberId) {
+        List<BorrowRecord> out = new ArrayList<>();
+        scanColumn(MEMBER, memberId, out);
+        return out;
+    }
+
+    public List<BorrowRecord> forBook(int bookId) {
+        List<BorrowRecord> out = new ArrayList<>();
+        scanColumn(BOOK, bookId, out);
+        return out;
+    }
+
+    // reads one column only; full records are built just for the matches
+    private void scanColumn(int column, int value, List<BorrowRecord> out) {
+        long n = size;
+        IntBuffer[] cs = chunks;
+        for (int c = 0; (long) c * CHUNK_ROWS < n; c++) {
+            int rows = (int) Math.min(CHUNK_ROWS, n - (long) c * CHUNK_ROWS);
+            IntBuffer chunk = cs[c];
+            int base = column * CHUNK_ROWS;
+            for (int r = 0; r < rows; r++) {
+                if (chunk.get(base + r) == value) out.add(get((long) c * CHUNK_ROWS + r));
+            }
+        }
+    }
+
+    // ----- sequential analytics -----
+
+    public void forEach(RowVisitor v) {
+        long n = size;
+        IntBuffer[] cs = chunks;
+        for (int c = 0; (long) c * CHUNK_ROWS < n; c++) {
+            int rows = (int) Math.min(CHUNK_ROWS, n - (long) c * CHUNK_ROWS);
+            IntBuffer k = cs[c];
+            for (int r = 0; r < rows; r++) {
+                v.row(k.get(r), k.get(BOOK * CHUNK_ROWS + r), k.get(BORROWED * CHUNK_ROWS + r),
+                        k.get(DUE * CHUNK_ROWS + r), k.get(RETURNED * CHUNK_ROWS + r));
+            }
+        }
+    }
+
+    // copies the first dst.length rows of one column (0 member .. 4 returned), for bulk writers
+    void copyColumn(int column, int[] dst) {
+        IntBuffer[] cs = chunks;
+        for (int c = 0; (long) c * CHUNK_ROWS < dst.length; c++) {
+            int from = c * CHUNK_ROWS, rows = Math.min(CHUNK_ROWS, dst.length - from);
+            cs[c].get(column * CHUNK_ROWS, dst, from, rows);
+        }
+    }
+
+    // returned after the due date
+    public long countLateReturns() {
+        long n = size, late = 0;
+        IntBuffer[] cs = chunks;
+        for (int c = 0; (long) c * CHUNK_ROWS < n; c++) {
+            int rows = (int) Math.min(CHUNK_ROWS, n - (long) c * CHUNK_ROWS);
+            IntBuffer k = cs[c];
+            for (int r = 0; r < rows; r++) {
+                if (k.get(RETURNED * CHUNK_ROWS + r) > k.get(DUE * CHUNK_ROWS + r)) late++;
+            }
+        }
+        return late;
+    }
+
+    public double averageLoanDays() {
+        long n = size, days = 0;
+        IntBuffer[] cs = chunks;
+        for (int c = 0; (long) c * CHUNK_ROWS < n; c++) {
+            int rows = (int) Math.min(CHUNK_ROWS, n - (long) c * CHUNK_ROWS);
+            IntBuffer k = cs[c];
+            for (int r = 0; r < rows; r++) days += k.get(RETURNED * CHUNK_ROWS + r) - k.get(BORROWED * CHUNK_ROWS + r);
+        }
+        return n == 0 ? 0.0 : days / (double) n;
+    }
+}
@@ -0,0 +1,144 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Active loans, indexed so that return and per-member/per-book lookups never scan every loan.
+//  - byKey    : (memberId, bookId) -> record, O(1) find/remove on return
+//  - byBook   : bookId -> records on that book
+//  - byMember : memberId -> records of that member
+//  - byDue    : dueDate -> records due that day, kept in date order
+// All indexes are concurrent; per-id buckets are created and dropped inside compute() so
+// concurrent desks never lose a record to an empty bucket being removed under them.
+// Due-date buckets are concurrent sets, since every desk lends into the same day's bucket; one
+// is dropped when its last loan is returned. A bucket counts its loans and is retired by a CAS
+// from 0 to -1 before it leaves the map, and an add that finds it retired makes a new one, so
+// no loan is ever added to a bucket that has been dropped.
+public class LoanStore {
+    private static final class DueBucket {
+        final Set<BorrowRecord> records = ConcurrentHashMap.newKeySet();
+        final AtomicInteger live = new AtomicInteger(); // loans added and not removed; -1 once retired
+    }
+
+    private final ConcurrentMap<Long, BorrowRecord> byKey = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Set<BorrowRecord>> byBook = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Set<BorrowRecord>> byMember = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<LocalDate, DueBucket> byDue = new ConcurrentSkipListMap<>();
+
+    static long key(int memberId, int bookId) {
+        return ((long) memberId << 32) | (bookId & 0xFFFFFFFFL);
+    }
+
+    // returns false if this member already has an active loan on this book
+    public boolean add(BorrowRecord r) {
+        long k = key(r.getMemberId(), r.getBookId());
+        if (byKey.putIfAbsent(k, r) != null) return false;
+        index(byBook, r.getBookId(), r);
+        index(byMember, r.getMemberId(), r);
+        addDue(r);
+        return true;
+    }
+
+    public BorrowRecord find(int memberId, int bookId) {
+        return byKey.get(key(memberId, bookId));
+    }
+
+    public BorrowRecord remove(int memberId, int bookId) {
+        BorrowRecord r = byKey.remove(key(memberId, bookId));
+        if (r == null) return null;
+        unindex(byBook, r.getBookId(), r);
+        unindex(byMember, r.getMemberId(), r);
+        removeDue(r);
+        return r;
+    }
+
+    public List<BorrowRecord> forMember(int memberId) {
+        return copy(byMember, memberId);
+    }
+
+    public List<BorrowRecord> forBook(int bookId) {
+        return copy(byBook, bookId);
+    }
+
+    // loans whose due date is strictly before the given date, oldest first
+    public List<BorrowRecord> dueBefore(LocalDate date) {
+        List<BorrowRecord> out = new ArrayList<>();
+        for (DueBucket b : byDue.headMap(date, false).values()) out.addAll(b.records);
+        return out;
+    }
+
+    public int countDueBefore(LocalDate date) {
+        int n = 0;
+        for (DueBucket b : byDue.headMap(date, false).values()) n += b.records.size();
+        return n;
+    }
+
+    // loans due exactly on the given date
+    public List<BorrowRecord> dueOn(LocalDate date) {
+        DueBucket b = byDue.get(date);
+        return b == null ? new ArrayList<>() : new ArrayList<>(b.records);
+    }
+
+    public Collection<BorrowRecord> all() {
+        return Collections.unmodifiableCollection(byKey.values());
+    }
+
+    public int size() { return byKey.size(); }
+
+    public void clear() {
+        byKey.clear();
+        byBook.clear();
+        byMember.clear();
+        byDue.clear();
+    }
+
+    private void addDue(BorrowRecord r) {
+        while (true) {
+            DueBucket b = byDue.computeIfAbsent(r.getDueDate(), d -> new DueBucket());
+            int n = b.live.get();
+            if (n < 0) {
+                byDue.remove(r.getDueDate(), b); // retired; its remover may not have dropped it yet
+                continue;
+            }
+            if (b.live.compareAndSet(n, n + 1)) {
+                b.records.add(r);
+                return;
+            }
+        }
+    }
+
+    private void removeDue(BorrowRecord r) {
+        LocalDate due = r.getDueDate();
+        DueBucket b = byDue.get(due);
+        if (b == null || !b.records.remove(r)) return;
+        if (b.live.decrementAndGet() == 0 && b.live.compareAndSet(0, -1)) byDue.remove(due, b);
+    }
+
+    // buckets are only mutated inside compute(), which locks that key, so reads copy under the same lock
+    private static <K> void index(ConcurrentMap<K, Set<BorrowRecord>> idx, K key, BorrowRecord r) {
+        idx.compute(key, (k, s) -> {
+            if (s == null) s = new LinkedHashSet<>();
+            s.add(r);
+            return s;
+        });
+    }
+
+    private static <K> void unindex(ConcurrentMap<K, Set<BorrowRecord>> idx, K key, BorrowRecord r) {
+        idx.computeIfPresent(key, (k, s) -> {
+            s.remove(r);
+            return s.isEmpty() ? null : s;
+        });
+    }
+
+    private static <K> List<BorrowRecord> copy(ConcurrentMap<K, Set<BorrowRecord>> idx, K key) {
+        List<BorrowRecord> out = new ArrayList<>();
+        idx.computeIfPresent(key, (k, s) -> {
+            out.addAll(s);
+            return s;
+        });
+        return out;
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.List;
+import java.util.Optional;
+
+// A shard that is just a Library in this process. Closing it closes the Library's journal, if any.
+public class LocalShard implements LibraryShard {
+    private final String name;
+    private final Library lib;
+
+    public LocalShard(String name, Library lib) {
+        this.name = name;
+        this.lib = lib;
+    }
+
+    public Library getLibrary() {
+        return lib;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public void addBook(Book b) {
+        lib.addExistingBook(b);
+    }
+
+    @Override
+    public Book removeBook(int bookId) throws BookNotAvailableException {
+        return lib.removeBook(bookId);
+    }
+
+    @Override
+    public Optional<Book> getBook(int bookId) {
+        return lib.getBookById(bookId);
+    }
+
+    @Override
+    public int[] bookIds() {
+        return lib.getBookIds();
+    }
+
+    @Override
+    public int bookCount() {
+        return lib.getBookCount();
+    }
+
+    @Override
+    public List<Book> searchByTitle(String query) {
+        return lib.searchByTitle(query);
+    }
+
+    @Override
+    public List<SearchIndex.Hit> search(String query, int limit) {
+        return lib.searchHits(query, 0, limit);
+    }
+
+    @Override
+    public boolean addMember(Member m) {
+        return lib.addExistingMember(m);
+    }
+
+    @Override
+    public BorrowResult borrow(int memberId, int bookId, int borrowDays) {
+        return lib.tryBorrowBook(memberId, bookId, borrowDays);
+    }
+
+    @Override
+    public double returnBook(int memberId, int bookId) {
+        return lib.returnBook(memberId, bookId);
+    }
+
+    @Override
+    public int nextBookId() {
+        return lib.peekNextBookId();
+    }
+
+    @Override
+    public int nextMemberId() {
+        return lib.peekNextMemberId();
+    }
+
+    @Override
+    public void close() {
+        try {
+            lib.closeJournal();
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,27 +1,62 @@
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 public class Main {
     private static final String BOOKS_FILE = "books.csv";
     private static final String MEMBERS_FILE = "members.csv";
+    private static final String SNAPSHOT_FILE = "library.snap";
+    private static final String JOURNAL_FILE = "library.journal";
+    private static final long COMPACT_AFTER_BYTES = 16L << 20;
 
     public static void main(String[] args) {
         Library lib = new Library();
 
-        // try load existing data
+        // try load existing data: snapshot if there is one (CSV otherwise), then the journal on top
         try {
-            lib.loadBooksFromFile(BOOKS_FILE);
-            lib.loadMembersFromFile(MEMBERS_FILE);
+            if (new File(SNAPSHOT_FILE).exists()) {
+                lib.loadSnapshot(SNAPSHOT_FILE);
+            } else {
+                lib.loadBooksFromFile(BOOKS_FILE);
+                lib.loadMembersFromFile(MEMBERS_FILE);
+            }
         } catch (IOException e) {
             System.out.println("No saved data found or error reading files.");
         }
+        try {
+            lib.openJournal(JOURNAL_FILE, SNAPSHOT_FILE, OperationJournal.FsyncPolicy.ALWAYS, COMPACT_AFTER_BYTES);
+        } catch (IOException e) {
+            System.out.println("Journal unavailable, changes are only kept until the next save: " + e.getMessage());
+        }
 
         // seed if empty
-        if (lib.listAllBooksSortedByTitle().isEmpty()) {
+        if (lib.isCatalogEmpty()) {
             //lib.seedSampleData(); //
         }
 
+        // also visible in jconsole/VisualVM under library:type=LibraryMetrics
+        lib.getMetrics().registerMBean();
+
+        // java Main --serve [port] [--host <address>] : HTTP/JSON service instead of the console menu.
+        // Loopback only unless --host is given; the service has no authentication.
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = 8080;
+            String host = null;
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--host") && i + 1 < args.length) host = args[++i];
+                else port = Integer.parseInt(args[i]);
+            }
+            serve(lib, host, port);
+            return;
+        }
+
+        lib.getHolds().setReadyListener(h -> System.out.println(
+                "Hold ready for member " + h.getMemberId() + " on book " + h.getBookId() + " until " + h.getReadyUntil()));
+
         Scanner sc = new Scanner(System.in);
         boolean running = true;
         while (running) {
@@ -30,7 +65,7 @@ public class Main {
             try {
                 switch (choice) {
                     case "1": // list
-                        lib.listAllBooksSortedByTitle().forEach(b -> System.out.println(b.getInfo()));
+                        lib.writeCatalogListing(new OutputStreamWriter(System.out));
                         break;
                     case "2": // search
                         System.out.print("Enter title to search: ");
@@ -50,7 +85,8 @@ public class Main {
                         System.out.print("ISBN: "); String isbn = sc.nextLine();
                         System.out.print("Pages: "); int pages = Integer.parseInt(sc.nextLine());
                         System.out.print("Genre: "); String genre = sc.nextLine();
-                        int newId = lib.addNewNovel(t,a,p,isbn,pages,genre);
+                        int copies = readCopies(sc);
+                        int newId = lib.addNewNovel(t,a,p,isbn,pages,genre,copies);
                         System.out.println("Added Novel with ID: " + newId);
                         break;
                     case "4": // add textbook
@@ -60,7 +96,8 @@ public class Main {
                         System.out.print("ISBN: "); String isb = sc.nextLine();
                         System.out.print("Pages: "); int pg = Integer.parseInt(sc.nextLine());
                         System.out.print("Subject: "); String subj = sc.nextLine();
-                        int nt = lib.addNewTextBook(tt, aa, pp, isb, pg, subj);
+                        int tc = readCopies(sc);
+                        int nt = lib.addNewTextBook(tt, aa, pp, isb, pg, subj, tc);
                         System.out.println("Added TextBook with ID: " + nt);
                         break;
                     case "5": // add member
@@ -78,6 +115,10 @@ public class Main {
                             System.out.println("Borrowed successfully. Due in " + days + " days.");
                         } catch (BookNotAvailableException ex) {
                             System.out.println("Cannot borrow: " + ex.getMessage());
+                            System.out.print("Place a hold instead? (y/n): ");
+                            if (sc.nextLine().trim().equalsIgnoreCase("y")) {
+                                System.out.println(lib.placeHold(mem, bid));
+                            }
                         }
                         break;
                     case "7": // return
@@ -95,16 +136,32 @@ public class Main {
                         try {
                             lib.saveBooksToFile(BOOKS_FILE);
                             lib.saveMembersToFile(MEMBERS_FILE);
+                            lib.compactJournal();
                             System.out.println("Saved.");
                         } catch (IOException e) {
                             System.out.println("Save failed: " + e.getMessage());
                         }
                         break;
+                    case "i": // bulk import, merged into the catalog
+                        System.out.print("Feed file: ");
+                        java.nio.file.Path feed = java.nio.file.Path.of(sc.nextLine().trim());
+                        BookImporter.Report rep = lib.importBooks(new BookImporter(lib)
+                                .onProgress(pr -> System.out.println("  " + pr), 1000), feed, BookImporter.Format.forFile(feed));
+                        System.out.println(rep);
+                        rep.samples().stream().limit(10).forEach(r -> System.out.println("  " + r));
+                        break;
+                    case "a": // circulation analytics
+                        printAnalytics(lib);
+                        break;
+                    case "m": // metrics
+                        System.out.print(lib.getMetrics().dump());
+                        break;
                     case "0":
                         // save on exit
                         try {
                             lib.saveBooksToFile(BOOKS_FILE);
                             lib.saveMembersToFile(MEMBERS_FILE);
+                            lib.closeJournal();
                         }
                         catch (IOException e) { /* ignore */ }
                         running = false;
@@ -121,6 +178,67 @@ public class Main {
         sc.close();
     }
 
+    // runs until the process is stopped; the journal is closed on the way out
+    private static void serve(Library lib, String host, int port) {
+        // Headers and body go out as two writes; without TCP_NODELAY a client on a kept-alive
+        // connection waits out its delayed ACK (~40 ms) on every small answer. Read once, when
+        // the JDK's server classes load, so it has to be set before the first HttpServer.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        LibraryServer server;
+        try {
+            server = host == null ? new LibraryServer(lib, port)
+                    : new LibraryServer(lib, InetAddress.getByName(host), port);
+        } catch (IOException e) {
+            System.out.println("Cannot start server: " + e.getMessage());
+            return;
+        }
+        // newly overdue loans, once now (catching up on nights the service was down) and after every midnight
+        OverdueEngine overdue = lib.getOverdueEngine();
+        overdue.startNightly(batch -> System.out.println(batch.size() + " loan(s) became overdue"));
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            overdue.stopNightly();
+            try {
+                lib.closeJournal();
+            } catch (IOException e) { /* ignore */ }
+            stopped.countDown();
+        }));
+        server.start();
+        System.out.println("Library service listening on " + (host == null ? "localhost" : host) + ":" + server.getPort());
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int readCopies(Scanner sc) {
+        System.out.print("Copies (Enter for 1): ");
+        String c = sc.nextLine().trim();
+        return c.isEmpty() ? 1 : Integer.parseInt(c);
+    }
+
+    private static void printAnalytics(Library lib) {
+        CirculationAnalytics an = lib.getAnalytics();
+        System.out.printf("Loans: %d started, %d returned, average %.1f days, %.1f%% returned late%n",
+                an.getBorrowCount(), an.getReturnCount(), an.averageLoanDays(), 100 * an.lateReturnRate());
+        System.out.println("Most borrowed:");
+        for (SpaceSaving.Entry e : an.mostBorrowedBooks(10)) {
+            String title = lib.getBookById(e.getKey()).map(Book::getTitle).orElse("#" + e.getKey());
+            System.out.println("  " + e.getCount() + "  " + title);
+        }
+        System.out.println("Most active members:");
+        for (SpaceSaving.Entry e : an.mostActiveMembers(10)) {
+            String name = lib.getMemberById(e.getKey()).map(Member::getName).orElse("#" + e.getKey());
+            System.out.println("  " + e.getCount() + "  " + name);
+        }
+        System.out.println("Fines collected by month:");
+        an.byMonth().forEach((month, p) -> System.out.println("  " + month + ": " + p));
+    }
+
     private static void printMenu() {
         System.out.println("===== Advanced Console Library =====");
         System.out.println("1) List all books");
@@ -132,6 +250,9 @@ public class Main {
         System.out.println("7) Return Book");
         System.out.println("8) Show Member Borrow Records");
         System.out.println("9) Save data now");
+        System.out.println("i) Import books from a feed (.csv or .tsv)");
+        System.out.println("a) Circulation analytics");
+        System.out.println("m) Show metrics");
         System.out.println("0) Exit (will save)");
         System.out.print("Choose: ");
     }
@@ -6,9 +6,14 @@ public class Member {
     private final LocalDate joinedOn;
 
     public Member(int memberId, String name) {
+        this(memberId, name, LocalDate.now());
+    }
+
+    // used when a member is restored from a snapshot
+    public Member(int memberId, String name, LocalDate joinedOn) {
         this.memberId = memberId;
         this.name = name;
-        this.joinedOn = LocalDate.now();
+        this.joinedOn = joinedOn;
     }
 
     public int getMemberId() { return memberId; }
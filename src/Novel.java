@@ -1,11 +1,23 @@
 public class Novel extends PrintedBook {
 
-    private final String genre;
+    private final int genreCode; // CatalogStrings.GENRES
 
-    // ONLY ONE VALID CONSTRUCTOR
+    // one copy unless a copy count is given
     public Novel(int id, String title, String author, double price, String isbn, int pages, String genre) {
-        super(id, title, author, price, isbn, pages);
-        this.genre = genre;
+        this(id, title, author, price, isbn, pages, genre, 1);
+    }
+
+    public Novel(int id, String title, String author, double price, String isbn, int pages, String genre, int copies) {
+        super(id, title, author, price, isbn, pages, copies);
+        this.genreCode = CatalogStrings.GENRES.encode(genre);
+    }
+
+    public String getGenre() {
+        return CatalogStrings.GENRES.decode(genreCode);
+    }
+
+    public int getGenreCode() {
+        return genreCode;
     }
 
 
@@ -14,10 +26,10 @@ public class Novel extends PrintedBook {
 
 
     @Override
-    public String getInfo() {
+    protected String renderInfo(double price) {
         return String.format(
-                "Novel (ID:%d) \"%s\" by %s | Genre:%s | ISBN:%s | ₹%.2f | Borrowed:%s",
-                getId(), getTitle(), getAuthor(), genre, getIsbn(), getPrice(), isBorrowed()
+                "Novel (ID:%d) \"%s\" by %s | Genre:%s | ISBN:%s | ₹%.2f | Borrowed:",
+                getId(), getTitle(), getAuthor(), getGenre(), getIsbn(), price
         );
     }
 }
@@ -33,7 +45,7 @@ public class Novel extends PrintedBook {
 //
 //%.2f → price with 2 decimal places
 //
-//Borrowed:%s → isBorrowed() returns boolean (true/false)
+//Borrowed: → isBorrowed() (true/false), appended by PrintedBook.appendStatus on every call
 //
 //getId(), getTitle(), getAuthor() — ye methods Book/PrintedBook se aate hain (inheritance).
 //
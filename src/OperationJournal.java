@@ -0,0 +1,480 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Append-only log of catalog and circulation operations, replayed on top of the latest snapshot.
+//
+// Records go to numbered segment files (<base>.000001, <base>.000002, ...), each record being
+// int length | int crc32 | payload. Callers hand encoded records to a queue; one writer thread
+// drains whatever has piled up and writes it with a single channel write (group commit), then
+// fsyncs according to the FsyncPolicy.
+//
+// Compaction seals the current segment, writes a snapshot and deletes sealed segments. The
+// snapshot is taken while desks keep working, so it may already contain operations that are
+// also in newer segments; replay is idempotent (explicit ids, borrow/return skip if already
+// applied), which makes that harmless. A return also carries the LoanHistory row it was given,
+// so replay can tell a return the snapshot's history already holds and not append it twice.
+// Compactions run one at a time, whether started by a caller or by the background compactor.
+//
+// Payload strings are int length | UTF-8 bytes, flagged by UTF8_STRINGS in the op byte. Records
+// without the flag (written before it existed) hold DataOutputStream.writeUTF strings, which
+// are limited to 64 KB, and are still read.
+public class OperationJournal implements Closeable {
+    public enum FsyncPolicy {
+        ALWAYS,   // every group commit is fsynced before the callers in it return
+        INTERVAL, // fsync at most every syncIntervalMillis; callers don't wait
+        NEVER     // leave it to the OS
+    }
+
+    // writes a full snapshot of the current state; supplied by Library
+    public interface Snapshotter {
+        void snapshot() throws IOException;
+    }
+
+    static final byte ADD_NOVEL = 1, ADD_TEXTBOOK = 2, ADD_PRINTED = 3, ADD_MEMBER = 4, BORROW = 5, RETURN = 6, REMOVE_BOOK = 7,
+            OVERDUE_RUN = 8;
+    private static final int UTF8_STRINGS = 0x40; // op flag: strings are int length | UTF-8 bytes
+
+    private final Path base;
+    private final FsyncPolicy policy;
+    private final long syncIntervalMillis;
+    private final long compactAfterBytes;
+    private final Snapshotter snapshotter;
+
+    private final Object queueLock = new Object();
+    private List<byte[]> queue = new ArrayList<>();
+    private long appendedSeq, durableSeq;
+    private boolean closed;
+    private IOException writeError;
+
+    private final ReentrantLock channelLock = new ReentrantLock(); // writer vs. segment rotation
+    private FileChannel channel;
+    private int segment;
+    private long lastSync = System.currentTimeMillis();
+
+    private final Thread writer;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean();   // a background compaction is queued or running
+    private final ReentrantLock compactLock = new ReentrantLock(); // one compact() at a time
+
+    // Always starts a fresh segment, so a torn record left by a crash is only ever at the end of an old one.
+    public OperationJournal(Path base, FsyncPolicy policy, long syncIntervalMillis, long compactAfterBytes,
+                            Snapshotter snapshotter) throws IOException {
+        this.base = base;
+        this.policy = policy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.compactAfterBytes = compactAfterBytes;
+        this.snapshotter = snapshotter;
+        List<Integer> existing = segments(base);
+        segment = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        channel = openSegment(segment);
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ----- logging -----
+
+    public void logAddBook(Book b) throws IOException {
+        append(addBookPayload(b));
+    }
+
+    public void logRemoveBook(int bookId) throws IOException {
+        append(new Rec().op(REMOVE_BOOK).i(bookId).bytes());
+    }
+
+    // the day OverdueEngine last emitted its overdue batch
+    public void logOverdueRun(LocalDate day) throws IOException {
+        append(new Rec().op(OVERDUE_RUN).day(day).bytes());
+    }
+
+    public void logAddMember(Member m) throws IOException {
+        append(new Rec().op(ADD_MEMBER).i(m.getMemberId()).s(m.getName()).day(m.getJoinedOn()).bytes());
+    }
+
+    public void logBorrow(BorrowRecord r) throws IOException {
+        awaitDurable(queueBorrow(r));
+    }
+
+    public void logReturn(int memberId, int bookId, LocalDate returned, long historyRow) throws IOException {
+        awaitDurable(queueReturn(memberId, bookId, returned, historyRow));
+    }
+
+    // Circulation records are queued and waited for in two steps. The journal keeps records in
+    // queue order, so a caller queues while it still holds whatever orders the change (Library's
+    // per-title lock) and waits for the fsync after letting go. Returns the record's position.
+    public long queueBorrow(BorrowRecord r) throws IOException {
+        return queue(List.of(borrowPayload(r)));
+    }
+
+    public long queueReturn(int memberId, int bookId, LocalDate returned, long historyRow) throws IOException {
+        return queue(List.of(returnPayload(memberId, bookId, returned, historyRow)));
+    }
+
+    // Book records collected by a bulk import; logged with one append, so the whole batch costs
+    // one queue hand-off and (with ALWAYS) one fsync wait. Records are replayed one by one as usual.
+    public static final class Batch {
+        private final List<byte[]> payloads = new ArrayList<>();
+
+        public void addBook(Book b) { payloads.add(addBookPayload(b)); }
+
+        public boolean isEmpty() { return payloads.isEmpty(); }
+    }
+
+    public void log(Batch batch) throws IOException {
+        if (!batch.isEmpty()) append(batch.payloads);
+    }
+
+    private static byte[] addBookPayload(Book b) {
+        Rec r = new Rec();
+        if (b instanceof Novel) r.op(ADD_NOVEL);
+        else if (b instanceof TextBook) r.op(ADD_TEXTBOOK);
+        else r.op(ADD_PRINTED);
+        r.i(b.getId()).s(b.getTitle()).s(b.getAuthor()).d(b.getPrice());
+        if (b instanceof PrintedBook) r.s(((PrintedBook) b).getIsbn()).i(((PrintedBook) b).getPages());
+        else r.s("").i(0);
+        String tag = SearchIndex.tagOf(b);
+        r.s(tag == null ? "" : tag);
+        r.i(b instanceof PrintedBook ? ((PrintedBook) b).getCopies() : 1);
+        return r.bytes();
+    }
+
+    private static byte[] borrowPayload(BorrowRecord r) {
+        return new Rec().op(BORROW).i(r.getMemberId()).i(r.getBookId())
+                .day(r.getBorrowDate()).day(r.getDueDate()).i(r.getCopy()).bytes();
+    }
+
+    private static byte[] returnPayload(int memberId, int bookId, LocalDate returned, long historyRow) {
+        return new Rec().op(RETURN).i(memberId).i(bookId).day(returned).l(historyRow).bytes();
+    }
+
+    private void append(byte[] payload) throws IOException {
+        append(List.of(payload));
+    }
+
+    private void append(List<byte[]> payloads) throws IOException {
+        awaitDurable(queue(payloads));
+    }
+
+    // hands the records to the writer thread and returns their position; never waits for I/O
+    private long queue(List<byte[]> payloads) throws IOException {
+        List<byte[]> recs = new ArrayList<>(payloads.size());
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            recs.add(ByteBuffer.allocate(8 + payload.length)
+                    .putInt(payload.length).putInt((int) crc.getValue()).put(payload).array());
+        }
+        synchronized (queueLock) {
+            if (writeError != null) throw writeError;
+            if (closed) throw new IOException("journal is closed");
+            queue.addAll(recs);
+            queueLock.notifyAll();
+            return ++appendedSeq;
+        }
+    }
+
+    // with ALWAYS, blocks until everything up to seq is fsynced; returns at once otherwise
+    public void awaitDurable(long seq) throws IOException {
+        if (policy != FsyncPolicy.ALWAYS) return;
+        synchronized (queueLock) {
+            while (durableSeq < seq && writeError == null) {
+                try {
+                    queueLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for journal fsync");
+                }
+            }
+            if (writeError != null && durableSeq < seq) throw writeError;
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<byte[]> batch;
+            long upTo;
+            synchronized (queueLock) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        queueLock.wait(policy == FsyncPolicy.INTERVAL ? syncIntervalMillis : 0);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (policy == FsyncPolicy.INTERVAL && queue.isEmpty()) break; // idle: time to sync
+                }
+                if (queue.isEmpty() && closed) return;
+                batch = queue;
+                queue = new ArrayList<>();
+                upTo = appendedSeq;
+            }
+            long segmentSize;
+            try {
+                channelLock.lock();
+                try {
+                    if (!batch.isEmpty()) writeBatch(batch);
+                    long now = System.currentTimeMillis();
+                    if (policy == FsyncPolicy.ALWAYS
+                            || (policy == FsyncPolicy.INTERVAL && now - lastSync >= syncIntervalMillis)) {
+                        channel.force(false);
+                        lastSync = now;
+                    }
+                    segmentSize = channel.size();
+                } finally {
+                    channelLock.unlock();
+                }
+            } catch (IOException e) {
+                synchronized (queueLock) {
+                    writeError = e;
+                    queueLock.notifyAll();
+                }
+                return;
+            }
+            synchronized (queueLock) {
+                durableSeq = upTo;
+                queueLock.notifyAll();
+            }
+            if (compactAfterBytes > 0 && segmentSize >= compactAfterBytes) compactInBackground();
+        }
+    }
+
+    private void writeBatch(List<byte[]> batch) throws IOException {
+        int total = 0;
+        for (byte[] b : batch) total += b.length;
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        for (byte[] b : batch) buf.put(b);
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    // ----- compaction -----
+
+    // seals the current segment and snapshots in the background; no-op if one is already running
+    public void compactInBackground() {
+        if (!compacting.compareAndSet(false, true)) return;
+        compactor.submit(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.err.println("Journal compaction failed: " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    // Seal, snapshot, then drop every sealed segment. If the snapshot fails nothing is deleted.
+    // A call made while another compaction runs waits for it, then does its own.
+    public void compact() throws IOException {
+        compactLock.lock();
+        try {
+            int sealed = rotate();
+            snapshotter.snapshot();
+            for (int s : segments(base)) {
+                if (s <= sealed) Files.deleteIfExists(segmentPath(base, s));
+            }
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    private int rotate() throws IOException {
+        channelLock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+            int sealed = segment;
+            segment++;
+            channel = openSegment(segment);
+            return sealed;
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    // waits for everything queued so far to reach the file, then fsyncs and stops the writer
+    @Override
+    public void close() throws IOException {
+        synchronized (queueLock) {
+            closed = true;
+            queueLock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channelLock.lock();
+        try {
+            if (channel.isOpen()) {
+                channel.force(true);
+                boolean empty = channel.size() == 0;
+                channel.close();
+                if (empty) Files.deleteIfExists(segmentPath(base, segment)); // nothing logged this session
+            }
+        } finally {
+            channelLock.unlock();
+        }
+        if (writeError != null) throw writeError;
+    }
+
+    // ----- replay -----
+
+    // Applies every segment, oldest first, to lib. Stops reading a segment at the first
+    // torn or corrupt record (a crash mid-write). Returns the number of records applied.
+    public static long replay(Path base, Library lib) throws IOException {
+        long applied = 0;
+        for (int s : segments(base)) {
+            byte[] data = Files.readAllBytes(segmentPath(base, s));
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.remaining() >= 8) {
+                int len = buf.getInt();
+                int crc = buf.getInt();
+                if (len < 0 || len > buf.remaining()) break;
+                CRC32 check = new CRC32();
+                check.update(data, buf.position(), len);
+                if ((int) check.getValue() != crc) break;
+                apply(new DataInputStream(new ByteArrayInputStream(data, buf.position(), len)), lib);
+                buf.position(buf.position() + len);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(DataInputStream in, Library lib) throws IOException {
+        byte flagged = in.readByte();
+        boolean utf8 = (flagged & UTF8_STRINGS) != 0;
+        byte op = (byte) (flagged & ~UTF8_STRINGS);
+        switch (op) {
+            case ADD_NOVEL:
+            case ADD_TEXTBOOK:
+            case ADD_PRINTED: {
+                int id = in.readInt();
+                String title = str(in, utf8), author = str(in, utf8);
+                double price = in.readDouble();
+                String isbn = str(in, utf8);
+                int pages = in.readInt();
+                String tag = str(in, utf8);
+                int copies = in.available() > 0 ? in.readInt() : 1; // absent in records from before copies
+                Book b = op == ADD_NOVEL ? new Novel(id, title, author, price, isbn, pages, tag, copies)
+                        : op == ADD_TEXTBOOK ? new TextBook(id, title, author, price, isbn, pages, tag, copies)
+                        : new PrintedBook(id, title, author, price, isbn, pages, copies);
+                lib.replayAddBook(b);
+                break;
+            }
+            case ADD_MEMBER:
+                lib.replayAddMember(new Member(in.readInt(), str(in, utf8), LocalDate.ofEpochDay(in.readInt())));
+                break;
+            case BORROW: {
+                int memberId = in.readInt(), bookId = in.readInt();
+                LocalDate borrowed = LocalDate.ofEpochDay(in.readInt()), due = LocalDate.ofEpochDay(in.readInt());
+                int copy = in.available() > 0 ? in.readInt() : 0;
+                lib.replayBorrow(new BorrowRecord(memberId, bookId, copy, borrowed, due));
+                break;
+            }
+            case RETURN: {
+                int memberId = in.readInt(), bookId = in.readInt();
+                LocalDate returned = LocalDate.ofEpochDay(in.readInt());
+                long row = in.available() > 0 ? in.readLong() : Long.MAX_VALUE; // absent before rows were logged
+                lib.replayReturn(memberId, bookId, returned, row);
+                break;
+            }
+            case REMOVE_BOOK:
+                lib.replayRemoveBook(in.readInt());
+                break;
+            case OVERDUE_RUN:
+                lib.replayOverdueRun(LocalDate.ofEpochDay(in.readInt()));
+                break;
+            default:
+                throw new IOException("unknown journal record type " + op);
+        }
+    }
+
+    private static String str(DataInputStream in, boolean utf8) throws IOException {
+        if (!utf8) return in.readUTF();
+        int len = in.readInt();
+        if (len < 0 || len > in.available()) throw new IOException("bad string length " + len);
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // ----- files -----
+
+    private FileChannel openSegment(int n) throws IOException {
+        return FileChannel.open(segmentPath(base, n),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    static Path segmentPath(Path base, int n) {
+        return base.resolveSibling(base.getFileName() + String.format(".%06d", n));
+    }
+
+    static List<Integer> segments(Path base) throws IOException {
+        List<Integer> out = new ArrayList<>();
+        Path dir = base.toAbsolutePath().getParent();
+        String prefix = base.getFileName() + ".";
+        if (dir == null || !Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, prefix + "[0-9]*")) {
+            for (Path p : ds) {
+                String suffix = p.getFileName().toString().substring(prefix.length());
+                if (suffix.chars().allMatch(Character::isDigit)) out.add(Integer.parseInt(suffix));
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    // payload builder
+    private static final class Rec {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Rec op(byte op) { return write(() -> out.writeByte(op | UTF8_STRINGS)); }
+        Rec i(int v) { return write(() -> out.writeInt(v)); }
+        Rec l(long v) { return write(() -> out.writeLong(v)); }
+        Rec d(double v) { return write(() -> out.writeDouble(v)); }
+        Rec s(String v) {
+            byte[] b = v.getBytes(StandardCharsets.UTF_8);
+            return write(() -> {
+                out.writeInt(b.length);
+                out.write(b);
+            });
+        }
+        Rec day(LocalDate d) { return i((int) d.toEpochDay()); }
+        byte[] bytes() { return bytes.toByteArray(); }
+
+        private interface W { void run() throws IOException; }
+
+        private Rec write(W w) {
+            try {
+                w.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // ByteArrayOutputStream never throws
+            }
+            return this;
+        }
+    }
+}
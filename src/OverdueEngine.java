@@ -0,0 +1,133 @@
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Overdue queries and fines, answered from LoanStore's due-date buckets (one bucket per day)
+// instead of scanning every loan. A loan becomes overdue the day after its due date.
+//  - overdueAsOf / accruedFinesAsOf : walk only the buckets before the date
+//  - newlyOverdue(day)              : the single bucket for day - 1
+//  - startNightly                   : emits each day's newly-overdue batch to a listener
+// The last day emitted survives a restart: Library journals every run (setRunListener) and
+// keeps the day in its snapshot, and restores it with restoreLastRun before the first run.
+public class OverdueEngine {
+    public static final double FINE_PER_DAY = 10.0; // rupees per day
+
+    private final LoanStore loans;
+    private LocalDate lastRun;          // last day whose batch was emitted
+    private ScheduledExecutorService nightly;
+    private volatile Consumer<LocalDate> onRun = d -> { };
+
+    public OverdueEngine(LoanStore loans) {
+        this.loans = loans;
+    }
+
+    // told the day of every completed run, inside runUpTo, so it can be recorded before the next one
+    public void setRunListener(Consumer<LocalDate> listener) {
+        this.onRun = listener == null ? d -> { } : listener;
+    }
+
+    public synchronized LocalDate getLastRun() {
+        return lastRun;
+    }
+
+    // from a snapshot or the journal; never moves lastRun back
+    public synchronized void restoreLastRun(LocalDate day) {
+        if (day != null && (lastRun == null || day.isAfter(lastRun))) lastRun = day;
+    }
+
+    public static double fine(BorrowRecord r, LocalDate asOf) {
+        if (!asOf.isAfter(r.getDueDate())) return 0.0;
+        return ChronoUnit.DAYS.between(r.getDueDate(), asOf) * FINE_PER_DAY;
+    }
+
+    public List<BorrowRecord> overdueAsOf(LocalDate date) {
+        return loans.dueBefore(date);
+    }
+
+    // memberId -> fine accrued so far on loans still out
+    public Map<Integer, Double> accruedFinesAsOf(LocalDate date) {
+        Map<Integer, Double> out = new HashMap<>();
+        for (BorrowRecord r : loans.dueBefore(date)) out.merge(r.getMemberId(), fine(r, date), Double::sum);
+        return out;
+    }
+
+    public double accruedFine(int memberId, LocalDate date) {
+        double total = 0;
+        for (BorrowRecord r : loans.forMember(memberId)) total += fine(r, date);
+        return total;
+    }
+
+    public List<BorrowRecord> newlyOverdue(LocalDate day) {
+        return loans.dueOn(day.minusDays(1));
+    }
+
+    // Emits one batch per day since the last run (at most the last 'maxCatchUpDays' days after a
+    // long outage), so a missed night is not lost. Returns the number of loans emitted.
+    public synchronized int runUpTo(LocalDate today, int maxCatchUpDays, Consumer<List<BorrowRecord>> listener) {
+        LocalDate from = lastRun == null ? today : lastRun.plusDays(1);
+        if (from.isBefore(today.minusDays(maxCatchUpDays))) from = today.minusDays(maxCatchUpDays);
+        int emitted = 0;
+        for (LocalDate d = from; !d.isAfter(today); d = d.plusDays(1)) {
+            List<BorrowRecord> batch = newlyOverdue(d);
+            if (!batch.isEmpty()) listener.accept(batch);
+            emitted += batch.size();
+        }
+        lastRun = today;
+        onRun.accept(today);
+        return emitted;
+    }
+
+    // Runs once now, then shortly after every local midnight on a daemon thread. Each run books
+    // the next one from the wall clock: a fixed 24 h period would drift an hour at every DST change.
+    public synchronized void startNightly(Consumer<List<BorrowRecord>> listener) {
+        if (nightly != null) return;
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "overdue-nightly");
+            t.setDaemon(true);
+            return t;
+        });
+        nightly = s;
+        s.execute(() -> {
+            nightlyRun(listener);
+            scheduleNext(s, listener);
+        });
+    }
+
+    private void nightlyRun(Consumer<List<BorrowRecord>> listener) {
+        try {
+            runUpTo(LocalDate.now(), 31, listener);
+        } catch (RuntimeException e) {
+            // a failed night (say the journal refused the record) must not cancel the schedule
+            System.err.println("Overdue run failed: " + e);
+        }
+    }
+
+    private void scheduleNext(ScheduledExecutorService s, Consumer<List<BorrowRecord>> listener) {
+        try {
+            s.schedule(() -> {
+                nightlyRun(listener);
+                scheduleNext(s, listener);
+            }, millisToNextRun(ZonedDateTime.now()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopNightly shut the executor down
+        }
+    }
+
+    // until 00:05 tomorrow in now's zone; 23 or 25 hours across a DST change
+    static long millisToNextRun(ZonedDateTime now) {
+        ZonedDateTime next = now.toLocalDate().plusDays(1).atTime(0, 5).atZone(now.getZone());
+        return Duration.between(now, next).toMillis();
+    }
+
+    public synchronized void stopNightly() {
+        if (nightly != null) nightly.shutdownNow();
+        nightly = null;
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.function.BiConsumer;
+
+// Immutable int -> V map that shares structure between versions (a hash array mapped trie).
+// Each level takes 5 bits of the key, low bits first, so dense ids fill nodes and no key ever
+// collides; a node keeps a 32-bit bitmap of used slots and arrays sized to the bits set.
+// plus/minus copy only the path to the changed slot (at most 7 nodes) and leave the old map intact.
+//
+// Batch writers pass an edit token: nodes created under that token are changed in place by later
+// calls with the same token instead of being copied again. The caller must publish the final map
+// safely (e.g. through a volatile write) and stop using the token once it has.
+public final class PersistentIntMap<V> {
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    private static final class Node {
+        final Object edit;
+        int bitmap;
+        int[] keys;     // key of the value in the same slot; unused for child slots
+        Object[] slots; // a value, or a child Node
+
+        Node(Object edit, int bitmap, int[] keys, Object[] slots) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.keys = keys;
+            this.slots = slots;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Node n = root;
+        int shift = 0;
+        while (n != null) {
+            int bit = 1 << ((key >>> shift) & 31);
+            if ((n.bitmap & bit) == 0) return null;
+            int i = Integer.bitCount(n.bitmap & (bit - 1));
+            Object o = n.slots[i];
+            if (o instanceof Node) {
+                n = (Node) o;
+                shift += 5;
+            } else {
+                return n.keys[i] == key ? (V) o : null;
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public PersistentIntMap<V> plus(int key, V value) {
+        return plus(key, value, null);
+    }
+
+    public PersistentIntMap<V> minus(int key) {
+        return minus(key, null);
+    }
+
+    // edit == null: plain persistent update
+    PersistentIntMap<V> plus(int key, V value, Object edit) {
+        if (value == null) throw new NullPointerException("null value");
+        boolean[] added = new boolean[1];
+        Node r = root == null ? leafNode(edit, key, value, 0) : put(root, key, value, 0, edit, added);
+        if (root == null) added[0] = true;
+        if (r == root && !added[0]) return this; // unchanged, or a value replaced in a node this edit owns
+        return new PersistentIntMap<>(r, added[0] ? size + 1 : size);
+    }
+
+    PersistentIntMap<V> minus(int key, Object edit) {
+        if (root == null) return this;
+        boolean[] removed = new boolean[1];
+        Node r = remove(root, key, 0, edit, removed);
+        if (!removed[0]) return this;
+        return size == 1 ? empty() : new PersistentIntMap<>(r, size - 1);
+    }
+
+    // values in key-bit order (not numeric order)
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Integer, ? super V> action) {
+        if (root != null) walk(root, (k, v) -> action.accept(k, (V) v));
+    }
+
+    public interface IntVisitor<V> {
+        void visit(int key, V value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachInt(IntVisitor<? super V> action) {
+        if (root != null) walk(root, (k, v) -> action.visit(k, (V) v));
+    }
+
+    private static void walk(Node n, IntVisitor<Object> action) {
+        for (int i = 0; i < n.slots.length; i++) {
+            Object o = n.slots[i];
+            if (o instanceof Node) walk((Node) o, action);
+            else action.visit(n.keys[i], o);
+        }
+    }
+
+    // ----- trie updates -----
+
+    private static Node leafNode(Object edit, int key, Object value, int shift) {
+        return new Node(edit, 1 << ((key >>> shift) & 31), new int[]{key}, new Object[]{value});
+    }
+
+    private static Node editable(Node n, Object edit) {
+        if (edit != null && n.edit == edit) return n;
+        return new Node(edit, n.bitmap, n.keys.clone(), n.slots.clone());
+    }
+
+    private static Node put(Node n, int key, Object value, int shift, Object edit, boolean[] added) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int i = Integer.bitCount(n.bitmap & (bit - 1));
+        if ((n.bitmap & bit) == 0) {
+            int len = n.slots.length;
+            int[] keys = new int[len + 1];
+            Object[] slots = new Object[len + 1];
+            System.arraycopy(n.keys, 0, keys, 0, i);
+            System.arraycopy(n.slots, 0, slots, 0, i);
+            keys[i] = key;
+            slots[i] = value;
+            System.arraycopy(n.keys, i, keys, i + 1, len - i);
+            System.arraycopy(n.slots, i, slots, i + 1, len - i);
+            added[0] = true;
+            if (edit != null && n.edit == edit) {
+                n.bitmap |= bit;
+                n.keys = keys;
+                n.slots = slots;
+                return n;
+            }
+            return new Node(edit, n.bitmap | bit, keys, slots);
+        }
+        Object o = n.slots[i];
+        Object replacement;
+        if (o instanceof Node) {
+            Node child = put((Node) o, key, value, shift + 5, edit, added);
+            if (child == o) return n;
+            replacement = child;
+        } else if (n.keys[i] == key) {
+            if (o == value) return n;
+            replacement = value;
+        } else {
+            replacement = pair(edit, shift + 5, n.keys[i], o, key, value);
+            added[0] = true;
+        }
+        Node e = editable(n, edit);
+        e.slots[i] = replacement;
+        return e;
+    }
+
+    // a node holding two values whose keys agree on every bit below 'shift'
+    private static Node pair(Object edit, int shift, int k1, Object v1, int k2, Object v2) {
+        int b1 = (k1 >>> shift) & 31, b2 = (k2 >>> shift) & 31;
+        if (b1 == b2) return new Node(edit, 1 << b1, new int[1], new Object[]{pair(edit, shift + 5, k1, v1, k2, v2)});
+        return b1 < b2
+                ? new Node(edit, (1 << b1) | (1 << b2), new int[]{k1, k2}, new Object[]{v1, v2})
+                : new Node(edit, (1 << b1) | (1 << b2), new int[]{k2, k1}, new Object[]{v2, v1});
+    }
+
+    // null when the node ends up empty
+    private static Node remove(Node n, int key, int shift, Object edit, boolean[] removed) {
+        int bit = 1 << ((key >>> shift) & 31);
+        if ((n.bitmap & bit) == 0) return n;
+        int i = Integer.bitCount(n.bitmap & (bit - 1));
+        Object o = n.slots[i];
+        if (o instanceof Node) {
+            Node child = remove((Node) o, key, shift + 5, edit, removed);
+            if (child == o) return n;
+            Node e = editable(n, edit);
+            if (child == null) return dropSlot(e, i, bit);
+            if (child.slots.length == 1 && !(child.slots[0] instanceof Node)) {
+                // a lone value moves up into this slot
+                e.keys[i] = child.keys[0];
+                e.slots[i] = child.slots[0];
+            } else {
+                e.slots[i] = child;
+            }
+            return e;
+        }
+        if (n.keys[i] != key) return n;
+        removed[0] = true;
+        if (n.slots.length == 1) return null;
+        return dropSlot(editable(n, edit), i, bit);
+    }
+
+    private static Node dropSlot(Node e, int i, int bit) {
+        int len = e.slots.length;
+        if (len == 1) return null;
+        int[] keys = new int[len - 1];
+        Object[] slots = new Object[len - 1];
+        System.arraycopy(e.keys, 0, keys, 0, i);
+        System.arraycopy(e.slots, 0, slots, 0, i);
+        System.arraycopy(e.keys, i + 1, keys, i, len - i - 1);
+        System.arraycopy(e.slots, i + 1, slots, i, len - i - 1);
+        e.bitmap &= ~bit;
+        e.keys = keys;
+        e.slots = slots;
+        return e;
+    }
+}
@@ -1,50 +1,91 @@
 public class PrintedBook extends Book implements Borrowable {
 
-   private final String isbn;
+   private final Object isbn; // compact like the title
     private final int pages;
-    private boolean borrowed = false;
+    private final CopyBitmap copies; // one bit per physical copy, claimed by CAS so two desks can't lend the same one
 //Ye constructor hai jisme PrintedBook ka object create hota hai.
     public PrintedBook(int id, String title, String author, double price, String isbn, int pages) {
+        this(id, title, author, price, isbn, pages, 1);
+    }
+
+    public PrintedBook(int id, String title, String author, double price, String isbn, int pages, int copies) {
         //Parent class <Book> ka constructor call ho raha hai.
         super(id, title, author, price );
-        this.isbn = isbn;
+        this.isbn = CatalogStrings.compact(isbn);
         this.pages = pages;
+        this.copies = new CopyBitmap(copies);
     }
 
     // ------------------ Getters ------------------
     public String getIsbn() {
-        return isbn;
+        return CatalogStrings.text(isbn);
     }
 
     public int getPages() {
         return pages;
     }
 
+    public int getCopies() {
+        return copies.copies();
+    }
+
+    public int getAvailableCopies() {
+        return copies.available();
+    }
+
     @Override
-    public String getInfo() {
+    protected String renderInfo(double price) {
         return String.format(
-                "PrintedBook (ID:%d) \"%s\" by %s | ISBN:%s | %d pages | ₹%.2f | Borrowed:%s",
-                getId(), getTitle(), getAuthor(), getIsbn(),  getPrice(), isBorrowed()
+                "PrintedBook (ID:%d) \"%s\" by %s | ISBN:%s | %d pages | ₹%.2f | Borrowed:",
+                getId(), getTitle(), getAuthor(), getIsbn(), getPages(), price
         );
     }
 
+    @Override
+    protected StringBuilder appendStatus(StringBuilder sb) {
+        return sb.append(isBorrowed());
+    }
+
     // ------------------ Borrowable Implementations ------------------
 
+    @Override
+    public boolean tryBorrow() {
+        return copies.acquire() >= 0;
+    }
+
     @Override
     public void borrow() throws BookNotAvailableException {
-        if (borrowed) {
-            throw new BookNotAvailableException("Already borrowed: " + getTitle());
-        }
-        borrowed = true;
+        borrowCopy();
+    }
+
+    // lends the lowest free copy and returns its number; -1 if every copy is out
+    public int tryBorrowCopy() {
+        return copies.acquire();
+    }
+
+    public int borrowCopy() throws BookNotAvailableException {
+        int copy = copies.acquire();
+        if (copy < 0) throw new BookNotAvailableException("Already borrowed: " + getTitle());
+        return copy;
+    }
+
+    // marks one particular copy as lent; false if it already is
+    public boolean borrowCopy(int copy) {
+        return copies.acquire(copy);
+    }
+
+    public void returnCopy(int copy) {
+        copies.release(copy);
     }
 
     @Override
     public void returnItem() {
-        borrowed = false;
+        copies.releaseAny();
     }
 
+    // true once every copy is out
     @Override
     public boolean isBorrowed() {
-        return borrowed;
+        return copies.available() == 0;
     }
 }
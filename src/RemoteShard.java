@@ -0,0 +1,358 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+
+// A shard served by a LibraryServer (java Main --serve <port>), usually in its own JVM on this
+// machine. launch() starts such a JVM with the shard directory as its working directory, so
+// each shard keeps its own books.csv, snapshot and journal there; close() stops it again.
+public class RemoteShard implements LibraryShard {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final String name;
+    private final String base;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final Process process; // null when the server was started by someone else
+
+    public RemoteShard(String name, String baseUrl) {
+        this(name, baseUrl, null);
+    }
+
+    private RemoteShard(String name, String baseUrl, Process process) {
+        this.name = name;
+        this.base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.process = process;
+    }
+
+    // Starts `java Main --serve` on a free port with this JVM's class path and waits until it answers.
+    public static RemoteShard launch(String name, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process p = new ProcessBuilder(java, "-cp", absoluteClassPath(), "Main", "--serve", String.valueOf(port))
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("shard.log").toFile())
+                .start();
+        RemoteShard shard = new RemoteShard(name, "http://localhost:" + port, p);
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (true) {
+            try {
+                shard.stats();
+                return shard;
+            } catch (UncheckedIOException e) {
+                if (!p.isAlive() || System.nanoTime() > deadline) {
+                    p.destroyForcibly();
+                    throw new IOException("shard " + name + " did not start, see " + dir.resolve("shard.log"), e);
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    p.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while starting shard " + name);
+                }
+            }
+        }
+    }
+
+    // the shard runs in another directory, so relative class path entries must be resolved here
+    private static String absoluteClassPath() {
+        StringJoiner cp = new StringJoiner(File.pathSeparator);
+        for (String e : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            cp.add(e.isEmpty() ? e : new File(e).getAbsolutePath());
+        }
+        return cp.toString();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    // ----- catalog -----
+
+    @Override
+    public void addBook(Book b) {
+        StringBuilder q = new StringBuilder("/books?id=").append(b.getId())
+                .append("&type=").append(b.getClass().getSimpleName())
+                .append("&title=").append(enc(b.getTitle()))
+                .append("&author=").append(enc(b.getAuthor()))
+                .append("&price=").append(b.getPrice());
+        if (b instanceof PrintedBook) {
+            PrintedBook p = (PrintedBook) b;
+            q.append("&isbn=").append(enc(p.getIsbn())).append("&pages=").append(p.getPages())
+                    .append("&copies=").append(p.getCopies());
+        }
+        String tag = SearchIndex.tagOf(b);
+        if (tag != null) q.append("&tag=").append(enc(tag));
+        Response r = call("POST", q.toString());
+        if (r.code == 409) throw new IllegalArgumentException("Book id taken: " + b.getId());
+        r.expectOk();
+    }
+
+    @Override
+    public Book removeBook(int bookId) throws BookNotAvailableException {
+        Response r = call("DELETE", "/books/" + bookId);
+        if (r.code == 404) return null;
+        if (r.code == 409) throw new BookNotAvailableException((String) r.object().get("message"));
+        return book(r.expectOk().object());
+    }
+
+    @Override
+    public Optional<Book> getBook(int bookId) {
+        Response r = call("GET", "/books/" + bookId);
+        if (r.code == 404) return Optional.empty();
+        return Optional.of(book(r.expectOk().object()));
+    }
+
+    @Override
+    public int[] bookIds() {
+        List<?> ids = call("GET", "/books/ids").expectOk().array();
+        int[] out = new int[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ((Number) ids.get(i)).intValue();
+        return out;
+    }
+
+    @Override
+    public int bookCount() {
+        return ((Number) stats().get("books")).intValue();
+    }
+
+    @Override
+    public List<Book> searchByTitle(String query) {
+        List<Book> out = new ArrayList<>();
+        for (Object o : call("GET", "/search?title=" + enc(query)).expectOk().array()) out.add(book(map(o)));
+        return out;
+    }
+
+    @Override
+    public List<SearchIndex.Hit> search(String query, int limit) {
+        List<SearchIndex.Hit> out = new ArrayList<>();
+        for (Object o : call("GET", "/search?scores=true&limit=" + limit + "&q=" + enc(query)).expectOk().array()) {
+            Map<String, Object> h = map(o);
+            out.add(new SearchIndex.Hit(book(map(h.get("book"))), ((Number) h.get("score")).intValue()));
+        }
+        return out;
+    }
+
+    // ----- members and circulation -----
+
+    @Override
+    public boolean addMember(Member m) {
+        Response r = call("POST", "/members?id=" + m.getMemberId() + "&name=" + enc(m.getName())
+                + "&joined=" + m.getJoinedOn());
+        return Boolean.TRUE.equals(r.expectOk().object().get("added"));
+    }
+
+    @Override
+    public BorrowResult borrow(int memberId, int bookId, int borrowDays) {
+        Response r = call("POST", "/borrow?member=" + memberId + "&book=" + bookId + "&days=" + borrowDays);
+        if (r.code == 400 || r.code >= 500) r.expectOk(); // refusals are 404/409 with a status
+        Map<String, Object> res = r.object();
+        BorrowResult.Status s = BorrowResult.Status.valueOf((String) res.get("status"));
+        if (s != BorrowResult.Status.BORROWED) return BorrowResult.refused(s);
+        Map<String, Object> loan = map(res.get("loan"));
+        return BorrowResult.borrowed(new BorrowRecord(memberId, bookId, ((Number) loan.get("copy")).intValue(),
+                LocalDate.parse((String) loan.get("borrowed")), LocalDate.parse((String) loan.get("due"))));
+    }
+
+    @Override
+    public double returnBook(int memberId, int bookId) {
+        Response r = call("POST", "/return?member=" + memberId + "&book=" + bookId);
+        if (r.code == 400 || r.code >= 500) r.expectOk();
+        if (r.code == 404) throw new IllegalArgumentException(r.object().get("status") + ": " + bookId);
+        return ((Number) r.object().get("fine")).doubleValue(); // 409 NOT_ON_LOAN comes with fine 0
+    }
+
+    @Override
+    public int nextBookId() {
+        return ((Number) stats().get("nextBookId")).intValue();
+    }
+
+    @Override
+    public int nextMemberId() {
+        return ((Number) stats().get("nextMemberId")).intValue();
+    }
+
+    private Map<String, Object> stats() {
+        return call("GET", "/stats").expectOk().object();
+    }
+
+    // stops a launched server; its shutdown hook closes the journal
+    @Override
+    public void close() {
+        if (process == null) return;
+        process.destroy();
+        try {
+            if (!process.waitFor(10, java.util.concurrent.TimeUnit.SECONDS)) process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + base;
+    }
+
+    // ----- plumbing -----
+
+    private static String enc(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private Response call(String method, String pathAndQuery) {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + pathAndQuery)).timeout(TIMEOUT)
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        try {
+            HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
+            return new Response(r.statusCode(), r.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException(name + ": " + method + " " + pathAndQuery, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new java.io.InterruptedIOException(name + ": interrupted"));
+        }
+    }
+
+    private final class Response {
+        final int code;
+        final String body;
+
+        Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        Response expectOk() {
+            if (code / 100 != 2) throw new UncheckedIOException(new IOException(name + ": HTTP " + code + " " + body));
+            return this;
+        }
+
+        Map<String, Object> object() {
+            return map(new Json(body).value());
+        }
+
+        List<?> array() {
+            return (List<?>) new Json(body).value();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object o) {
+        return (Map<String, Object>) o;
+    }
+
+    // the JSON that LibraryServer.book writes
+    private static Book book(Map<String, Object> m) {
+        int id = ((Number) m.get("id")).intValue();
+        String title = (String) m.get("title"), author = (String) m.get("author");
+        double price = ((Number) m.get("price")).doubleValue();
+        String type = (String) m.get("type");
+        if (type.equals("Book") || !m.containsKey("isbn")) {
+            throw new UncheckedIOException(new IOException("cannot rebuild a " + type + " from a shard"));
+        }
+        String isbn = (String) m.get("isbn");
+        int pages = ((Number) m.get("pages")).intValue(), copies = ((Number) m.get("copies")).intValue();
+        switch (type) {
+            case "Novel": return new Novel(id, title, author, price, isbn, pages, (String) m.get("genre"), copies);
+            case "TextBook": return new TextBook(id, title, author, price, isbn, pages, (String) m.get("subject"), copies);
+            default: return new PrintedBook(id, title, author, price, isbn, pages, copies);
+        }
+    }
+
+    // Just enough JSON for LibraryServer's answers: objects, arrays, strings, numbers, true/false/null.
+    private static final class Json {
+        private final String s;
+        private int i;
+
+        Json(String s) {
+            this.s = s;
+        }
+
+        Object value() {
+            skipSpace();
+            char c = s.charAt(i);
+            switch (c) {
+                case '{': {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    i++;
+                    skipSpace();
+                    if (s.charAt(i) == '}') { i++; return m; }
+                    while (true) {
+                        skipSpace();
+                        String key = string();
+                        skipSpace();
+                        expect(':');
+                        m.put(key, value());
+                        skipSpace();
+                        if (s.charAt(i++) == '}') return m;
+                    }
+                }
+                case '[': {
+                    List<Object> l = new ArrayList<>();
+                    i++;
+                    skipSpace();
+                    if (s.charAt(i) == ']') { i++; return l; }
+                    while (true) {
+                        l.add(value());
+                        skipSpace();
+                        if (s.charAt(i++) == ']') return l;
+                    }
+                }
+                case '"':
+                    return string();
+                case 't': i += 4; return Boolean.TRUE;
+                case 'f': i += 5; return Boolean.FALSE;
+                case 'n': i += 4; return null;
+                default: {
+                    int start = i;
+                    while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+                    return Double.parseDouble(s.substring(start, i));
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u': sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16)); i += 4; break;
+                    default: sb.append(e);
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (s.charAt(i++) != c) throw new IllegalStateException("bad JSON at " + (i - 1) + ": " + s);
+        }
+
+        private void skipSpace() {
+            while (i < s.length() && s.charAt(i) <= ' ') i++;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inverted index over the catalog text, kept up to date as books are added.
+//  - tokens : word -> (bookId -> which fields contain it), sorted so prefix lookups are a range scan
+// "Inside the title" matches come from the catalog's own trigram index (the current
+// CatalogVersion of 'titles'), so titles are indexed for substrings in one place only.
+// Queries share a read lock; only catalog additions take the write lock (never borrow/return).
+public class SearchIndex {
+    static final int TITLE = 1, AUTHOR = 2, TAG = 4; // TAG = Novel genre / TextBook subject
+
+    private static final class Entry {
+        final Book book;
+        final Map<String, Integer> words = new HashMap<>(); // forward index: word -> fields, to confirm candidates
+        Entry(Book book) { this.book = book; }
+    }
+
+    private final SortedCatalog titles;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final NavigableMap<String, Map<Integer, Integer>> tokens = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Collection<Book> pending; // set by rebuildLater; indexed on first use
+
+    // titles: the same books, for substring matches
+    public SearchIndex(SortedCatalog titles) {
+        this.titles = titles;
+    }
+
+    // Drops the index and re-indexes 'source' the first time the index is used, so a bulk
+    // load at startup does not pay for indexing before anyone searches.
+    public void rebuildLater(Collection<Book> source) {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            tokens.clear();
+            pending = source;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt() {
+        if (pending == null) return;
+        lock.writeLock().lock();
+        try {
+            Collection<Book> source = pending;
+            if (source == null) return;
+            pending = null;
+            for (Book b : source) index(b);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(Book b) {
+        addAll(List.of(b));
+    }
+
+    // one write lock for the whole batch
+    public void addAll(Collection<Book> batch) {
+        ensureBuilt();
+        lock.writeLock().lock();
+        try {
+            for (Book b : batch) index(b);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void index(Book b) {
+        if (entries.containsKey(b.getId())) remove(b.getId());
+        Entry e = new Entry(b);
+        entries.put(b.getId(), e);
+        indexTokens(e, b.getTitle().toLowerCase(), TITLE);
+        indexTokens(e, b.getAuthor().toLowerCase(), AUTHOR);
+        String tag = tagOf(b);
+        if (tag != null) indexTokens(e, tag.toLowerCase(), TAG);
+    }
+
+    public void remove(int bookId) {
+        ensureBuilt();
+        lock.writeLock().lock();
+        try {
+            Entry e = entries.remove(bookId);
+            if (e == null) return;
+            for (String t : e.words.keySet()) {
+                Map<Integer, Integer> p = tokens.get(t);
+                if (p != null && p.remove(bookId) != null && p.isEmpty()) tokens.remove(t);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            pending = null;
+            entries.clear();
+            tokens.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A ranked match. Scores depend only on the book and the query, so hits from several
+    // indexes (shards) can be merged by score into the same order one index would give.
+    public static final class Hit {
+        private final Book book;
+        private final int score;
+
+        Hit(Book book, int score) {
+            this.book = book;
+            this.score = score;
+        }
+
+        public Book getBook() { return book; }
+
+        public int getScore() { return score; }
+
+        // best score first, then lowest id
+        public static final Comparator<Hit> RANK = Comparator.comparingInt((Hit h) -> -h.score)
+                .thenComparingInt(h -> h.book.getId());
+    }
+
+    // Ranked search over title, author and genre/subject. Every query word must match a
+    // word in the book (exact or prefix), or appear inside the title. Returns one page of
+    // the best matches; only offset+limit results are ever kept, the catalog is not sorted.
+    public List<Book> search(String query, int offset, int limit) {
+        List<Book> out = new ArrayList<>();
+        for (Hit h : searchHits(query, offset, limit)) out.add(h.book);
+        return out;
+    }
+
+    public List<Hit> searchHits(String query, int offset, int limit) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            if (offset < 0 || limit <= 0) return new ArrayList<>();
+            List<String> words = tokenize(query.toLowerCase());
+            if (words.isEmpty()) return new ArrayList<>();
+
+            // rarest word first, so later words only have to confirm a small candidate set
+            words.sort(Comparator.comparingInt(this::estimate));
+            CatalogVersion catalog = titles.version();
+            Map<Integer, Integer> scores = null;
+            for (String w : words) {
+                Map<Integer, Integer> hits = scoreWord(w, scores, catalog);
+                if (scores != null) {
+                    for (Map.Entry<Integer, Integer> h : hits.entrySet()) h.setValue(h.getValue() + scores.get(h.getKey()));
+                }
+                scores = hits;
+                if (scores.isEmpty()) return new ArrayList<>();
+            }
+
+            // best score first, then lowest id for a stable order
+            Comparator<Map.Entry<Integer, Integer>> rank = Comparator
+                    .comparing((Map.Entry<Integer, Integer> e) -> e.getValue())
+                    .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+            int k = offset + limit;
+            PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(k + 1, rank);
+            for (Map.Entry<Integer, Integer> e : scores.entrySet()) {
+                if (top.size() < k) {
+                    top.add(e);
+                } else if (rank.compare(e, top.peek()) > 0) {
+                    top.poll();
+                    top.add(e);
+                }
+            }
+            List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(top);
+            ranked.sort(rank.reversed());
+            List<Hit> out = new ArrayList<>();
+            for (int i = offset; i < ranked.size(); i++) {
+                Map.Entry<Integer, Integer> e = ranked.get(i);
+                out.add(new Hit(entries.get(e.getKey()).book, e.getValue()));
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // exact word > word prefix > inside title; title counts more than author, author more than tag
+    // only ids in 'within' are kept when it is given
+    private Map<Integer, Integer> scoreWord(String w, Map<Integer, Integer> within, CatalogVersion catalog) {
+        String folded = SortedCatalog.fold(w);
+        Map<Integer, Integer> hits = new HashMap<>();
+        if (within != null && within.size() < estimate(w)) {
+            // confirming the few candidates is cheaper than walking this word's postings
+            for (int id : within.keySet()) {
+                Entry e = entries.get(id);
+                int best = 0;
+                for (Map.Entry<String, Integer> t : e.words.entrySet()) {
+                    if (t.getKey().startsWith(w)) {
+                        int matchWeight = t.getKey().length() == w.length() ? 3 : 2;
+                        best = Math.max(best, matchWeight * fieldWeight(t.getValue()));
+                    }
+                }
+                if (best == 0 && w.length() >= 3 && catalog.titleHas(id, folded)) best = 1;
+                if (best > 0) hits.put(id, best);
+            }
+            return hits;
+        }
+        for (Map.Entry<String, Map<Integer, Integer>> t : prefixRange(w).entrySet()) {
+            int matchWeight = t.getKey().length() == w.length() ? 3 : 2;
+            for (Map.Entry<Integer, Integer> p : t.getValue().entrySet()) {
+                if (within != null && !within.containsKey(p.getKey())) continue;
+                hits.merge(p.getKey(), matchWeight * fieldWeight(p.getValue()), Math::max);
+            }
+        }
+        if (w.length() >= 3) {
+            if (within != null) {
+                for (int id : within.keySet()) {
+                    if (!hits.containsKey(id) && catalog.titleHas(id, folded)) hits.put(id, 1);
+                }
+            } else {
+                for (Book b : catalog.titleContains(w)) {
+                    if (entries.containsKey(b.getId())) hits.putIfAbsent(b.getId(), 1);
+                }
+            }
+        }
+        return hits;
+    }
+
+    private NavigableMap<String, Map<Integer, Integer>> prefixRange(String w) {
+        return tokens.subMap(w, true, w + Character.MAX_VALUE, false);
+    }
+
+    // rough number of books a word can match; walks the token range, not the postings
+    private int estimate(String w) {
+        int n = 0;
+        for (Map<Integer, Integer> p : prefixRange(w).values()) n += p.size();
+        return n;
+    }
+
+    private static int fieldWeight(int fields) {
+        if ((fields & TITLE) != 0) return 4;
+        if ((fields & AUTHOR) != 0) return 2;
+        return 1;
+    }
+
+    private void indexTokens(Entry e, String text, int field) {
+        for (String t : tokenize(text)) {
+            e.words.merge(t, field, (a, b) -> a | b);
+            tokens.computeIfAbsent(t, k -> new HashMap<>()).merge(e.book.getId(), field, (a, b) -> a | b);
+        }
+    }
+
+    static String tagOf(Book b) {
+        if (b instanceof Novel) return ((Novel) b).getGenre();
+        if (b instanceof TextBook) return ((TextBook) b).getSubject();
+        return null;
+    }
+
+    static List<String> tokenize(String s) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                out.add(s.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+// Consistent-hash ring that maps book ids to shard numbers 0..n-1. Each shard owns VNODES points
+// on the ring and a key belongs to the first point at or after its hash, so growing from n to
+// n+1 shards hands the new shard about 1/(n+1) of the keys, taken evenly from every old shard,
+// and moves nothing between old shards. A shard's points depend only on its number, so the
+// same ring can be rebuilt anywhere from the shard count.
+// With rangeSize > 1 the key is the id range (id / rangeSize): consecutive ids stay together,
+// which suits scans by id, while the ranges still spread and move like single ids.
+final class ShardRing {
+    static final int VNODES = 128;
+
+    private final int shards, rangeSize;
+    private final int[] points; // sorted
+    private final int[] owners; // owners[i] owns points[i]
+
+    ShardRing(int shards, int rangeSize) {
+        if (shards < 1 || rangeSize < 1) throw new IllegalArgumentException("shards and rangeSize must be >= 1");
+        this.shards = shards;
+        this.rangeSize = rangeSize;
+        long[] packed = new long[shards * VNODES];
+        for (int s = 0; s < shards; s++) {
+            for (int v = 0; v < VNODES; v++) {
+                int point = (int) mix(((long) s << 32) | v);
+                packed[s * VNODES + v] = ((long) point << 32) | s;
+            }
+        }
+        Arrays.sort(packed); // by point (signed), then shard on the odd collision
+        points = new int[packed.length];
+        owners = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            points[i] = (int) (packed[i] >> 32);
+            owners[i] = (int) packed[i];
+        }
+    }
+
+    int shards() {
+        return shards;
+    }
+
+    int rangeSize() {
+        return rangeSize;
+    }
+
+    ShardRing withShards(int n) {
+        return new ShardRing(n, rangeSize);
+    }
+
+    int owner(int bookId) {
+        int h = (int) mix(rangeSize == 1 ? bookId : bookId / rangeSize);
+        int lo = 0, hi = points.length; // first point >= h
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points[mid] < h) lo = mid + 1;
+            else hi = mid;
+        }
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    // murmur3's 64-bit finalizer
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Router over several LibraryShards, for running many branches without one heap holding every
+// book. Each book lives on exactly one shard, chosen by a ShardRing over its id (hash, or id
+// ranges with rangeSize > 1); borrow and return go to that shard only. Title and ranked search
+// ask every shard in parallel and merge the answers into one top-k.
+//
+// Ids are handed out here, so numbering is global. Members are replicated to every shard,
+// since any branch may lend to any member; only members added through the router are known
+// to it, and those are what a new shard is given.
+//
+// addShard moves the books the new ring assigns to the new shard. A book with a copy out (or
+// members waiting for it) stays pinned to its old shard, where its loans are, until a later
+// rebalance() finds it free. While a book is being moved, lookups, borrows and returns for it
+// wait on its MOVE_STRIPES lock, so none of them can reach the old shard after the book has left
+// it but before the router points at the new one.
+public class ShardedLibrary implements Closeable {
+    private final List<LibraryShard> shards = new CopyOnWriteArrayList<>();
+    private volatile ShardRing ring;
+    private final Map<Integer, Integer> pinned = new ConcurrentHashMap<>(); // book id -> shard number
+    private final Map<Integer, Member> members = new ConcurrentHashMap<>();
+    private final AtomicInteger nextBookId = new AtomicInteger(1);
+    private final AtomicInteger nextMemberId = new AtomicInteger(1001);
+    // read: anything that places a new book or member; write: changing the set of shards
+    private final ReentrantReadWriteLock topology = new ReentrantReadWriteLock();
+    private final ExecutorService fanOut;
+    // read: any call routed to a book's shard; write: moving that book
+    private static final int MOVE_STRIPES = 256;
+    private final ReentrantReadWriteLock[] moveLocks = new ReentrantReadWriteLock[MOVE_STRIPES];
+
+    {
+        for (int i = 0; i < MOVE_STRIPES; i++) moveLocks[i] = new ReentrantReadWriteLock();
+    }
+
+    // rangeSize 1 hashes single ids; larger values keep runs of consecutive ids on one shard
+    public ShardedLibrary(List<? extends LibraryShard> initial, int rangeSize) {
+        if (initial.isEmpty()) throw new IllegalArgumentException("at least one shard");
+        shards.addAll(initial);
+        ring = new ShardRing(initial.size(), rangeSize);
+        for (LibraryShard s : initial) {
+            nextBookId.accumulateAndGet(s.nextBookId(), Math::max);
+            nextMemberId.accumulateAndGet(s.nextMemberId(), Math::max);
+        }
+        AtomicInteger n = new AtomicInteger();
+        fanOut = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-fanout-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // n empty Libraries in this process
+    public static ShardedLibrary inProcess(int n, int rangeSize) {
+        List<LibraryShard> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) list.add(new LocalShard("shard-" + i, new Library()));
+        return new ShardedLibrary(list, rangeSize);
+    }
+
+    // n JVMs running `java Main --serve`, each in its own directory under baseDir
+    public static ShardedLibrary launch(int n, int rangeSize, Path baseDir) throws IOException {
+        List<LibraryShard> list = new ArrayList<>();
+        try {
+            for (int i = 0; i < n; i++) list.add(RemoteShard.launch("shard-" + i, baseDir.resolve("shard-" + i)));
+        } catch (IOException | RuntimeException e) {
+            for (LibraryShard s : list) s.close();
+            throw e;
+        }
+        return new ShardedLibrary(list, rangeSize);
+    }
+
+    public List<LibraryShard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public LibraryShard shardFor(int bookId) {
+        Integer pin = pinned.get(bookId);
+        return shards.get(pin != null ? pin : ring.owner(bookId));
+    }
+
+    // ----- catalog -----
+
+    public int addNewNovel(String title, String author, double price, String isbn, int pages, String genre,
+                           int copies) {
+        return place(id -> new Novel(id, title, author, price, isbn, pages, genre, copies));
+    }
+
+    public int addNewTextBook(String title, String author, double price, String isbn, int pages, String subject,
+                              int copies) {
+        return place(id -> new TextBook(id, title, author, price, isbn, pages, subject, copies));
+    }
+
+    private int place(java.util.function.IntFunction<Book> make) {
+        topology.readLock().lock();
+        try {
+            int id = nextBookId.getAndIncrement();
+            shardFor(id).addBook(make.apply(id));
+            return id;
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public Optional<Book> getBookById(int id) {
+        return routed(id, s -> s.getBook(id));
+    }
+
+    public int getBookCount() {
+        int n = 0;
+        for (LibraryShard s : shards) n += s.bookCount();
+        return n;
+    }
+
+    // Substring match on titles across all shards: the first k in title order (ties by id).
+    public List<Book> searchByTitle(String query, int k) {
+        List<Book> all = new ArrayList<>();
+        for (List<Book> part : askAll(s -> s.searchByTitle(query))) all.addAll(part);
+        all.sort(Comparator.comparing((Book b) -> SortedCatalog.fold(b.getTitle())).thenComparingInt(Book::getId));
+        return all.size() > k ? new ArrayList<>(all.subList(0, k)) : all;
+    }
+
+    // Ranked search across all shards: each returns its own best k, the merge keeps the best k overall.
+    public List<Book> search(String query, int k) {
+        List<Book> out = new ArrayList<>();
+        for (SearchIndex.Hit h : searchHits(query, k)) out.add(h.getBook());
+        return out;
+    }
+
+    public List<SearchIndex.Hit> searchHits(String query, int k) {
+        PriorityQueue<SearchIndex.Hit> best = new PriorityQueue<>(SearchIndex.Hit.RANK.reversed());
+        for (List<SearchIndex.Hit> part : askAll(s -> s.search(query, k))) {
+            for (SearchIndex.Hit h : part) {
+                best.add(h);
+                if (best.size() > k) best.poll();
+            }
+        }
+        List<SearchIndex.Hit> out = new ArrayList<>(best);
+        out.sort(SearchIndex.Hit.RANK);
+        return out;
+    }
+
+    // the same call on every shard at once; with a single shard it runs on the caller's thread
+    private <T> List<T> askAll(java.util.function.Function<LibraryShard, T> call) {
+        List<LibraryShard> targets = shards;
+        if (targets.size() == 1) return Collections.singletonList(call.apply(targets.get(0)));
+        List<Future<T>> futures = new ArrayList<>(targets.size());
+        for (LibraryShard s : targets) futures.add(fanOut.submit(() -> call.apply(s)));
+        List<T> out = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> f : futures) out.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for shards");
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof RuntimeException) throw (RuntimeException) c;
+            throw new IllegalStateException(c);
+        }
+        return out;
+    }
+
+    // ----- members -----
+
+    public int addMember(String name) {
+        topology.readLock().lock();
+        try {
+            Member m = new Member(nextMemberId.getAndIncrement(), name);
+            members.put(m.getMemberId(), m);
+            for (LibraryShard s : shards) s.addMember(m);
+            return m.getMemberId();
+        } finally {
+            topology.readLock().unlock();
+        }
+    }
+
+    public Optional<Member> getMemberById(int id) {
+        return Optional.ofNullable(members.get(id));
+    }
+
+    // ----- circulation, routed to the book's shard -----
+
+    public BorrowResult tryBorrowBook(int memberId, int bookId, int borrowDays) {
+        return routed(bookId, s -> s.borrow(memberId, bookId, borrowDays));
+    }
+
+    // Throwing form, like Library.borrowBook
+    public void borrowBook(int memberId, int bookId, int borrowDays) throws BookNotAvailableException {
+        BorrowResult res = tryBorrowBook(memberId, bookId, borrowDays);
+        switch (res.getStatus()) {
+            case BORROWED:
+                return;
+            case NO_SUCH_MEMBER:
+                throw new IllegalArgumentException("No member: " + memberId);
+            case NO_SUCH_BOOK:
+                throw new IllegalArgumentException("No book: " + bookId);
+            case NOT_BORROWABLE:
+                throw new BookNotAvailableException("This book cannot be borrowed (digital/reference): #" + bookId);
+            case ALREADY_HAS_COPY:
+                throw new BookNotAvailableException("Member " + memberId + " already has a copy of: #" + bookId);
+            default:
+                throw new BookNotAvailableException("Already borrowed: #" + bookId);
+        }
+    }
+
+    public double returnBook(int memberId, int bookId) {
+        return routed(bookId, s -> s.returnBook(memberId, bookId));
+    }
+
+    // the call on the book's shard, never in the middle of moving that book
+    private <T> T routed(int bookId, java.util.function.Function<LibraryShard, T> call) {
+        ReentrantReadWriteLock.ReadLock l = moveLock(bookId).readLock();
+        l.lock();
+        try {
+            return call.apply(shardFor(bookId));
+        } finally {
+            l.unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock moveLock(int bookId) {
+        return moveLocks[(int) ShardRing.mix(bookId) & (MOVE_STRIPES - 1)];
+    }
+
+    // ----- adding shards -----
+
+    // What a rebalance did: books moved to their ring owner, and books left pinned elsewhere.
+    public static final class Rebalance {
+        private final int moved, pinned;
+
+        Rebalance(int moved, int pinned) {
+            this.moved = moved;
+            this.pinned = pinned;
+        }
+
+        public int getMoved() { return moved; }
+
+        public int getPinned() { return pinned; }
+
+        @Override
+        public String toString() {
+            return moved + " moved, " + pinned + " pinned";
+        }
+    }
+
+    // Brings a new, empty shard in: it is given every member, the ring grows by one, and the books
+    // the new ring assigns to it are moved over. Each moving book is pinned to its old shard first,
+    // so borrows and returns keep finding it while it is copied.
+    public synchronized Rebalance addShard(LibraryShard shard) {
+        List<int[]> moves = new ArrayList<>(); // {book id, from shard}
+        topology.writeLock().lock();
+        try {
+            for (Member m : members.values()) shard.addMember(m);
+            ShardRing grown = ring.withShards(shards.size() + 1);
+            for (int from = 0; from < shards.size(); from++) {
+                for (int id : shards.get(from).bookIds()) {
+                    if (pinned.containsKey(id)) continue; // handled below with the other pinned books
+                    if (grown.owner(id) != from) {
+                        pinned.put(id, from);
+                        moves.add(new int[]{id, from});
+                    }
+                }
+            }
+            shards.add(shard);
+            ring = grown;
+        } finally {
+            topology.writeLock().unlock();
+        }
+        Rebalance first = move(moves);
+        Rebalance retry = rebalance();
+        return new Rebalance(first.moved + retry.moved, retry.pinned);
+    }
+
+    // Tries again to move every pinned book to its ring owner.
+    public synchronized Rebalance rebalance() {
+        List<int[]> moves = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : pinned.entrySet()) moves.add(new int[]{e.getKey(), e.getValue()});
+        return move(moves);
+    }
+
+    private Rebalance move(List<int[]> moves) {
+        int moved = 0;
+        for (int[] mv : moves) {
+            ReentrantReadWriteLock.WriteLock l = moveLock(mv[0]).writeLock();
+            l.lock();
+            try {
+                if (moveOne(mv[0], shards.get(mv[1]))) moved++;
+            } finally {
+                l.unlock();
+            }
+        }
+        return new Rebalance(moved, pinned.size());
+    }
+
+    // caller holds the book's move lock; true when the book now lives on its ring owner
+    private boolean moveOne(int id, LibraryShard from) {
+        LibraryShard to = shards.get(ring.owner(id));
+        if (from == to) {
+            pinned.remove(id);
+            return false;
+        }
+        Optional<Book> b = from.getBook(id);
+        if (!b.isPresent()) {
+            pinned.remove(id);
+            return false;
+        }
+        to.addBook(copyOf(b.get()));
+        try {
+            from.removeBook(id);
+        } catch (BookNotAvailableException e) {
+            // still on loan or waited for: stays where its loans and holds are
+            try {
+                to.removeBook(id);
+            } catch (BookNotAvailableException impossible) {
+                throw new IllegalStateException("copy of book " + id + " in use on " + to.name(), impossible);
+            }
+            return false;
+        }
+        pinned.remove(id);
+        return true;
+    }
+
+    // a new object, so two in-process shards never share one book's copy state
+    static Book copyOf(Book b) {
+        if (b instanceof Novel) {
+            Novel n = (Novel) b;
+            return new Novel(n.getId(), n.getTitle(), n.getAuthor(), n.getPrice(), n.getIsbn(), n.getPages(),
+                    n.getGenre(), n.getCopies());
+        }
+        if (b instanceof TextBook) {
+            TextBook t = (TextBook) b;
+            return new TextBook(t.getId(), t.getTitle(), t.getAuthor(), t.getPrice(), t.getIsbn(), t.getPages(),
+                    t.getSubject(), t.getCopies());
+        }
+        if (b instanceof PrintedBook) {
+            PrintedBook p = (PrintedBook) b;
+            return new PrintedBook(p.getId(), p.getTitle(), p.getAuthor(), p.getPrice(), p.getIsbn(), p.getPages(),
+                    p.getCopies());
+        }
+        throw new IllegalArgumentException("cannot move a " + b.getClass().getSimpleName());
+    }
+
+    // closes every shard; a launched JVM is stopped
+    @Override
+    public void close() {
+        fanOut.shutdownNow();
+        UncheckedIOException first = null;
+        for (LibraryShard s : shards) {
+            try {
+                s.close();
+            } catch (UncheckedIOException e) {
+                if (first == null) first = e;
+            }
+        }
+        if (first != null) throw first;
+    }
+}
@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+// One-off migration from the CSV files to a binary snapshot.
+// usage: java SnapshotConverter [books.csv] [members.csv] [library.snap]
+// Genre/subject are not in the CSV, so converted books keep the CSV loader's defaults.
+public class SnapshotConverter {
+    public static void main(String[] args) throws IOException {
+        String booksCsv = args.length > 0 ? args[0] : "books.csv";
+        String membersCsv = args.length > 1 ? args[1] : "members.csv";
+        String snapshot = args.length > 2 ? args[2] : "library.snap";
+
+        Library lib = new Library();
+        lib.loadBooksFromFile(booksCsv);
+        lib.loadMembersFromFile(membersCsv);
+        lib.saveSnapshot(snapshot);
+        System.out.println("Wrote " + snapshot + " (" + lib.getBookCount() + " books)");
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.*;
+
+// The catalog's read side: books by id, in title order, and by title substring, published as a
+// sequence of immutable CatalogVersions. A reader takes the current version with one volatile
+// read and never locks, so listings and lookups scale with the cores and never wait for an
+// import; everything it reads from that version is one consistent catalog.
+// Writers serialize on this object, derive the next version from the current one (sharing all
+// the structure they did not touch) and publish it with one volatile write. A batch costs one
+// version, not one per book.
+// Title order is a collation key computed once per book (the same case folding as
+// String.CASE_INSENSITIVE_ORDER), then the id. Pages continue after the last book id of the
+// previous page (a cursor), so page N costs O(log n + page).
+public class SortedCatalog {
+    private volatile CatalogVersion current = CatalogVersion.EMPTY;
+
+    // same per-char folding as String.CASE_INSENSITIVE_ORDER
+    static String fold(String s) {
+        char[] c = s.toCharArray();
+        for (int i = 0; i < c.length; i++) c[i] = Character.toLowerCase(Character.toUpperCase(c[i]));
+        return new String(c);
+    }
+
+    // the catalog as of now; keep it to run several reads against the same state
+    public CatalogVersion version() {
+        return current;
+    }
+
+    public synchronized void add(Book b) {
+        current = current.with(List.of(b));
+    }
+
+    public synchronized void addAll(Collection<Book> batch) {
+        current = current.with(batch);
+    }
+
+    public synchronized void remove(int bookId) {
+        current = current.without(bookId);
+    }
+
+    public synchronized void clear() {
+        current = current.cleared();
+    }
+
+    // the whole catalog swapped for these books in one version: readers see the old catalog or
+    // the new one, never the empty one in between
+    public synchronized void replaceAll(Collection<Book> books) {
+        current = current.cleared().with(books);
+    }
+
+    public int size() { return current.size(); }
+
+    public boolean isEmpty() { return current.isEmpty(); }
+
+    public Book get(int bookId) { return current.get(bookId); }
+
+    public List<Book> all() {
+        return current.all();
+    }
+
+    // walks one version in title order; books added meanwhile are not seen
+    public void forEach(java.util.function.Consumer<Book> action) {
+        current.forEach(action);
+    }
+
+    // up to 'limit' books after the book with id afterBookId (0 = from the start)
+    public List<Book> pageAfter(int afterBookId, int limit) {
+        return current.pageAfter(afterBookId, limit);
+    }
+
+    // titles starting at 'from' up to and including titles that start with 'to', e.g. range("M", "P")
+    public List<Book> range(String from, String to, int limit) {
+        return current.range(from, to, limit);
+    }
+
+    // case-insensitive "title contains query"
+    public List<Book> titleContains(String query) {
+        return current.titleContains(query);
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Heaviest keys of an int stream in k counters (Metwally, Agrawal, El Abbadi: Space-Saving).
+// A key that is not tracked takes over the counter with the smallest count and inherits that
+// count as its error. Any key with more than total/k events is guaranteed to be tracked, and a
+// tracked count exceeds the true count by at most its error. The counters sit in a min-heap,
+// so an event costs O(log k) for the fixed k, whatever the length of the stream.
+public class SpaceSaving {
+    // one tracked key; the true count lies in [count - error, count]
+    public static final class Entry {
+        private final int key;
+        private final long count, error;
+
+        Entry(int key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public int getKey() { return key; }
+
+        public long getCount() { return count; }
+
+        public long getError() { return error; }
+
+        public long getGuaranteedCount() { return count - error; }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + (error > 0 ? "(-" + error + ")" : "");
+        }
+    }
+
+    private final int capacity;
+    private final int[] keys;
+    private final long[] counts, errors;
+    private final int[] heap; // slot numbers, smallest count first
+    private final int[] pos;  // pos[slot] = index in heap
+    private final Map<Integer, Integer> slotOf = new HashMap<>();
+    private int used;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.capacity = capacity;
+        keys = new int[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        pos = new int[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized void add(int key, long n) {
+        put(key, n);
+    }
+
+    // the first n keys, one event each, under a single lock acquisition
+    public synchronized void addAll(int[] keys, int n) {
+        for (int i = 0; i < n; i++) put(keys[i], 1);
+    }
+
+    private void put(int key, long n) {
+        total += n;
+        Integer slot = slotOf.get(key);
+        int s;
+        if (slot != null) {
+            s = slot;
+        } else if (used < capacity) {
+            s = used;
+            heap[used] = s;
+            pos[s] = used++;
+            keys[s] = key;
+            slotOf.put(key, s);
+        } else {
+            s = heap[0]; // evict the smallest; the newcomer may have had up to its count before
+            slotOf.remove(keys[s]);
+            keys[s] = key;
+            errors[s] = counts[s];
+            slotOf.put(key, s);
+        }
+        counts[s] += n;
+        siftDown(pos[s]);
+    }
+
+    // the n largest counts, largest first
+    public synchronized List<Entry> top(int n) {
+        List<Entry> out = new ArrayList<>(used);
+        for (int s = 0; s < used; s++) out.add(new Entry(keys[s], counts[s], errors[s]));
+        out.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : Integer.compare(a.key, b.key));
+        return out.size() > n ? new ArrayList<>(out.subList(0, n)) : out;
+    }
+
+    // 0 if the key is not tracked, which only says its count is at most the smallest tracked count
+    public synchronized long count(int key) {
+        Integer s = slotOf.get(key);
+        return s == null ? 0 : counts[s];
+    }
+
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized void clear() {
+        slotOf.clear();
+        used = 0;
+        total = 0;
+        java.util.Arrays.fill(counts, 0);
+        java.util.Arrays.fill(errors, 0);
+    }
+
+    // counts only grow, so a changed entry can only move towards the leaves
+    private void siftDown(int i) {
+        int s = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= used) break;
+            if (child + 1 < used && counts[heap[child + 1]] < counts[heap[child]]) child++;
+            if (counts[heap[child]] >= counts[s]) break;
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = s;
+        pos[s] = i;
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Dictionary encoding for strings that repeat across many books (author, genre, subject).
+// Each distinct value is stored once and gets a dense int code (0, 1, 2 ...), so a book keeps a
+// 4-byte code instead of its own String, equality is an int compare, and group-by can count into
+// an int[] indexed by code. Codes are never reused or removed; the vocabulary only grows.
+public final class StringDictionary {
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private int size; // guarded by this
+
+    // code for s, adding it on first sight; null encodes as -1
+    public int encode(String s) {
+        if (s == null) return -1;
+        Integer c = codes.get(s);
+        if (c != null) return c;
+        synchronized (this) {
+            c = codes.get(s);
+            if (c != null) return c;
+            String[] v = values;
+            if (size == v.length) values = v = Arrays.copyOf(v, size * 2);
+            v[size] = s;          // written before the code is published through the map
+            codes.put(s, size);
+            return size++;
+        }
+    }
+
+    // code for s without adding it; -1 if s has never been encoded
+    public int code(String s) {
+        if (s == null) return -1;
+        Integer c = codes.get(s);
+        return c == null ? -1 : c;
+    }
+
+    // the single shared instance of the value; null for -1
+    public String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+}
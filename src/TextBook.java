@@ -1,24 +1,27 @@
 
 public class TextBook extends PrintedBook {
-    private  final String subject;
+    private  final int subjectCode; // CatalogStrings.SUBJECTS
 
-    public TextBook(int id, String isbn, String pages, double title, String author, double price, String subject) {
-        super( id,isbn,pages,title, author, (int) price);
-        this.subject = subject;
+    public TextBook(int id, String title, String author, double price, String isbn, int pages, String subject) {
+        this(id, title, author, price, isbn, pages, subject, 1);
     }
 
+    public TextBook(int id, String title, String author, double price, String isbn, int pages, String subject, int copies) {
+        super(id, title, author, price, isbn, pages, copies);
+        this.subjectCode = CatalogStrings.SUBJECTS.encode(subject);
+    }
 
+    public String getSubject() {
+        return CatalogStrings.SUBJECTS.decode(subjectCode);
+    }
 
-    @Override
-    public String getInfo() {
-        return String.format("TextBook(ID:%d) \"%s\" by %s | Subject:%s | ISBN:%s | ₹%.2f | borrowed:%s",
-                getId(), getTitle(), getAuthor(), subject, getIsbn(), getPrice(), isBorrowed());
+    public int getSubjectCode() {
+        return subjectCode;
     }
 
     @Override
-    public boolean isBorrowed() {
-        return false;
+    protected String renderInfo(double price) {
+        return String.format("TextBook(ID:%d) \"%s\" by %s | Subject:%s | ISBN:%s | ₹%.2f | borrowed:",
+                getId(), getTitle(), getAuthor(), getSubject(), getIsbn(), price);
     }
 }
-
-
@@ -0,0 +1,128 @@
+import java.util.ArrayDeque;
+import java.util.function.Predicate;
+
+// Persistent treap of catalog entries in title order (folded title, then id): the title index of a
+// CatalogVersion. Priorities come from a hash of the book id, so the shape depends only on the
+// set of books and the expected depth is O(log n). Updates copy the search path and leave the old
+// tree intact; nodes created under the caller's edit token are reused in place, as in
+// PersistentIntMap, so a batch of n inserts does not copy the same top nodes n times.
+final class TitleTreap {
+    static final class Node {
+        final CatalogVersion.Entry entry;
+        final int priority;
+        final Object edit;
+        Node left, right;
+
+        Node(CatalogVersion.Entry entry, Object edit, Node left, Node right) {
+            this.entry = entry;
+            this.priority = (int) ShardRing.mix(entry.book.getId());
+            this.edit = edit;
+            this.left = left;
+            this.right = right;
+        }
+
+        private Node(Node n, Object edit) {
+            this.entry = n.entry;
+            this.priority = n.priority;
+            this.edit = edit;
+            this.left = n.left;
+            this.right = n.right;
+        }
+    }
+
+    private TitleTreap() {
+    }
+
+    static int compare(String folded, int id, CatalogVersion.Entry e) {
+        int c = folded.compareTo(e.folded);
+        return c != 0 ? c : Integer.compare(id, e.book.getId());
+    }
+
+    private static Node editable(Node n, Object edit) {
+        return edit != null && n.edit == edit ? n : new Node(n, edit);
+    }
+
+    // adds e, or replaces the entry with the same title and id
+    static Node insert(Node t, CatalogVersion.Entry e, Object edit) {
+        if (t == null) return new Node(e, edit, null, null);
+        int c = compare(e.folded, e.book.getId(), t.entry);
+        if (c == 0) return new Node(e, edit, t.left, t.right);
+        Node n = editable(t, edit);
+        if (c < 0) {
+            n.left = insert(t.left, e, edit);
+            if (n.left.priority > n.priority) return rotateRight(n);
+        } else {
+            n.right = insert(t.right, e, edit);
+            if (n.right.priority > n.priority) return rotateLeft(n);
+        }
+        return n;
+    }
+
+    // n and the child moving up were both just made by insert (new, or owned by this edit),
+    // so neither is shared with an older tree and both can change in place
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        return r;
+    }
+
+    static Node remove(Node t, String folded, int id, Object edit) {
+        if (t == null) return null;
+        int c = compare(folded, id, t.entry);
+        if (c == 0) return merge(t.left, t.right, edit);
+        if (c < 0) {
+            Node l = remove(t.left, folded, id, edit);
+            if (l == t.left) return t;
+            Node n = editable(t, edit);
+            n.left = l;
+            return n;
+        }
+        Node r = remove(t.right, folded, id, edit);
+        if (r == t.right) return t;
+        Node n = editable(t, edit);
+        n.right = r;
+        return n;
+    }
+
+    // every key in a is below every key in b
+    private static Node merge(Node a, Node b, Object edit) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            Node n = editable(a, edit);
+            n.right = merge(a.right, b, edit);
+            return n;
+        }
+        Node n = editable(b, edit);
+        n.left = merge(a, b.left, edit);
+        return n;
+    }
+
+    // In title order from (folded, id), inclusive or not, until the visitor returns false.
+    // folded == null starts at the first entry.
+    static void walkFrom(Node t, String folded, int id, boolean inclusive, Predicate<CatalogVersion.Entry> visitor) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        while (t != null) {
+            int c = folded == null ? -1 : compare(folded, id, t.entry);
+            if (c < 0 || (c == 0 && inclusive)) {
+                stack.push(t);
+                t = t.left;
+            } else {
+                t = t.right;
+            }
+        }
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            if (!visitor.test(n.entry)) return;
+            for (Node r = n.right; r != null; r = r.left) stack.push(r);
+        }
+    }
+}